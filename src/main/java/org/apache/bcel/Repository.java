@@ -19,8 +19,11 @@
 package org.apache.bcel;
 
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Optional;
 
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ClassHierarchy;
 import org.apache.bcel.util.ClassPath;
 import org.apache.bcel.util.SyntheticRepository;
 
@@ -35,6 +38,12 @@ public abstract class Repository {
 
     private static org.apache.bcel.util.Repository repository = SyntheticRepository.getInstance();
 
+    /**
+     * The class hierarchy cache for repositories that don't keep one. Softly referenced so that the cached classes can still
+     * be collected when memory is low.
+     */
+    private static SoftReference<ClassHierarchy> classHierarchy = new SoftReference<>(null);
+
     /**
      * Adds clazz to repository if there isn't an equally named class already in there.
      *
@@ -43,6 +52,7 @@ public abstract class Repository {
     public static JavaClass addClass(final JavaClass clazz) {
         final JavaClass old = repository.findClass(clazz.getClassName());
         repository.storeClass(clazz);
+        classHierarchy.clear();
         return old;
     }
 
@@ -51,6 +61,7 @@ public abstract class Repository {
      */
     public static void clearCache() {
         repository.clear();
+        classHierarchy.clear();
     }
 
     /**
@@ -59,7 +70,7 @@ public abstract class Repository {
      * @throws ClassNotFoundException if any of the class's superclasses or superinterfaces can't be found
      */
     public static JavaClass[] getInterfaces(final JavaClass clazz) throws ClassNotFoundException {
-        return clazz.getAllInterfaces();
+        return getClassHierarchy().getAllInterfaces(clazz);
     }
 
     /**
@@ -72,6 +83,27 @@ public abstract class Repository {
         return getInterfaces(lookupClass(className));
     }
 
+    /**
+     * Gets the class hierarchy cache used by the hierarchy queries of this class. This is the cache of the repository if it
+     * keeps one, see {@link org.apache.bcel.util.Repository#getClassHierarchy()}. Otherwise, it is a cache that is cleared
+     * whenever classes are added to or removed from the repository through this class, or the repository is replaced.
+     *
+     * @return the class hierarchy cache.
+     * @since 6.10.1
+     */
+    public static ClassHierarchy getClassHierarchy() {
+        final ClassHierarchy own = repository.getClassHierarchy();
+        if (own != null) {
+            return own;
+        }
+        ClassHierarchy hierarchy = classHierarchy.get();
+        if (hierarchy == null) {
+            hierarchy = new ClassHierarchy();
+            classHierarchy = new SoftReference<>(hierarchy);
+        }
+        return hierarchy;
+    }
+
     /**
      * @return currently used repository instance
      */
@@ -84,7 +116,7 @@ public abstract class Repository {
      * @throws ClassNotFoundException if any of the superclasses can't be found
      */
     public static JavaClass[] getSuperClasses(final JavaClass clazz) throws ClassNotFoundException {
-        return clazz.getSuperClasses();
+        return getClassHierarchy().getSuperClasses(clazz);
     }
 
     /**
@@ -100,7 +132,7 @@ public abstract class Repository {
      * @throws ClassNotFoundException if any superclasses or superinterfaces of clazz can't be found
      */
     public static boolean implementationOf(final JavaClass clazz, final JavaClass inter) throws ClassNotFoundException {
-        return clazz.implementationOf(inter);
+        return getClassHierarchy().implementationOf(clazz, inter);
     }
 
     /**
@@ -134,7 +166,7 @@ public abstract class Repository {
      * @throws ClassNotFoundException if any superclasses or superinterfaces of clazz can't be found
      */
     public static boolean instanceOf(final JavaClass clazz, final JavaClass superclass) throws ClassNotFoundException {
-        return clazz.instanceOf(superclass);
+        return getClassHierarchy().instanceOf(clazz, superclass);
     }
 
     /**
@@ -182,6 +214,18 @@ public abstract class Repository {
         return repository.loadClass(className);
     }
 
+    /**
+     * Lookups class somewhere found on your CLASSPATH, or wherever the repository instance looks for it, without throwing
+     * an exception if it can't be found.
+     *
+     * @param className the fully qualified class name.
+     * @return class object for given fully qualified class name, or an empty Optional if the class can't be found.
+     * @since 6.10.1
+     */
+    public static Optional<JavaClass> lookupClassIfPresent(final String className) {
+        return repository.loadClassIfPresent(className);
+    }
+
     /**
      * @return class file object for given Java class by looking on the system class path; returns null if the class file
      *         can't be found
@@ -199,6 +243,7 @@ public abstract class Repository {
      */
     public static void removeClass(final JavaClass clazz) {
         repository.removeClass(clazz);
+        classHierarchy.clear();
     }
 
     /**
@@ -206,6 +251,7 @@ public abstract class Repository {
      */
     public static void removeClass(final String clazz) {
         repository.removeClass(repository.findClass(clazz));
+        classHierarchy.clear();
     }
 
     /**
@@ -213,5 +259,6 @@ public abstract class Repository {
      */
     public static void setRepository(final org.apache.bcel.util.Repository rep) {
         repository = rep;
+        classHierarchy.clear();
     }
 }
@@ -26,7 +26,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -127,6 +130,7 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
     private String[] interfaceNames;
     private Field[] fields; // Fields, i.e., variables of class
     private Method[] methods; // methods defined in the class
+    private volatile Map<String, Integer> methodIndex; // position of the first method per name and signature, built on demand
     private Attribute[] attributes; // attributes defined in the class
 
     private AnnotationEntry[] annotations; // annotations defined on the class
@@ -595,14 +599,38 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
      * @return A {@link Method} corresponding to java.lang.reflect.Method if any
      */
     public Method getMethod(final java.lang.reflect.Method m) {
+        final String signature = Type.getSignature(m);
+        final Integer i = getMethodIndex().get(m.getName() + signature);
+        if (i == null) {
+            return null;
+        }
+        final Method indexed = methods[i];
+        if (m.getName().equals(indexed.getName()) && m.getModifiers() == indexed.getModifiers() && signature.equals(indexed.getSignature())) {
+            return indexed;
+        }
+        // Several methods with the same name and signature, or the methods array was modified in place
         for (final Method method : methods) {
-            if (m.getName().equals(method.getName()) && m.getModifiers() == method.getModifiers() && Type.getSignature(m).equals(method.getSignature())) {
+            if (m.getName().equals(method.getName()) && m.getModifiers() == method.getModifiers() && signature.equals(method.getSignature())) {
                 return method;
             }
         }
         return null;
     }
 
+    private Map<String, Integer> getMethodIndex() {
+        Map<String, Integer> index = methodIndex;
+        if (index == null) {
+            final Map<String, Integer> map = new HashMap<>(methods.length * 2);
+            for (int i = 0; i < methods.length; i++) {
+                map.putIfAbsent(methods[i].getName() + methods[i].getSignature(), i);
+            }
+            // Classes are shared between threads by the concurrent repositories, so the index is published immutable
+            index = Collections.unmodifiableMap(map);
+            methodIndex = index;
+        }
+        return index;
+    }
+
     /**
      * @return Methods of the class.
      */
@@ -857,6 +885,7 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
      */
     public void setMethods(final Method[] methods) {
         this.methods = methods != null ? methods : Method.EMPTY_ARRAY;
+        this.methodIndex = null;
     }
 
     /**
@@ -25,8 +25,38 @@ import org.apache.bcel.Const;
  */
 public final class ArrayType extends ReferenceType {
 
+    private static final WeakInterner<String, ArrayType> INSTANCES = new WeakInterner<>();
+
+    /**
+     * Gets the canonical instance for an array of the given type, the same instance is returned as long as it is in use.
+     *
+     * @param type type of array (may be an array itself)
+     * @param dimensions array dimensions
+     * @return the canonical instance.
+     * @since 6.10.1
+     */
+    public static ArrayType getInstance(final Type type, final int dimensions) {
+        return INSTANCES.intern(toSignature(type, dimensions), signature -> new ArrayType(type, dimensions));
+    }
+
+    private static String toSignature(final Type type, final int dimensions) {
+        if (dimensions < 1 || dimensions > Const.MAX_BYTE) {
+            throw new ClassGenException("Invalid number of dimensions: " + dimensions);
+        }
+        if (type.getType() == Const.T_VOID) {
+            throw new ClassGenException("Invalid type: void[]");
+        }
+        final String elementSignature = type.getSignature();
+        final StringBuilder buf = new StringBuilder(dimensions + elementSignature.length());
+        for (int i = 0; i < dimensions; i++) {
+            buf.append('[');
+        }
+        return buf.append(elementSignature).toString();
+    }
+
     private final int dimensions;
     private final Type basicType;
+    private final int hashCode;
 
     /**
      * Convenience constructor for array type, e.g. int[]
@@ -55,29 +85,16 @@ public final class ArrayType extends ReferenceType {
      * @param dimensions array dimensions
      */
     public ArrayType(final Type type, final int dimensions) {
-        super(Const.T_ARRAY, "<dummy>");
-        if (dimensions < 1 || dimensions > Const.MAX_BYTE) {
-            throw new ClassGenException("Invalid number of dimensions: " + dimensions);
-        }
-        switch (type.getType()) {
-        case Const.T_ARRAY:
+        super(Const.T_ARRAY, toSignature(type, dimensions));
+        if (type.getType() == Const.T_ARRAY) {
             final ArrayType array = (ArrayType) type;
             this.dimensions = dimensions + array.dimensions;
             basicType = array.basicType;
-            break;
-        case Const.T_VOID:
-            throw new ClassGenException("Invalid type: void[]");
-        default: // Basic type or reference
+        } else { // Basic type or reference
             this.dimensions = dimensions;
             basicType = type;
-            break;
         }
-        final StringBuilder buf = new StringBuilder();
-        for (int i = 0; i < this.dimensions; i++) {
-            buf.append('[');
-        }
-        buf.append(basicType.getSignature());
-        this.signature = buf.toString();
+        hashCode = basicType.hashCode() ^ this.dimensions;
     }
 
     /**
@@ -85,6 +102,9 @@ public final class ArrayType extends ReferenceType {
      */
     @Override
     public boolean equals(final Object type) {
+        if (this == type) {
+            return true;
+        }
         if (type instanceof ArrayType) {
             final ArrayType array = (ArrayType) type;
             return array.dimensions == dimensions && array.basicType.equals(basicType);
@@ -124,7 +144,7 @@ public final class ArrayType extends ReferenceType {
         if (dimensions == 1) {
             return basicType;
         }
-        return new ArrayType(basicType, dimensions - 1);
+        return getInstance(basicType, dimensions - 1);
     }
 
     /**
@@ -132,6 +152,6 @@ public final class ArrayType extends ReferenceType {
      */
     @Override
     public int hashCode() {
-        return basicType.hashCode() ^ dimensions;
+        return hashCode;
     }
 }
@@ -21,13 +21,19 @@ package org.apache.bcel.generic;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.AccessFlags;
 import org.apache.bcel.classfile.Annotations;
 import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Constant;
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.Field;
 import org.apache.bcel.classfile.JavaClass;
@@ -84,9 +90,13 @@ public class ClassGen extends AccessFlags implements Cloneable {
     private int major = Const.MAJOR_1_1;
     private int minor = Const.MINOR_1_1;
     private ConstantPoolGen cp; // Template for building up constant pool
+    private boolean compactConstantPool;
     // ArrayLists instead of arrays to gather fields, methods, etc.
     private final List<Field> fieldList = new ArrayList<>();
     private final List<Method> methodList = new ArrayList<>();
+    // Positions of the first field per name and of the first method per name and signature, rebuilt on demand when empty.
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private final Map<String, Integer> methodIndex = new HashMap<>();
 
     private final List<Attribute> attributeList = new ArrayList<>();
 
@@ -214,6 +224,9 @@ public class ClassGen extends AccessFlags implements Cloneable {
      */
     public void addField(final Field f) {
         fieldList.add(f);
+        if (!fieldIndex.isEmpty()) {
+            fieldIndex.putIfAbsent(f.getName(), fieldList.size() - 1);
+        }
     }
 
     /**
@@ -232,6 +245,9 @@ public class ClassGen extends AccessFlags implements Cloneable {
      */
     public void addMethod(final Method m) {
         methodList.add(m);
+        if (!methodIndex.isEmpty()) {
+            methodIndex.putIfAbsent(methodKey(m.getName(), m.getSignature()), methodList.size() - 1);
+        }
     }
 
     /**
@@ -254,31 +270,23 @@ public class ClassGen extends AccessFlags implements Cloneable {
     }
 
     public boolean containsField(final Field f) {
-        return fieldList.contains(f);
+        return indexOfField(f) >= 0;
     }
 
     /**
      * @return field object with given name, or null
      */
     public Field containsField(final String name) {
-        for (final Field f : fieldList) {
-            if (f.getName().equals(name)) {
-                return f;
-            }
-        }
-        return null;
+        final int i = indexOfField(name);
+        return i >= 0 ? fieldList.get(i) : null;
     }
 
     /**
      * @return method object with given name and signature, or null
      */
     public Method containsMethod(final String name, final String signature) {
-        for (final Method m : methodList) {
-            if (m.getName().equals(name) && m.getSignature().equals(signature)) {
-                return m;
-            }
-        }
-        return null;
+        final int i = indexOfMethod(name, signature);
+        return i >= 0 ? methodList.get(i) : null;
     }
 
     /**
@@ -333,6 +341,12 @@ public class ClassGen extends AccessFlags implements Cloneable {
     }
 
     /**
+     * Gets the built up Java class object.
+     * <p>
+     * When {@link #setCompactConstantPool(boolean) compaction} is on, the constant pool of the returned class only holds the constants that the
+     * class refers to, and the references are renumbered accordingly. The constant pool of this generator stays as it is.
+     * </p>
+     *
      * @return the (finally) built up Java class object.
      */
     public JavaClass getJavaClass() {
@@ -351,8 +365,9 @@ public class ClassGen extends AccessFlags implements Cloneable {
         }
         // Must be last since the above calls may still add something to it
         final ConstantPool cp = this.cp.getFinalConstantPool();
-        return new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor, super.getAccessFlags(), cp, interfaces, fields, methods,
-            attributes);
+        final JavaClass clazz = new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor, super.getAccessFlags(), cp, interfaces, fields,
+            methods, attributes);
+        return compactConstantPool ? ConstantPoolCompactor.compact(clazz) : clazz;
     }
 
     /**
@@ -395,6 +410,132 @@ public class ClassGen extends AccessFlags implements Cloneable {
         return bcelComparator.hashCode(this);
     }
 
+    private Map<String, Integer> getFieldIndex() {
+        if (fieldIndex.isEmpty()) {
+            for (int i = 0; i < fieldList.size(); i++) {
+                fieldIndex.putIfAbsent(fieldList.get(i).getName(), i);
+            }
+        }
+        return fieldIndex;
+    }
+
+    private Map<String, Integer> getMethodIndex() {
+        if (methodIndex.isEmpty()) {
+            for (int i = 0; i < methodList.size(); i++) {
+                final Method m = methodList.get(i);
+                methodIndex.putIfAbsent(methodKey(m.getName(), m.getSignature()), i);
+            }
+        }
+        return methodIndex;
+    }
+
+    /**
+     * Finds a field through the index, falling back to a scan when the field found by name is not equal to the given one.
+     */
+    private int indexOfField(final Field f) {
+        final int i = indexOfField(f.getName());
+        if (i < 0) {
+            return -1;
+        }
+        return fieldList.get(i).equals(f) ? i : fieldList.indexOf(f);
+    }
+
+    /**
+     * Finds the first field with the given name through the index. Fields can be renamed in place with
+     * {@link Field#setNameIndex(int)}, so a hit is checked and a miss is confirmed by a scan, which rebuilds a stale index.
+     */
+    private int indexOfField(final String name) {
+        final Integer i = getFieldIndex().get(name);
+        if (i != null && fieldList.get(i).getName().equals(name)) {
+            return i;
+        }
+        for (int j = 0; j < fieldList.size(); j++) {
+            if (fieldList.get(j).getName().equals(name)) {
+                fieldIndex.clear();
+                return j;
+            }
+        }
+        if (i != null) {
+            fieldIndex.clear();
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a method through the index, falling back to a scan when the method found by name and signature is not equal to the given one.
+     */
+    private int indexOfMethod(final Method m) {
+        final int i = indexOfMethod(m.getName(), m.getSignature());
+        if (i < 0) {
+            return -1;
+        }
+        return methodList.get(i).equals(m) ? i : methodList.indexOf(m);
+    }
+
+    /**
+     * Finds the first method with the given name and signature through the index. Methods can be renamed in place with
+     * {@link Method#setNameIndex(int)} or {@link Method#setSignatureIndex(int)}, so a hit is checked and a miss is confirmed by
+     * a scan, which rebuilds a stale index.
+     */
+    private int indexOfMethod(final String name, final String signature) {
+        final Integer i = getMethodIndex().get(methodKey(name, signature));
+        if (i != null && isMethod(methodList.get(i), name, signature)) {
+            return i;
+        }
+        for (int j = 0; j < methodList.size(); j++) {
+            if (isMethod(methodList.get(j), name, signature)) {
+                methodIndex.clear();
+                return j;
+            }
+        }
+        if (i != null) {
+            methodIndex.clear();
+        }
+        return -1;
+    }
+
+    /**
+     * Tests whether {@link #getJavaClass()} removes unreferenced constants.
+     *
+     * @return whether the constant pool of the built class is compacted.
+     * @since 6.10.1
+     */
+    public boolean isCompactConstantPool() {
+        return compactConstantPool;
+    }
+
+    /**
+     * Moves the constants that the instructions of a transformed method added to its scratch pool into the class pool, in instruction order.
+     */
+    private void mergeConstants(final MethodGen mg, final int baseSize) {
+        final ConstantPoolGen scratch = mg.getConstantPool();
+        final InstructionList il = mg.getInstructionList();
+        if (il != null) {
+            final int[] indexes = new int[scratch.getSize() - baseSize];
+            for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+                if (ih.getInstruction() instanceof CPInstruction) {
+                    final CPInstruction cpi = (CPInstruction) ih.getInstruction();
+                    final int index = cpi.getIndex();
+                    if (index >= baseSize) {
+                        if (indexes[index - baseSize] == 0) {
+                            indexes[index - baseSize] = cp.addConstant(scratch.getConstant(index), scratch);
+                        }
+                        cpi.setIndex(indexes[index - baseSize]);
+                    }
+                }
+            }
+        }
+        mg.setConstantPool(cp);
+    }
+
+    private static boolean isMethod(final Method m, final String name, final String signature) {
+        return m.getName().equals(name) && m.getSignature().equals(signature);
+    }
+
+    private static String methodKey(final String name, final String signature) {
+        return name + signature;
+    }
+
     /**
      * Remove an attribute from this class.
      *
@@ -410,7 +551,11 @@ public class ClassGen extends AccessFlags implements Cloneable {
      * @param f field to remove
      */
     public void removeField(final Field f) {
-        fieldList.remove(f);
+        final int i = indexOfField(f);
+        if (i >= 0) {
+            fieldList.remove(i);
+            fieldIndex.clear();
+        }
     }
 
     /**
@@ -428,7 +573,11 @@ public class ClassGen extends AccessFlags implements Cloneable {
      * @param m method to remove
      */
     public void removeMethod(final Method m) {
-        methodList.remove(m);
+        final int i = indexOfMethod(m);
+        if (i >= 0) {
+            methodList.remove(i);
+            methodIndex.clear();
+        }
     }
 
     /**
@@ -447,26 +596,29 @@ public class ClassGen extends AccessFlags implements Cloneable {
         if (newField == null) {
             throw new ClassGenException("Replacement method must not be null");
         }
-        final int i = fieldList.indexOf(old);
+        final int i = indexOfField(old);
         if (i < 0) {
-            fieldList.add(newField);
-        } else {
-            fieldList.set(i, newField);
+            addField(newField);
+        } else if (!fieldList.set(i, newField).getName().equals(newField.getName())) {
+            fieldIndex.clear();
         }
     }
 
     /**
      * Replace given method with new one. If the old one does not exist add the newMethod method to the class anyway.
+     * <p>
+     * The old method is looked up by name and signature, like the default {@link Method#getComparator() comparator} compares methods.
+     * </p>
      */
     public void replaceMethod(final Method old, final Method newMethod) {
         if (newMethod == null) {
             throw new ClassGenException("Replacement method must not be null");
         }
-        final int i = methodList.indexOf(old);
+        final int i = indexOfMethod(old);
         if (i < 0) {
-            methodList.add(newMethod);
+            addMethod(newMethod);
         } else {
-            methodList.set(i, newMethod);
+            setMethodAt(newMethod, i);
         }
     }
 
@@ -480,6 +632,20 @@ public class ClassGen extends AccessFlags implements Cloneable {
         this.className = Utility.pathToPackage(cp.getConstantPool().getConstantString(classNameIndex, Const.CONSTANT_Class));
     }
 
+    /**
+     * Sets whether {@link #getJavaClass()} removes the constants that the class no longer refers to, for example after its code has been rewritten.
+     * <p>
+     * Compaction costs a pass over the class file. Classes with attributes whose layout BCEL does not know are not compacted, since such an
+     * attribute may refer to any constant.
+     * </p>
+     *
+     * @param compactConstantPool whether to compact the constant pool of the built class.
+     * @since 6.10.1
+     */
+    public void setCompactConstantPool(final boolean compactConstantPool) {
+        this.compactConstantPool = compactConstantPool;
+    }
+
     public void setConstantPool(final ConstantPoolGen constantPool) {
         cp = constantPool;
     }
@@ -494,11 +660,15 @@ public class ClassGen extends AccessFlags implements Cloneable {
     }
 
     public void setMethodAt(final Method method, final int pos) {
-        methodList.set(pos, method);
+        final Method old = methodList.set(pos, method);
+        if (!old.getName().equals(method.getName()) || !old.getSignature().equals(method.getSignature())) {
+            methodIndex.clear();
+        }
     }
 
     public void setMethods(final Method[] methods) {
         methodList.clear();
+        methodIndex.clear();
         if (methods != null) {
             Collections.addAll(methodList, methods);
         }
@@ -523,6 +693,48 @@ public class ClassGen extends AccessFlags implements Cloneable {
         superClassName = Utility.pathToPackage(cp.getConstantPool().getConstantString(superclassNameIndex, Const.CONSTANT_Class));
     }
 
+    /**
+     * Applies a transformation to all methods of this class in parallel.
+     * <p>
+     * Each method is handed to the transformation as a {@link MethodGen} with its own scratch copy of the constant pool, so the transformation may
+     * add constants freely but must not touch this ClassGen or its pool. Once all methods are transformed, the constants their instructions added
+     * are merged into the class pool method by method and in instruction order, so the result does not depend on scheduling. Constants referred to
+     * by new attributes are not merged, and new constants must be of a kind {@link ConstantPoolGen#addConstant(Constant, ConstantPoolGen)}
+     * supports. Nothing is changed if the transformation throws an exception.
+     * </p>
+     *
+     * @param transformation modifies a method in place.
+     * @since 6.10.1
+     */
+    public void transformMethods(final Consumer<? super MethodGen> transformation) {
+        Objects.requireNonNull(transformation, "transformation");
+        final Constant[] base = cp.getFinalConstantPool().getConstantPool();
+        final MethodGen[] methods = new MethodGen[methodList.size()];
+        // Methods are transformed in chunks sharing a scratch pool, the merge only depends on the constants, not on their scratch indexes.
+        final int chunks = Math.min(methods.length, 4 * ForkJoinPool.getCommonPoolParallelism());
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            final ConstantPoolGen scratch = new ConstantPoolGen(base);
+            for (int i = chunk * methods.length / chunks; i < (chunk + 1) * methods.length / chunks; i++) {
+                methods[i] = new MethodGen(methodList.get(i), className, scratch);
+                transformation.accept(methods[i]);
+            }
+        });
+        final Method[] transformed = new Method[methods.length];
+        try {
+            for (int i = 0; i < methods.length; i++) {
+                mergeConstants(methods[i], base.length);
+                transformed[i] = methods[i].getMethod();
+            }
+        } catch (final RuntimeException e) {
+            // Drop the constants merged so far
+            cp.replaceConstants(base, base.length);
+            throw e;
+        }
+        for (int i = 0; i < transformed.length; i++) {
+            setMethodAt(transformed[i], i);
+        }
+    }
+
     /**
      * Unpacks attributes representing annotations.
      */
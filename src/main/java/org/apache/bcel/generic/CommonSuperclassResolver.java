@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+/**
+ * Resolves the first common superclass of two reference types. It is used to merge the types of values reaching an
+ * instruction on different control flow paths, e.g. when computing a 'StackMapTable' attribute with
+ * {@link MethodGen#getStackMap(ConstantPoolGen)}. Generators may provide their own implementation if the classes
+ * involved are not (yet) available in the {@link org.apache.bcel.Repository}, e.g. because they are being generated.
+ *
+ * @since 6.10.1
+ */
+@FunctionalInterface
+public interface CommonSuperclassResolver {
+
+    /**
+     * Looks up the classes in the {@link org.apache.bcel.Repository}, see
+     * {@link ReferenceType#getFirstCommonSuperclass(ReferenceType)}.
+     */
+    CommonSuperclassResolver REPOSITORY = ReferenceType::getFirstCommonSuperclass;
+
+    /**
+     * Gets the first common superclass of two different reference types, neither of which is {@link Type#NULL}.
+     *
+     * @param first a reference type
+     * @param second another reference type
+     * @return the first common superclass, or null if it cannot be determined, in which case {@link Type#OBJECT} is used
+     * @throws ClassNotFoundException if a class in the hierarchy of the types cannot be found
+     */
+    ReferenceType getFirstCommonSuperclass(ReferenceType first, ReferenceType second) throws ClassNotFoundException;
+}
@@ -0,0 +1,342 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantMethodType;
+import org.apache.bcel.classfile.ConstantModule;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPackage;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.Utility;
+
+/**
+ * A {@link ConstantPoolGen} that several threads can add constants to at the same time, for example to generate the methods of one class in parallel.
+ * <p>
+ * Adding a constant that is already in the pool does not lock. New constants are appended under the pool's lock, so every constant still gets exactly
+ * one index. Since the order of the new constants then depends on thread scheduling, {@link #renumber(int)} can sort the constants added concurrently
+ * into an order that only depends on their values, which makes the generated class files reproducible.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class ConcurrentConstantPoolGen extends ConstantPoolGen {
+
+    /**
+     * Updates the indexes of the given instructions after {@link #renumber(int)}.
+     *
+     * @param il the instructions that refer to the renumbered pool.
+     * @param indexes the new index per old index, as returned by {@link #renumber(int)}.
+     */
+    public static void renumber(final InstructionList il, final int[] indexes) {
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            if (ih.getInstruction() instanceof CPInstruction) {
+                final CPInstruction cpi = (CPInstruction) ih.getInstruction();
+                cpi.setIndex(indexes[cpi.getIndex()]);
+            }
+        }
+    }
+
+    /** Indexes by constant value, a prefix character tells the kinds of string keys apart. */
+    private final Map<Object, Integer> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new empty constant pool.
+     */
+    public ConcurrentConstantPoolGen() {
+    }
+
+    /**
+     * Constructs a new instance with the given array of constants.
+     *
+     * @param cs array of given constants, new ones will be appended
+     */
+    public ConcurrentConstantPoolGen(final Constant[] cs) {
+        super(cs);
+    }
+
+    /**
+     * Constructs a new instance with the given constant pool.
+     *
+     * @param cp the constant pool.
+     */
+    public ConcurrentConstantPoolGen(final ConstantPool cp) {
+        super(cp);
+    }
+
+    private int add(final Object key, final IntSupplier adder) {
+        final Integer index = indexes.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            final int added = adder.getAsInt();
+            indexes.put(key, Integer.valueOf(added));
+            return added;
+        }
+    }
+
+    @Override
+    public int addArrayClass(final ArrayType type) {
+        return add("C" + type.getSignature(), () -> super.addArrayClass(type));
+    }
+
+    @Override
+    public int addClass(final String str) {
+        return add("C" + Utility.packageToPath(str), () -> super.addClass(str));
+    }
+
+    @Override
+    public int addDouble(final double n) {
+        return add(Double.valueOf(n), () -> super.addDouble(n));
+    }
+
+    @Override
+    public int addFieldref(final String className, final String fieldName, final String signature) {
+        return add("F" + className + ' ' + fieldName + ' ' + signature, () -> super.addFieldref(className, fieldName, signature));
+    }
+
+    @Override
+    public int addFloat(final float n) {
+        return add(Float.valueOf(n), () -> super.addFloat(n));
+    }
+
+    @Override
+    public int addInteger(final int n) {
+        return add(Integer.valueOf(n), () -> super.addInteger(n));
+    }
+
+    @Override
+    public int addInterfaceMethodref(final String className, final String methodName, final String signature) {
+        return add("I" + className + ' ' + methodName + ' ' + signature, () -> super.addInterfaceMethodref(className, methodName, signature));
+    }
+
+    @Override
+    public int addLong(final long n) {
+        return add(Long.valueOf(n), () -> super.addLong(n));
+    }
+
+    @Override
+    public int addMethodref(final String className, final String methodName, final String signature) {
+        return add("M" + className + ' ' + methodName + ' ' + signature, () -> super.addMethodref(className, methodName, signature));
+    }
+
+    @Override
+    public int addNameAndType(final String name, final String signature) {
+        return add("N" + name + ' ' + signature, () -> super.addNameAndType(name, signature));
+    }
+
+    @Override
+    public int addString(final String str) {
+        return add("S" + str, () -> super.addString(str));
+    }
+
+    @Override
+    public int addUtf8(final String n) {
+        return add("U" + n, () -> super.addUtf8(n));
+    }
+
+    @Override
+    public synchronized Constant getConstant(final int i) {
+        return super.getConstant(i);
+    }
+
+    @Override
+    public synchronized ConstantPool getConstantPool() {
+        return super.getConstantPool();
+    }
+
+    @Override
+    public synchronized ConstantPool getFinalConstantPool() {
+        return super.getFinalConstantPool();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return super.getSize();
+    }
+
+    /**
+     * Gets a key for a constant that only depends on its value, with references to other constants replaced by the keys of those.
+     */
+    private String getValueKey(final int index) {
+        final Constant c = super.getConstant(index);
+        switch (c.getTag()) {
+        case Const.CONSTANT_Utf8:
+            return ((ConstantUtf8) c).getBytes();
+        case Const.CONSTANT_Integer:
+            return Integer.toString(((ConstantInteger) c).getBytes());
+        case Const.CONSTANT_Float:
+            return Integer.toString(Float.floatToIntBits(((ConstantFloat) c).getBytes()));
+        case Const.CONSTANT_Long:
+            return Long.toString(((ConstantLong) c).getBytes());
+        case Const.CONSTANT_Double:
+            return Long.toString(Double.doubleToLongBits(((ConstantDouble) c).getBytes()));
+        case Const.CONSTANT_String:
+            return getValueKey(((ConstantString) c).getStringIndex());
+        case Const.CONSTANT_Class:
+            return getValueKey(((ConstantClass) c).getNameIndex());
+        case Const.CONSTANT_NameAndType:
+            return getValueKey(((ConstantNameAndType) c).getNameIndex()) + ' ' + getValueKey(((ConstantNameAndType) c).getSignatureIndex());
+        case Const.CONSTANT_Fieldref:
+        case Const.CONSTANT_Methodref:
+        case Const.CONSTANT_InterfaceMethodref:
+            return getValueKey(((ConstantCP) c).getClassIndex()) + ' ' + getValueKey(((ConstantCP) c).getNameAndTypeIndex());
+        case Const.CONSTANT_MethodHandle:
+            return ((ConstantMethodHandle) c).getReferenceKind() + " " + getValueKey(((ConstantMethodHandle) c).getReferenceIndex());
+        case Const.CONSTANT_MethodType:
+            return getValueKey(((ConstantMethodType) c).getDescriptorIndex());
+        case Const.CONSTANT_Dynamic:
+        case Const.CONSTANT_InvokeDynamic:
+            // The class index holds the bootstrap method index
+            return ((ConstantCP) c).getClassIndex() + " " + getValueKey(((ConstantCP) c).getNameAndTypeIndex());
+        case Const.CONSTANT_Module:
+            return getValueKey(((ConstantModule) c).getNameIndex());
+        case Const.CONSTANT_Package:
+            return getValueKey(((ConstantPackage) c).getNameIndex());
+        default:
+            return c.toString();
+        }
+    }
+
+    @Override
+    public synchronized int lookupClass(final String str) {
+        return super.lookupClass(str);
+    }
+
+    @Override
+    public synchronized int lookupDouble(final double n) {
+        return super.lookupDouble(n);
+    }
+
+    @Override
+    public synchronized int lookupFieldref(final String className, final String fieldName, final String signature) {
+        return super.lookupFieldref(className, fieldName, signature);
+    }
+
+    @Override
+    public synchronized int lookupFloat(final float n) {
+        return super.lookupFloat(n);
+    }
+
+    @Override
+    public synchronized int lookupInteger(final int n) {
+        return super.lookupInteger(n);
+    }
+
+    @Override
+    public synchronized int lookupInterfaceMethodref(final String className, final String methodName, final String signature) {
+        return super.lookupInterfaceMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public synchronized int lookupLong(final long n) {
+        return super.lookupLong(n);
+    }
+
+    @Override
+    public synchronized int lookupMethodref(final String className, final String methodName, final String signature) {
+        return super.lookupMethodref(className, methodName, signature);
+    }
+
+    @Override
+    public synchronized int lookupNameAndType(final String name, final String signature) {
+        return super.lookupNameAndType(name, signature);
+    }
+
+    @Override
+    public synchronized int lookupString(final String str) {
+        return super.lookupString(str);
+    }
+
+    @Override
+    public synchronized int lookupUtf8(final String n) {
+        return super.lookupUtf8(n);
+    }
+
+    /**
+     * Sorts the constants from the given index on by kind and value, so that their order no longer depends on the order in which they were added.
+     * <p>
+     * Constants below {@code from} keep their indexes, so pass the size of the pool from before the concurrent phase to leave the constants that
+     * existing attributes and generators refer to in place. No constants may be added while the pool is renumbered. Instructions that refer to this
+     * pool have to be updated with {@link #renumber(InstructionList, int[])} before they are turned into code.
+     * </p>
+     *
+     * @param from index of the first constant to sort.
+     * @return the new index per old index.
+     */
+    public synchronized int[] renumber(final int from) {
+        final int size = super.getSize();
+        if (from < 1 || from > size) {
+            throw new IllegalArgumentException("Invalid index " + from + " for a constant pool of size " + size);
+        }
+        final String[] keys = new String[size];
+        final Integer[] order = IntStream.range(from, size).filter(i -> super.getConstant(i) != null).boxed().toArray(Integer[]::new);
+        for (final int i : order) {
+            keys[i] = (char) super.getConstant(i).getTag() + getValueKey(i);
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> keys[i]).thenComparing(Comparator.naturalOrder()));
+        final int[] newIndexes = new int[size];
+        Arrays.setAll(newIndexes, i -> i < from ? i : 0);
+        int next = from;
+        for (final int i : order) {
+            newIndexes[i] = next;
+            final byte tag = super.getConstant(i).getTag();
+            next += tag == Const.CONSTANT_Long || tag == Const.CONSTANT_Double ? 2 : 1;
+        }
+        final Constant[] cs = new Constant[size];
+        for (int i = 1; i < from; i++) {
+            cs[i] = super.getConstant(i);
+        }
+        for (final int i : order) {
+            cs[newIndexes[i]] = ConstantPoolCompactor.remap(super.getConstant(i).copy(), j -> newIndexes[j]);
+        }
+        replaceConstants(cs, size);
+        indexes.clear();
+        return newIndexes;
+    }
+
+    @Override
+    public synchronized void setConstant(final int i, final Constant c) {
+        super.setConstant(i, c);
+        indexes.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return super.toString();
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.IntUnaryOperator;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDynamic;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantMethodType;
+import org.apache.bcel.classfile.ConstantModule;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPackage;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ByteSequence;
+
+/**
+ * Removes the constants that nothing refers to from the constant pool of a class and renumbers the references to the remaining ones.
+ * <p>
+ * The references are found by walking the class file format rather than the attribute objects, so that attributes BCEL does not model in
+ * detail, such as type annotations, are renumbered as well. A class with an attribute whose layout is not known is left as it is, since it
+ * may refer to any constant. The remaining constants keep their order, so their indexes only decrease and an {@code ldc} keeps fitting its
+ * one byte operand.
+ * </p>
+ *
+ * @see ClassGen#setCompactConstantPool(boolean)
+ */
+final class ConstantPoolCompactor {
+
+    /**
+     * Compacts the constant pool of the given class.
+     *
+     * @param clazz the class to compact.
+     * @return a new class with the live constants only, or the given class if there is nothing to remove or the class can not be compacted.
+     */
+    static JavaClass compact(final JavaClass clazz) {
+        final byte[] bytes = clazz.getBytes();
+        try {
+            final DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes));
+            header.readInt(); // magic
+            final int minor = header.readUnsignedShort();
+            final int major = header.readUnsignedShort();
+            final ConstantPool pool = new ConstantPool(header);
+            final int body = bytes.length - header.available();
+            final ConstantPoolCompactor marker = new ConstantPoolCompactor(pool, null, null);
+            marker.walkClass(new DataInputStream(new ByteArrayInputStream(bytes, body, bytes.length - body)));
+            if (marker.unsupported) {
+                return clazz;
+            }
+            final int[] indexes = marker.renumber();
+            final int size = pool.getLength();
+            if (indexes[0] == size) {
+                return clazz;
+            }
+            final Constant[] constants = new Constant[indexes[0]];
+            for (int i = 1; i < size; i++) {
+                if (marker.live[i]) {
+                    constants[indexes[i]] = remap(pool.getConstant(i), j -> indexes[j]);
+                }
+            }
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length);
+            final DataOutputStream out = new DataOutputStream(bos);
+            out.writeInt(Const.JVM_CLASSFILE_MAGIC);
+            out.writeShort(minor);
+            out.writeShort(major);
+            new ConstantPool(constants).dump(out);
+            new ConstantPoolCompactor(pool, indexes, out).walkClass(new DataInputStream(new ByteArrayInputStream(bytes, body, bytes.length - body)));
+            out.flush();
+            return new ClassParser(new ByteArrayInputStream(bos.toByteArray()), clazz.getFileName()).parse();
+        } catch (final IOException e) {
+            throw new ClassGenException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Replaces the references of the given constant to other constants.
+     *
+     * @param c the constant to update.
+     * @param indexes maps the old index of a referenced constant to its new one.
+     * @return the given constant.
+     */
+    static Constant remap(final Constant c, final IntUnaryOperator indexes) {
+        if (c instanceof ConstantString) {
+            final ConstantString s = (ConstantString) c;
+            s.setStringIndex(indexes.applyAsInt(s.getStringIndex()));
+        } else if (c instanceof ConstantClass) {
+            final ConstantClass clazz = (ConstantClass) c;
+            clazz.setNameIndex(indexes.applyAsInt(clazz.getNameIndex()));
+        } else if (c instanceof ConstantNameAndType) {
+            final ConstantNameAndType nat = (ConstantNameAndType) c;
+            nat.setNameIndex(indexes.applyAsInt(nat.getNameIndex()));
+            nat.setSignatureIndex(indexes.applyAsInt(nat.getSignatureIndex()));
+        } else if (c instanceof ConstantInvokeDynamic || c instanceof ConstantDynamic) {
+            // The class index holds the bootstrap method index
+            final ConstantCP cp = (ConstantCP) c;
+            cp.setNameAndTypeIndex(indexes.applyAsInt(cp.getNameAndTypeIndex()));
+        } else if (c instanceof ConstantCP) {
+            final ConstantCP cp = (ConstantCP) c;
+            cp.setClassIndex(indexes.applyAsInt(cp.getClassIndex()));
+            cp.setNameAndTypeIndex(indexes.applyAsInt(cp.getNameAndTypeIndex()));
+        } else if (c instanceof ConstantMethodHandle) {
+            final ConstantMethodHandle mh = (ConstantMethodHandle) c;
+            mh.setReferenceIndex(indexes.applyAsInt(mh.getReferenceIndex()));
+        } else if (c instanceof ConstantMethodType) {
+            final ConstantMethodType mt = (ConstantMethodType) c;
+            mt.setDescriptorIndex(indexes.applyAsInt(mt.getDescriptorIndex()));
+        } else if (c instanceof ConstantModule) {
+            final ConstantModule module = (ConstantModule) c;
+            module.setNameIndex(indexes.applyAsInt(module.getNameIndex()));
+        } else if (c instanceof ConstantPackage) {
+            final ConstantPackage pkg = (ConstantPackage) c;
+            pkg.setNameIndex(indexes.applyAsInt(pkg.getNameIndex()));
+        }
+        return c;
+    }
+
+    private final ConstantPool pool;
+
+    /** The new index per old index, null while marking. */
+    private final int[] indexes;
+
+    /** The constants referred to, filled in while marking. */
+    private final boolean[] live;
+
+    /** Where the renumbered class goes, null while marking. */
+    private final DataOutputStream out;
+
+    private DataInputStream in;
+
+    /** Whether an attribute with an unknown layout was found. */
+    private boolean unsupported;
+
+    private ConstantPoolCompactor(final ConstantPool pool, final int[] indexes, final DataOutputStream out) {
+        this.pool = pool;
+        this.indexes = indexes;
+        this.live = indexes == null ? new boolean[pool.getLength()] : null;
+        this.out = out;
+    }
+
+    /**
+     * Gets the new index of a constant, or marks it as live while marking. Index 0 stands for no constant and stays as it is.
+     */
+    private int map(final int index) {
+        if (index == 0) {
+            return 0;
+        }
+        if (indexes != null) {
+            return indexes[index];
+        }
+        live[index] = true;
+        return index;
+    }
+
+    /**
+     * Marks the constants the live constants refer to and numbers all live constants in their current order.
+     *
+     * @return the new index per old index, with the size of the compacted pool at index 0.
+     */
+    private int[] renumber() {
+        final Deque<Integer> pending = new ArrayDeque<>();
+        for (int i = 1; i < live.length; i++) {
+            if (live[i]) {
+                pending.push(i);
+            }
+        }
+        while (!pending.isEmpty()) {
+            remap(pool.getConstant(pending.pop()), i -> {
+                if (!live[i]) {
+                    live[i] = true;
+                    pending.push(i);
+                }
+                return i;
+            });
+        }
+        final int[] result = new int[live.length];
+        int next = 1;
+        for (int i = 1; i < live.length; i++) {
+            if (live[i]) {
+                result[i] = next;
+                final byte tag = pool.getConstant(i).getTag();
+                next += tag == Const.CONSTANT_Long || tag == Const.CONSTANT_Double ? 2 : 1;
+            }
+        }
+        result[0] = next;
+        return result;
+    }
+
+    private void walkAnnotation() throws IOException {
+        walkIndex(); // type
+        for (int n = walkU2(); n > 0; n--) {
+            walkIndex(); // element name
+            walkElementValue();
+        }
+    }
+
+    private void walkAnnotations() throws IOException {
+        for (int n = walkU2(); n > 0; n--) {
+            walkAnnotation();
+        }
+    }
+
+    private void walkAttribute() throws IOException {
+        final int nameIndex = walkIndex();
+        final byte[] body = new byte[walkU4()];
+        in.readFully(body);
+        final DataInputStream outer = in;
+        in = new DataInputStream(new ByteArrayInputStream(body));
+        switch (pool.getConstantUtf8(nameIndex).getBytes()) {
+        case "ConstantValue":
+        case "ModuleMainClass":
+        case "NestHost":
+        case "Signature":
+        case "SourceFile":
+            walkIndex();
+            break;
+        case "EnclosingMethod":
+        case "PMGClass":
+            walkIndex();
+            walkIndex();
+            break;
+        case "Exceptions":
+        case "ModulePackages":
+        case "NestMembers":
+        case "PermittedSubclasses":
+            walkIndexes();
+            break;
+        case "Code":
+            walkCode();
+            break;
+        case "StackMapTable":
+            walkStackMapTable();
+            break;
+        case "StackMap":
+            for (int n = walkU2(); n > 0; n--) {
+                walkU2(); // offset
+                walkVerificationTypes(walkU2());
+                walkVerificationTypes(walkU2());
+            }
+            break;
+        case "InnerClasses":
+            for (int n = walkU2(); n > 0; n--) {
+                walkIndex();
+                walkIndex();
+                walkIndex();
+                walkU2(); // flags
+            }
+            break;
+        case "LocalVariableTable":
+        case "LocalVariableTypeTable":
+            for (int n = walkU2(); n > 0; n--) {
+                walkU2(); // start
+                walkU2(); // length
+                walkIndex();
+                walkIndex();
+                walkU2(); // slot
+            }
+            break;
+        case "RuntimeVisibleAnnotations":
+        case "RuntimeInvisibleAnnotations":
+            walkAnnotations();
+            break;
+        case "RuntimeVisibleParameterAnnotations":
+        case "RuntimeInvisibleParameterAnnotations":
+            for (int n = walkU1(); n > 0; n--) {
+                walkAnnotations();
+            }
+            break;
+        case "RuntimeVisibleTypeAnnotations":
+        case "RuntimeInvisibleTypeAnnotations":
+            for (int n = walkU2(); n > 0; n--) {
+                walkTypeAnnotation();
+            }
+            break;
+        case "AnnotationDefault":
+            walkElementValue();
+            break;
+        case "BootstrapMethods":
+            for (int n = walkU2(); n > 0; n--) {
+                walkIndex(); // method handle
+                walkIndexes(); // arguments
+            }
+            break;
+        case "MethodParameters":
+            for (int n = walkU1(); n > 0; n--) {
+                walkIndex();
+                walkU2(); // flags
+            }
+            break;
+        case "Module":
+            walkModule();
+            break;
+        case "Record":
+            for (int n = walkU2(); n > 0; n--) {
+                walkIndex(); // name
+                walkIndex(); // descriptor
+                walkAttributes();
+            }
+            break;
+        case "Deprecated":
+        case "LineNumberTable":
+        case "SourceDebugExtension":
+        case "Synthetic":
+            walkBytes(body.length);
+            break;
+        default:
+            unsupported = true;
+            walkBytes(body.length);
+            break;
+        }
+        in = outer;
+    }
+
+    private void walkAttributes() throws IOException {
+        for (int n = walkU2(); n > 0; n--) {
+            walkAttribute();
+        }
+    }
+
+    private void walkBytes(final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        if (out != null) {
+            out.write(bytes);
+        }
+    }
+
+    private void walkClass(final DataInputStream in) throws IOException {
+        this.in = in;
+        walkU2(); // access flags
+        walkIndex(); // this class
+        walkIndex(); // super class
+        walkIndexes(); // interfaces
+        for (int members = 0; members < 2; members++) { // fields, then methods
+            for (int n = walkU2(); n > 0; n--) {
+                walkU2(); // access flags
+                walkIndex(); // name
+                walkIndex(); // signature
+                walkAttributes();
+            }
+        }
+        walkAttributes();
+    }
+
+    private void walkCode() throws IOException {
+        walkU2(); // max stack
+        walkU2(); // max locals
+        final byte[] code = new byte[walkU4()];
+        in.readFully(code);
+        try (ByteSequence bytes = new ByteSequence(code)) {
+            while (bytes.available() > 0) {
+                final int pos = bytes.getIndex();
+                final Instruction i = Instruction.readInstruction(bytes);
+                if (i instanceof CPInstruction) {
+                    final int index = map(((CPInstruction) i).getIndex());
+                    if ((code[pos] & 0xff) == Const.LDC) {
+                        code[pos + 1] = (byte) index;
+                    } else {
+                        code[pos + 1] = (byte) (index >>> 8);
+                        code[pos + 2] = (byte) index;
+                    }
+                }
+            }
+        }
+        if (out != null) {
+            out.write(code);
+        }
+        for (int n = walkU2(); n > 0; n--) {
+            walkU2(); // start
+            walkU2(); // end
+            walkU2(); // handler
+            walkIndex(); // catch type
+        }
+        walkAttributes();
+    }
+
+    private void walkElementValue() throws IOException {
+        switch (walkU1()) {
+        case 'e':
+            walkIndex(); // type
+            walkIndex(); // name
+            break;
+        case '@':
+            walkAnnotation();
+            break;
+        case '[':
+            for (int n = walkU2(); n > 0; n--) {
+                walkElementValue();
+            }
+            break;
+        default: // a constant or a class
+            walkIndex();
+            break;
+        }
+    }
+
+    private int walkIndex() throws IOException {
+        final int index = in.readUnsignedShort();
+        final int mapped = map(index);
+        if (out != null) {
+            out.writeShort(mapped);
+        }
+        return index;
+    }
+
+    private void walkIndexes() throws IOException {
+        for (int n = walkU2(); n > 0; n--) {
+            walkIndex();
+        }
+    }
+
+    private void walkModule() throws IOException {
+        walkIndex(); // name
+        walkU2(); // flags
+        walkIndex(); // version
+        for (int n = walkU2(); n > 0; n--) { // requires
+            walkIndex();
+            walkU2();
+            walkIndex();
+        }
+        for (int exportsAndOpens = 0; exportsAndOpens < 2; exportsAndOpens++) {
+            for (int n = walkU2(); n > 0; n--) {
+                walkIndex();
+                walkU2();
+                walkIndexes();
+            }
+        }
+        walkIndexes(); // uses
+        for (int n = walkU2(); n > 0; n--) { // provides
+            walkIndex();
+            walkIndexes();
+        }
+    }
+
+    private void walkStackMapTable() throws IOException {
+        for (int n = walkU2(); n > 0; n--) {
+            final int type = walkU1();
+            if (type >= Const.SAME_LOCALS_1_STACK_ITEM_FRAME && type <= Const.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX) {
+                walkVerificationTypes(1);
+            } else if (type == Const.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+                walkU2();
+                walkVerificationTypes(1);
+            } else if (type >= Const.CHOP_FRAME && type <= Const.SAME_FRAME_EXTENDED) {
+                walkU2();
+            } else if (type >= Const.APPEND_FRAME && type <= Const.APPEND_FRAME_MAX) {
+                walkU2();
+                walkVerificationTypes(type - Const.SAME_FRAME_EXTENDED);
+            } else if (type == Const.FULL_FRAME) {
+                walkU2();
+                walkVerificationTypes(walkU2());
+                walkVerificationTypes(walkU2());
+            }
+        }
+    }
+
+    private void walkTypeAnnotation() throws IOException {
+        final int target = walkU1();
+        switch (target) {
+        case 0x00: // type parameter
+        case 0x01:
+        case 0x16: // formal parameter
+            walkU1();
+            break;
+        case 0x10: // supertype
+        case 0x17: // throws
+        case 0x42: // catch
+        case 0x43: // offsets
+        case 0x44:
+        case 0x45:
+        case 0x46:
+            walkU2();
+            break;
+        case 0x11: // type parameter bound
+        case 0x12:
+            walkU1();
+            walkU1();
+            break;
+        case 0x13: // empty
+        case 0x14:
+        case 0x15:
+            break;
+        case 0x40: // local variable
+        case 0x41:
+            walkBytes(walkU2() * 6);
+            break;
+        case 0x47: // type argument
+        case 0x48:
+        case 0x49:
+        case 0x4A:
+        case 0x4B:
+            walkU2();
+            walkU1();
+            break;
+        default:
+            unsupported = true;
+            return;
+        }
+        walkBytes(walkU1() * 2); // type path
+        walkAnnotation();
+    }
+
+    private int walkU1() throws IOException {
+        final int value = in.readUnsignedByte();
+        if (out != null) {
+            out.writeByte(value);
+        }
+        return value;
+    }
+
+    private int walkU2() throws IOException {
+        final int value = in.readUnsignedShort();
+        if (out != null) {
+            out.writeShort(value);
+        }
+        return value;
+    }
+
+    private int walkU4() throws IOException {
+        final int value = in.readInt();
+        if (out != null) {
+            out.writeInt(value);
+        }
+        return value;
+    }
+
+    private void walkVerificationTypes(final int count) throws IOException {
+        for (int n = count; n > 0; n--) {
+            final int tag = walkU1();
+            if (tag == Const.ITEM_Object) {
+                walkIndex();
+            } else if (tag == Const.ITEM_NewObject) {
+                walkU2(); // offset
+            }
+        }
+    }
+}
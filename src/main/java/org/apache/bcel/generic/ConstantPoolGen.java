@@ -103,15 +103,29 @@ public class ConstantPoolGen {
      * @param cs array of given constants, new ones will be appended
      */
     public ConstantPoolGen(final Constant[] cs) {
-        final StringBuilder sb = new StringBuilder(DEFAULT_BUFFER_SIZE);
-
         size = Math.min(Math.max(DEFAULT_BUFFER_SIZE, cs.length + 64), Const.MAX_CP_ENTRIES + 1);
         constants = Arrays.copyOf(cs, size);
 
         if (cs.length > 0) {
             index = cs.length;
         }
+        buildTables();
+    }
 
+    /**
+     * Constructs a new instance with the given constant pool.
+     *
+     * @param cp the constant pool.
+     */
+    public ConstantPoolGen(final ConstantPool cp) {
+        this(cp.getConstantPool());
+    }
+
+    /**
+     * Fills the lookup tables from the constants.
+     */
+    private void buildTables() {
+        final StringBuilder sb = new StringBuilder(DEFAULT_BUFFER_SIZE);
         for (int i = 1; i < index; i++) {
             final Constant c = constants[i];
             if (c instanceof ConstantString) {
@@ -214,15 +228,6 @@ public class ConstantPoolGen {
         }
     }
 
-    /**
-     * Constructs a new instance with the given constant pool.
-     *
-     * @param cp the constant pool.
-     */
-    public ConstantPoolGen(final ConstantPool cp) {
-        this(cp.getConstantPool());
-    }
-
     /**
      * Add a reference to an array class (e.g. String[][]) as needed by MULTIANEWARRAY instruction, e.g. to the
      * ConstantPool.
@@ -743,6 +748,24 @@ public class ConstantPoolGen {
         return getIndex(utf8Table, n);
     }
 
+    /**
+     * Replaces all constants and rebuilds the lookup tables.
+     *
+     * @param cs the new constants, the first {@code count} of which are used.
+     * @param count the new size of the constant pool.
+     */
+    void replaceConstants(final Constant[] cs, final int count) {
+        stringTable.clear();
+        classTable.clear();
+        utf8Table.clear();
+        natTable.clear();
+        cpTable.clear();
+        size = Math.min(Math.max(DEFAULT_BUFFER_SIZE, count + 64), Const.MAX_CP_ENTRIES + 1);
+        constants = Arrays.copyOf(cs, size);
+        index = count;
+        buildTables();
+    }
+
     /**
      * Use with care!
      *
@@ -109,7 +109,7 @@ public class INVOKEDYNAMIC extends InvokeInstruction {
      */
     @Override
     public ReferenceType getReferenceType(final ConstantPoolGen cpg) {
-        return new ObjectType(Object.class.getName());
+        return ObjectType.getInstance(Object.class.getName());
     }
 
     /**
@@ -695,7 +695,7 @@ public class InstructionFactory implements InstructionConstants {
         if (t instanceof ArrayType) {
             at = (ArrayType) t;
         } else {
-            at = new ArrayType(t, dim);
+            at = ArrayType.getInstance(t, dim);
         }
         return new MULTIANEWARRAY(cp.addArrayClass(at), dim);
     }
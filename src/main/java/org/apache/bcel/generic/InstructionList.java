@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.stream.Stream;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.Constant;
@@ -926,26 +927,39 @@ public class InstructionList implements Iterable<InstructionHandle> {
 
     /**
      * Redirect all references from oldTarget to newTarget, i.e., update targets of branch instructions.
+     * <p>
+     * The branches are found through the targeters of oldTarget, so the cost is proportional to their number rather than to
+     * the length of the list.
+     * </p>
      *
      * @param oldTarget the old target instruction handle
      * @param newTarget the new target instruction handle
      */
     public void redirectBranches(final InstructionHandle oldTarget, final InstructionHandle newTarget) {
-        for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
-            final Instruction i = ih.getInstruction();
-            if (i instanceof BranchInstruction) {
-                final BranchInstruction b = (BranchInstruction) i;
-                final InstructionHandle target = b.getTarget();
-                if (target == oldTarget) {
-                    b.setTarget(newTarget);
+        if (oldTarget == null) { // Branches without target are not tracked anywhere
+            for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
+                if (ih.getInstruction() instanceof BranchInstruction) {
+                    redirectBranch((BranchInstruction) ih.getInstruction(), null, newTarget);
                 }
-                if (b instanceof Select) { // Either LOOKUPSWITCH or TABLESWITCH
-                    final InstructionHandle[] targets = ((Select) b).getTargets();
-                    for (int j = 0; j < targets.length; j++) {
-                        if (targets[j] == oldTarget) {
-                            ((Select) b).setTarget(j, newTarget);
-                        }
-                    }
+            }
+            return;
+        }
+        for (final InstructionTargeter targeter : oldTarget.getTargeters()) {
+            if (targeter instanceof BranchInstruction) {
+                redirectBranch((BranchInstruction) targeter, oldTarget, newTarget);
+            }
+        }
+    }
+
+    private static void redirectBranch(final BranchInstruction b, final InstructionHandle oldTarget, final InstructionHandle newTarget) {
+        if (b.getTarget() == oldTarget) {
+            b.setTarget(newTarget);
+        }
+        if (b instanceof Select) { // Either LOOKUPSWITCH or TABLESWITCH
+            final InstructionHandle[] targets = ((Select) b).getTargets();
+            for (int j = 0; j < targets.length; j++) {
+                if (targets[j] == oldTarget) {
+                    ((Select) b).setTarget(j, newTarget);
                 }
             }
         }
@@ -953,6 +967,9 @@ public class InstructionList implements Iterable<InstructionHandle> {
 
     /**
      * Redirect all references of exception handlers from oldTarget to newTarget.
+     * <p>
+     * Only the handlers among the targeters of oldTarget are visited, so this returns at once when oldTarget is not targeted.
+     * </p>
      *
      * @param exceptions array of exception handlers
      * @param oldTarget the old target instruction handle
@@ -960,7 +977,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
      * @see MethodGen
      */
     public void redirectExceptionHandlers(final CodeExceptionGen[] exceptions, final InstructionHandle oldTarget, final InstructionHandle newTarget) {
-        Streams.of(exceptions).forEach(exception -> {
+        targetersOf(CodeExceptionGen.class, exceptions, oldTarget).forEach(exception -> {
             if (exception.getStartPC() == oldTarget) {
                 exception.setStartPC(newTarget);
             }
@@ -975,6 +992,9 @@ public class InstructionList implements Iterable<InstructionHandle> {
 
     /**
      * Redirect all references of local variables from oldTarget to newTarget.
+     * <p>
+     * Only the variables among the targeters of oldTarget are visited, so this returns at once when oldTarget is not targeted.
+     * </p>
      *
      * @param lg array of local variables
      * @param oldTarget the old target instruction handle
@@ -982,7 +1002,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
      * @see MethodGen
      */
     public void redirectLocalVariables(final LocalVariableGen[] lg, final InstructionHandle oldTarget, final InstructionHandle newTarget) {
-        Streams.of(lg).forEach(element -> {
+        targetersOf(LocalVariableGen.class, lg, oldTarget).forEach(element -> {
             if (element.getStart() == oldTarget) {
                 element.setStart(newTarget);
             }
@@ -1137,12 +1157,24 @@ public class InstructionList implements Iterable<InstructionHandle> {
             }
             index += i.getLength();
         }
+        bytePositions = pos;
+        if (maxAdditionalBytes == 0) {
+            // No variable-length instructions, the positions of pass 1 are final.
+            return;
+        }
         /*
          * Pass 2: Expand the variable-length (Branch) Instructions depending on the target offset (short or int) and ensure that
          * branch targets are within this list.
          */
+        boolean resized = false;
         for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
-            additionalBytes += ih.updatePosition(additionalBytes, maxAdditionalBytes);
+            final int delta = ih.updatePosition(additionalBytes, maxAdditionalBytes);
+            additionalBytes += delta;
+            resized |= delta != 0;
+        }
+        if (!resized) {
+            // No instruction changed its length, so nothing has been shifted.
+            return;
         }
         /*
          * Pass 3: Update position numbers (which may have changed due to the preceding expansions), like pass 1.
@@ -1154,7 +1186,36 @@ public class InstructionList implements Iterable<InstructionHandle> {
             pos[count++] = index;
             index += i.getLength();
         }
-        bytePositions = Arrays.copyOfRange(pos, 0, count); // Trim to proper size
+    }
+
+    private static boolean containsSame(final Object[] array, final Object element) {
+        for (final Object e : array) {
+            if (e == element) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the targeters of the given handle that are elements of the given array, or all elements for a null handle, whose
+     * targeters are not tracked.
+     */
+    private static <T extends InstructionTargeter> Stream<T> targetersOf(final Class<T> type, final T[] array, final InstructionHandle target) {
+        if (target == null) {
+            return Streams.of(array);
+        }
+        if (array == null || !target.hasTargeters()) {
+            return Stream.empty();
+        }
+        // A handle has few targeters, so each one is looked up in the array rather than indexing the whole array
+        final List<T> result = new ArrayList<>();
+        for (final InstructionTargeter targeter : target.getTargeters()) {
+            if (type.isInstance(targeter) && containsSame(array, targeter)) {
+                result.add(type.cast(targeter));
+            }
+        }
+        return result.stream();
     }
 
     /**
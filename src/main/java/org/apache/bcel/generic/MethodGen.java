@@ -22,10 +22,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
 import org.apache.bcel.Const;
@@ -44,6 +42,7 @@ import org.apache.bcel.classfile.Method;
 import org.apache.bcel.classfile.ParameterAnnotationEntry;
 import org.apache.bcel.classfile.ParameterAnnotations;
 import org.apache.bcel.classfile.RuntimeVisibleParameterAnnotations;
+import org.apache.bcel.classfile.StackMap;
 import org.apache.bcel.classfile.Utility;
 import org.apache.bcel.util.BCELComparator;
 import org.apache.commons.lang3.ArrayUtils;
@@ -62,46 +61,8 @@ import org.apache.commons.lang3.stream.Streams;
  */
 public class MethodGen extends FieldGenOrMethodGen {
 
-    static final class BranchStack {
-
-        private final Stack<BranchTarget> branchTargets = new Stack<>();
-        private final Hashtable<InstructionHandle, BranchTarget> visitedTargets = new Hashtable<>();
-
-        public BranchTarget pop() {
-            if (!branchTargets.empty()) {
-                return branchTargets.pop();
-            }
-            return null;
-        }
-
-        public void push(final InstructionHandle target, final int stackDepth) {
-            if (visited(target)) {
-                return;
-            }
-            branchTargets.push(visit(target, stackDepth));
-        }
-
-        private BranchTarget visit(final InstructionHandle target, final int stackDepth) {
-            final BranchTarget bt = new BranchTarget(target, stackDepth);
-            visitedTargets.put(target, bt);
-            return bt;
-        }
-
-        private boolean visited(final InstructionHandle target) {
-            return visitedTargets.get(target) != null;
-        }
-    }
-
-    static final class BranchTarget {
-
-        final InstructionHandle target;
-        final int stackDepth;
-
-        BranchTarget(final InstructionHandle target, final int stackDepth) {
-            this.target = target;
-            this.stackDepth = stackDepth;
-        }
-    }
+    /** Marks instructions not reached yet by the control flow analysis in {@link #getMaxs}. */
+    private static final int UNVISITED = Integer.MIN_VALUE;
 
     private static BCELComparator<FieldGenOrMethodGen> bcelComparator = new BCELComparator<FieldGenOrMethodGen>() {
 
@@ -132,75 +93,132 @@ public class MethodGen extends FieldGenOrMethodGen {
     }
 
     /**
-     * Computes stack usage of an instruction list by performing control flow analysis.
+     * Computes stack usage of an instruction list by performing control flow analysis. As a side effect the positions of
+     * the instructions are updated, see {@link InstructionList#setPositions()}.
      *
      * @return maximum stack depth used by method
      */
     public static int getMaxStack(final ConstantPoolGen cp, final InstructionList il, final CodeExceptionGen[] et) {
-        final BranchStack branchTargets = new BranchStack();
+        return getMaxs(cp, il, et, -1)[0];
+    }
+
+    /**
+     * Computes instruction positions, the maximum stack depth and (optionally) the maximum number of local variables in a
+     * single analysis. Instructions are addressed by their ordinal in the list, so the control flow analysis only uses int
+     * arrays: branch targets are mapped to ordinals through the byte positions computed by
+     * {@link InstructionList#setPositions()}.
+     *
+     * @param cp constant pool
+     * @param il instruction list, must not be empty
+     * @param et exception handlers
+     * @param argsSize number of local variable slots taken by 'this' and the arguments, or -1 if max locals are not needed
+     * @return { max stack, max locals }
+     */
+    private static int[] getMaxs(final ConstantPoolGen cp, final InstructionList il, final CodeExceptionGen[] et, final int argsSize) {
+        il.setPositions();
+        final int count = il.getLength();
+        final int[] positions = il.getInstructionPositions();
+        final InstructionHandle[] ihs = new InstructionHandle[count];
+        final int[] deltas = new int[count];
+        int maxLocals = argsSize;
         /*
-         * Initially, populate the branch stack with the exception handlers, because these aren't (necessarily) branched to
-         * explicitly. in each case, the stack will have depth 1, containing the exception object.
+         * Pass 1: Collect the handles, the stack effect of every instruction and the highest local variable slot used.
+         */
+        int i = 0;
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            final Instruction ins = ih.getInstruction();
+            ihs[i] = ih;
+            deltas[i++] = ins.produceStack(cp) - ins.consumeStack(cp);
+            if (argsSize >= 0 && (ins instanceof LocalVariableInstruction || ins instanceof RET || ins instanceof IINC)) {
+                final int index = ((IndexedInstruction) ins).getIndex() + ((TypedInstruction) ins).getType(cp).getSize();
+                if (index > maxLocals) {
+                    maxLocals = index;
+                }
+            }
+        }
+        /*
+         * Pass 2: Control flow analysis. Each instruction is entered at most once, with the stack depth it is first reached
+         * with, so the work list can never hold more than 'count' entries.
+         */
+        final int[] entryDepths = new int[count];
+        Arrays.fill(entryDepths, UNVISITED);
+        final int[] workList = new int[count];
+        int top = 0;
+        /*
+         * Exception handlers aren't (necessarily) branched to explicitly. In each case, the stack will have depth 1,
+         * containing the exception object.
          */
         for (final CodeExceptionGen element : et) {
             final InstructionHandle handlerPc = element.getHandlerPC();
             if (handlerPc != null) {
-                branchTargets.push(handlerPc, 1);
+                top = push(workList, top, entryDepths, getOrdinal(ihs, positions, handlerPc), 1);
             }
         }
-        int stackDepth = 0;
+        if (count > 0) {
+            top = push(workList, top, entryDepths, 0, 0);
+        }
         int maxStackDepth = 0;
-        InstructionHandle ih = il.getStart();
-        while (ih != null) {
-            final Instruction instruction = ih.getInstruction();
-            final short opcode = instruction.getOpcode();
-            final int delta = instruction.produceStack(cp) - instruction.consumeStack(cp);
-            stackDepth += delta;
-            if (stackDepth > maxStackDepth) {
-                maxStackDepth = stackDepth;
-            }
-            // choose the next instruction based on whether current is a branch.
-            if (instruction instanceof BranchInstruction) {
-                final BranchInstruction branch = (BranchInstruction) instruction;
-                if (instruction instanceof Select) {
-                    // explore all of the select's targets. the default target is handled below.
-                    final Select select = (Select) branch;
-                    final InstructionHandle[] targets = select.getTargets();
-                    for (final InstructionHandle target : targets) {
-                        branchTargets.push(target, stackDepth);
+        while (top > 0) {
+            i = workList[--top];
+            int stackDepth = entryDepths[i];
+            while (true) {
+                stackDepth += deltas[i];
+                if (stackDepth > maxStackDepth) {
+                    maxStackDepth = stackDepth;
+                }
+                final Instruction instruction = ihs[i].getInstruction();
+                final short opcode = instruction.getOpcode();
+                // choose the next instruction based on whether current is a branch.
+                if (instruction instanceof BranchInstruction) {
+                    final BranchInstruction branch = (BranchInstruction) instruction;
+                    // for all branches, the target of the branch is explored later.
+                    top = push(workList, top, entryDepths, getOrdinal(ihs, positions, branch.getTarget()), stackDepth);
+                    if (instruction instanceof Select) {
+                        // explore all of the select's targets, there is nothing to fall through to.
+                        for (final InstructionHandle target : ((Select) branch).getTargets()) {
+                            top = push(workList, top, entryDepths, getOrdinal(ihs, positions, target), stackDepth);
+                        }
+                        break;
                     }
-                    // nothing to fall through to.
-                    ih = null;
-                } else if (!(branch instanceof IfInstruction)) {
-                    // if an instruction that comes back to following PC,
-                    // push next instruction, with stack depth reduced by 1.
-                    if (opcode == Const.JSR || opcode == Const.JSR_W) {
-                        branchTargets.push(ih.getNext(), stackDepth - 1);
+                    if (!(branch instanceof IfInstruction)) {
+                        // jsr/jsr_w return to the next instruction, with stack depth reduced by 1.
+                        if ((opcode == Const.JSR || opcode == Const.JSR_W) && i + 1 < count) {
+                            top = push(workList, top, entryDepths, i + 1, stackDepth - 1);
+                        }
+                        break;
                     }
-                    ih = null;
+                } else if (opcode == Const.ATHROW || opcode == Const.RET || opcode >= Const.IRETURN && opcode <= Const.RETURN) {
+                    // instructions that terminate the method.
+                    break;
                 }
-                // for all branches, the target of the branch is pushed on the branch stack.
-                // conditional branches have a fall through case, selects don't, and
-                // jsr/jsr_w return to the next instruction.
-                branchTargets.push(branch.getTarget(), stackDepth);
-            } else // check for instructions that terminate the method.
-            if (opcode == Const.ATHROW || opcode == Const.RET || opcode >= Const.IRETURN && opcode <= Const.RETURN) {
-                ih = null;
-            }
-            // normal case, go to the next instruction.
-            if (ih != null) {
-                ih = ih.getNext();
-            }
-            // if we have no more instructions, see if there are any deferred branches to explore.
-            if (ih == null) {
-                final BranchTarget bt = branchTargets.pop();
-                if (bt != null) {
-                    ih = bt.target;
-                    stackDepth = bt.stackDepth;
+                // normal case, fall through to the next instruction unless it has been explored already.
+                if (++i == count || entryDepths[i] != UNVISITED) {
+                    break;
                 }
+                entryDepths[i] = stackDepth;
             }
         }
-        return maxStackDepth;
+        return new int[] {maxStackDepth, maxLocals};
+    }
+
+    /**
+     * @return the ordinal of the given handle in the instruction array, relies on up to date positions.
+     */
+    private static int getOrdinal(final InstructionHandle[] ihs, final int[] positions, final InstructionHandle ih) {
+        final int i = ih != null ? Arrays.binarySearch(positions, ih.getPosition()) : -1;
+        if (i < 0 || ihs[i] != ih) {
+            throw new ClassGenException("Branch target " + ih + " not in instruction list");
+        }
+        return i;
+    }
+
+    private static int push(final int[] workList, final int top, final int[] entryDepths, final int i, final int stackDepth) {
+        if (entryDepths[i] != UNVISITED) {
+            return top;
+        }
+        entryDepths[i] = stackDepth;
+        workList[top] = i;
+        return top + 1;
     }
 
     /**
@@ -218,6 +236,8 @@ public class MethodGen extends FieldGenOrMethodGen {
     private InstructionList il;
 
     private boolean stripAttributes;
+    private boolean computeStackMap;
+    private CommonSuperclassResolver superclassResolver = CommonSuperclassResolver.REPOSITORY;
     private LocalVariableTypeTable localVariableTypeTable;
     private final List<LocalVariableGen> variableList = new ArrayList<>();
 
@@ -563,6 +583,17 @@ public class MethodGen extends FieldGenOrMethodGen {
         }
     }
 
+    /**
+     * Do/Do not compute the 'StackMapTable' attribute in {@link #getMethod()}, replacing any existing one.
+     *
+     * @param flag whether to compute stack map frames
+     * @see #getStackMap(ConstantPoolGen)
+     * @since 6.10.1
+     */
+    public void computeStackMap(final boolean flag) {
+        computeStackMap = flag;
+    }
+
     /**
      * @return deep copy of this method
      */
@@ -668,6 +699,17 @@ public class MethodGen extends FieldGenOrMethodGen {
         return argTypes.clone();
     }
 
+    /**
+     * @return number of local variable slots taken by 'this' and the arguments
+     */
+    private int getArgumentsSize() {
+        int size = isStatic() ? 0 : 1;
+        for (final Type argType : argTypes) {
+            size += argType.getSize();
+        }
+        return size;
+    }
+
     /**
      * @return class that contains this method
      */
@@ -798,6 +840,9 @@ public class MethodGen extends FieldGenOrMethodGen {
         final ConstantPoolGen cp = super.getConstantPool();
         final int nameIndex = cp.addUtf8(super.getName());
         final int signatureIndex = cp.addUtf8(signature);
+        if (computeStackMap && il != null && !isAbstract() && !isNative()) {
+            StackMapGen.replaceUnreachableCode(this);
+        }
         /*
          * Also updates positions of instructions, i.e., their indices
          */
@@ -822,6 +867,15 @@ public class MethodGen extends FieldGenOrMethodGen {
         if (!lineNumberList.isEmpty() && !stripAttributes) {
             addCodeAttribute(lnt = getLineNumberTable(cp));
         }
+        StackMap smt = null;
+        if (computeStackMap && byteCode != null && !isAbstract() && !isNative()) {
+            // Any existing StackMapTable is stale
+            codeAttrsList.removeIf(StackMap.class::isInstance);
+            smt = new StackMapGen(this, cp, superclassResolver).getStackMap();
+            if (smt != null) {
+                addCodeAttribute(smt);
+            }
+        }
         final Attribute[] codeAttrs = getCodeAttributes();
         /*
          * Each attribute causes 6 additional header bytes
@@ -865,6 +919,9 @@ public class MethodGen extends FieldGenOrMethodGen {
         if (lnt != null) {
             removeCodeAttribute(lnt);
         }
+        if (smt != null) {
+            removeCodeAttribute(smt);
+        }
         if (code != null) {
             removeAttribute(code);
         }
@@ -885,6 +942,30 @@ public class MethodGen extends FieldGenOrMethodGen {
         return Type.getMethodSignature(super.getType(), argTypes);
     }
 
+    /**
+     * Computes the 'StackMapTable' attribute of this method, required by class files of version 50 (Java 6) and later. The
+     * code is simulated with the type lattice of the structural verifier; reference types reaching an instruction on
+     * different paths are merged with the {@link #setCommonSuperclassResolver(CommonSuperclassResolver) resolver}. Max
+     * stack and max locals must have been computed or set. Subroutines (JSR/RET) are not supported.
+     * <p>
+     * Code that cannot be reached is replaced by NOP instructions followed by ATHROW and removed from the ranges of the
+     * exception handlers, as its frame cannot be computed. This changes the instruction list and the exception handlers
+     * of this method.
+     * </p>
+     *
+     * @param cp constant pool
+     * @return 'StackMapTable' attribute, or null if the code needs no stack map frames
+     * @since 6.10.1
+     */
+    public StackMap getStackMap(final ConstantPoolGen cp) {
+        if (il == null) {
+            return null;
+        }
+        StackMapGen.replaceUnreachableCode(this);
+        il.setPositions();
+        return new StackMapGen(this, cp, superclassResolver).getStackMap();
+    }
+
     /**
      * Return value as defined by given BCELComparator strategy. By default return the hash code of the method's name XOR
      * signature.
@@ -1047,6 +1128,17 @@ public class MethodGen extends FieldGenOrMethodGen {
         this.className = className;
     }
 
+    /**
+     * Sets the strategy used to find the common superclass of two reference types when computing the 'StackMapTable'
+     * attribute. By default the classes are looked up in the {@link org.apache.bcel.Repository}.
+     *
+     * @param resolver resolver for common superclasses
+     * @since 6.10.1
+     */
+    public void setCommonSuperclassResolver(final CommonSuperclassResolver resolver) {
+        superclassResolver = Objects.requireNonNull(resolver, "resolver");
+    }
+
     public void setInstructionList(final InstructionList il) { // TODO could be package-protected?
         this.il = il;
     }
@@ -1056,10 +1148,7 @@ public class MethodGen extends FieldGenOrMethodGen {
      */
     public void setMaxLocals() { // TODO could be package-protected? (some tests would need repackaging)
         if (il != null) {
-            int max = isStatic() ? 0 : 1;
-            for (final Type argType : argTypes) {
-                max += argType.getSize();
-            }
+            int max = getArgumentsSize();
             for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
                 final Instruction ins = ih.getInstruction();
                 if (ins instanceof LocalVariableInstruction || ins instanceof RET || ins instanceof IINC) {
@@ -1093,6 +1182,23 @@ public class MethodGen extends FieldGenOrMethodGen {
         }
     }
 
+    /**
+     * Computes max. stack size and the maximum number of local variables in one pass over the instruction list. This is
+     * equivalent to, but faster than, calling {@link #setMaxStack()} and {@link #setMaxLocals()}.
+     *
+     * @since 6.10.1
+     */
+    public void setMaxStackAndLocals() {
+        if (il != null) {
+            final int[] maxs = getMaxs(super.getConstantPool(), il, getExceptionHandlers(), getArgumentsSize());
+            maxStack = maxs[0];
+            maxLocals = maxs[1];
+        } else {
+            maxStack = 0;
+            maxLocals = 0;
+        }
+    }
+
     /**
      * Sets maximum stack size for this method.
      */
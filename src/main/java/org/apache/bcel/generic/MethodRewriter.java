@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Batches changes to the instruction list of a {@link MethodGen} and applies them at once.
+ * <p>
+ * Instructions are inserted, deleted and replaced in the session, and nothing changes in the list until {@link #commit()}. The commit splices the
+ * insertions in and then retargets everything that still refers to a deleted instruction, before it removes the deleted instructions and sets the
+ * positions once. So deleting never throws a {@link TargetLostException}:
+ * </p>
+ * <ul>
+ * <li>branches and exception handler entry points move to the replacement of the deleted instruction if it has one, and otherwise to the surviving
+ * instruction chosen by the {@link TargetPolicy};</li>
+ * <li>exception handler and local variable ranges keep the replacements of their first and last instructions, shrink to their surviving
+ * instructions otherwise, and are removed when none are left;</li>
+ * <li>line numbers move to the next surviving instruction unless it already has one, and are removed otherwise.</li>
+ * </ul>
+ * <pre>
+ * MethodRewriter rewriter = new MethodRewriter(mg);
+ * for (InstructionHandle[] match : deadRanges) {
+ *     rewriter.delete(match[0], match[match.length - 1]);
+ * }
+ * rewriter.commit();
+ * </pre>
+ *
+ * @since 6.10.1
+ */
+public class MethodRewriter {
+
+    /**
+     * Where branches and exception handlers that target a deleted instruction without replacement are moved to.
+     */
+    public enum TargetPolicy {
+
+        /**
+         * The next instruction that is not deleted.
+         */
+        NEXT,
+
+        /**
+         * The previous instruction that is not deleted.
+         */
+        PREVIOUS
+    }
+
+    private static InstructionList toList(final Instruction i) {
+        final InstructionList il = new InstructionList();
+        if (i instanceof BranchInstruction) {
+            il.append((BranchInstruction) i);
+        } else {
+            il.append(i);
+        }
+        return il;
+    }
+
+    private final MethodGen mg;
+    private final TargetPolicy policy;
+    private final Map<InstructionHandle, InstructionList> before = new IdentityHashMap<>();
+    private final Map<InstructionHandle, InstructionList> after = new IdentityHashMap<>();
+    private final Map<InstructionHandle, InstructionHandle> replacements = new IdentityHashMap<>();
+    private final Map<InstructionHandle, InstructionHandle> lastReplacements = new IdentityHashMap<>();
+    private final Set<InstructionHandle> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+    // The pending list each instruction inserted in this session is in until the commit
+    private final Map<InstructionHandle, InstructionList> inserted = new IdentityHashMap<>();
+
+    /**
+     * Constructs a session that moves targets of deleted instructions to the next instruction.
+     *
+     * @param mg the method to rewrite.
+     */
+    public MethodRewriter(final MethodGen mg) {
+        this(mg, TargetPolicy.NEXT);
+    }
+
+    /**
+     * Constructs a session.
+     *
+     * @param mg the method to rewrite.
+     * @param policy where targets of deleted instructions without replacement are moved to.
+     */
+    public MethodRewriter(final MethodGen mg, final TargetPolicy policy) {
+        this.mg = Objects.requireNonNull(mg, "mg");
+        this.policy = Objects.requireNonNull(policy, "policy");
+    }
+
+    private InstructionHandle add(final InstructionList pending, final InstructionList il) {
+        final InstructionHandle first = il.getStart();
+        for (InstructionHandle ih = first; ih != null; ih = ih.getNext()) {
+            inserted.put(ih, pending);
+        }
+        return first;
+    }
+
+    /**
+     * Applies the changes of this session, after which it is empty and can be used again.
+     *
+     * @throws ClassGenException if a branch or exception handler targets a deleted instruction and the policy finds no instruction to move it to.
+     */
+    public void commit() {
+        final InstructionList il = mg.getInstructionList();
+        before.forEach(il::insert);
+        after.forEach(il::append);
+        final InstructionHandle[] handles = il.getInstructionHandles();
+        final Map<InstructionHandle, Integer> positions = new IdentityHashMap<>(handles.length * 2);
+        for (int i = 0; i < handles.length; i++) {
+            positions.put(handles[i], i);
+        }
+        // Surviving neighbors per handle
+        final InstructionHandle[] next = new InstructionHandle[handles.length];
+        final InstructionHandle[] prev = new InstructionHandle[handles.length];
+        for (int i = handles.length - 1; i > 0; i--) {
+            next[i - 1] = deleted.contains(handles[i]) ? next[i] : handles[i];
+        }
+        for (int i = 1; i < handles.length; i++) {
+            prev[i] = deleted.contains(handles[i - 1]) ? prev[i - 1] : handles[i - 1];
+        }
+        for (final InstructionHandle ih : deleted) {
+            if (ih.getInstruction() instanceof BranchInstruction) {
+                ((BranchInstruction) ih.getInstruction()).dispose(); // Release the targets of deleted branches
+            }
+        }
+        final Set<InstructionTargeter> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final InstructionHandle ih : handles) {
+            if (!deleted.contains(ih) || !ih.hasTargeters()) {
+                continue;
+            }
+            for (final InstructionTargeter targeter : ih.getTargeters()) {
+                if (targeter instanceof CodeExceptionGen) {
+                    if (done.add(targeter)) {
+                        retarget((CodeExceptionGen) targeter, positions, next, prev);
+                    }
+                } else if (targeter instanceof LocalVariableGen) {
+                    if (done.add(targeter)) {
+                        retarget((LocalVariableGen) targeter, positions, next, prev);
+                    }
+                } else if (targeter instanceof LineNumberGen) {
+                    final InstructionHandle target = next[positions.get(ih)];
+                    if (target == null || hasLineNumber(target)) {
+                        mg.removeLineNumber((LineNumberGen) targeter);
+                        ih.removeTargeter(targeter);
+                    } else {
+                        targeter.updateTarget(ih, target);
+                    }
+                } else {
+                    targeter.updateTarget(ih, getSuccessor(ih, targeter, positions, next, prev));
+                }
+            }
+        }
+        // Remove the runs of deleted instructions, which are no longer targeted
+        InstructionHandle first = null;
+        for (final InstructionHandle ih : handles) {
+            if (deleted.contains(ih)) {
+                if (first == null) {
+                    first = ih;
+                }
+                if (ih.getNext() == null || !deleted.contains(ih.getNext())) {
+                    try {
+                        il.delete(first, ih);
+                    } catch (final TargetLostException e) {
+                        throw new ClassGenException(e.getMessage(), e);
+                    }
+                    first = null;
+                }
+            }
+        }
+        il.setPositions();
+        before.clear();
+        after.clear();
+        inserted.clear();
+        replacements.clear();
+        lastReplacements.clear();
+        deleted.clear();
+    }
+
+    /**
+     * Deletes an instruction.
+     *
+     * @param ih the instruction to delete, in the list or inserted in this session.
+     */
+    public void delete(final InstructionHandle ih) {
+        deleted.add(Objects.requireNonNull(ih, "ih"));
+    }
+
+    /**
+     * Deletes a range of instructions.
+     *
+     * @param from the first instruction to delete.
+     * @param to the last instruction to delete, which must be {@code from} or follow it.
+     */
+    public void delete(final InstructionHandle from, final InstructionHandle to) {
+        Objects.requireNonNull(to, "to");
+        for (InstructionHandle ih = Objects.requireNonNull(from, "from"); ih != to; ih = ih.getNext()) {
+            if (ih == null) {
+                throw new ClassGenException("Instruction " + to + " does not follow " + from);
+            }
+        }
+        for (InstructionHandle ih = from; ih != to; ih = ih.getNext()) {
+            deleted.add(ih);
+        }
+        deleted.add(to);
+    }
+
+    private InstructionHandle getSuccessor(final InstructionHandle ih, final Object targeter, final Map<InstructionHandle, Integer> positions,
+        final InstructionHandle[] next, final InstructionHandle[] prev) {
+        final InstructionHandle replacement = getReplacement(replacements, ih);
+        if (replacement != null) {
+            return replacement;
+        }
+        final int position = positions.get(ih);
+        final InstructionHandle successor = policy == TargetPolicy.NEXT ? next[position] : prev[position];
+        if (successor == null) {
+            throw new ClassGenException("No " + policy + " instruction to move " + targeter + " to from deleted " + ih);
+        }
+        return successor;
+    }
+
+    private InstructionHandle getReplacement(final Map<InstructionHandle, InstructionHandle> map, final InstructionHandle ih) {
+        final InstructionHandle replacement = map.get(ih);
+        return replacement != null && !deleted.contains(replacement) ? replacement : null;
+    }
+
+    /**
+     * Gets where a range starting at the given instruction starts after the commit.
+     */
+    private InstructionHandle getStart(final InstructionHandle ih, final Map<InstructionHandle, Integer> positions, final InstructionHandle[] next) {
+        if (!deleted.contains(ih)) {
+            return ih;
+        }
+        final InstructionHandle replacement = getReplacement(replacements, ih);
+        return replacement != null ? replacement : next[positions.get(ih)];
+    }
+
+    /**
+     * Gets where a range ending at the given instruction ends after the commit.
+     */
+    private InstructionHandle getEnd(final InstructionHandle ih, final Map<InstructionHandle, Integer> positions, final InstructionHandle[] prev) {
+        if (!deleted.contains(ih)) {
+            return ih;
+        }
+        final InstructionHandle replacement = getReplacement(lastReplacements, ih);
+        return replacement != null ? replacement : prev[positions.get(ih)];
+    }
+
+    private boolean hasLineNumber(final InstructionHandle ih) {
+        for (final InstructionTargeter targeter : ih.getTargeters()) {
+            if (targeter instanceof LineNumberGen) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inserts an instruction after the given one. Branches to the given instruction are not affected.
+     *
+     * @param ih the instruction to insert after, in the list or inserted in this session.
+     * @param i the instruction to insert.
+     * @return the handle of the inserted instruction, which is valid once the session is committed.
+     */
+    public InstructionHandle insertAfter(final InstructionHandle ih, final Instruction i) {
+        return insertAfter(ih, toList(i));
+    }
+
+    /**
+     * Inserts instructions after the given one, after the instructions inserted there before. Consumes the list.
+     *
+     * @param ih the instruction to insert after, in the list or inserted in this session.
+     * @param il the instructions to insert.
+     * @return the handle of the first inserted instruction, which is valid once the session is committed.
+     */
+    public InstructionHandle insertAfter(final InstructionHandle ih, final InstructionList il) {
+        Objects.requireNonNull(ih, "ih");
+        final InstructionList pending = inserted.get(ih);
+        if (pending != null) {
+            final InstructionHandle first = add(pending, il);
+            pending.append(ih, il);
+            return first;
+        }
+        final InstructionList list = after.computeIfAbsent(ih, k -> new InstructionList());
+        final InstructionHandle first = add(list, il);
+        list.append(il);
+        return first;
+    }
+
+    /**
+     * Inserts an instruction before the given one. Branches to the given instruction are not affected.
+     *
+     * @param ih the instruction to insert before, in the list or inserted in this session.
+     * @param i the instruction to insert.
+     * @return the handle of the inserted instruction, which is valid once the session is committed.
+     */
+    public InstructionHandle insertBefore(final InstructionHandle ih, final Instruction i) {
+        return insertBefore(ih, toList(i));
+    }
+
+    /**
+     * Inserts instructions before the given one, after the instructions inserted there before. Consumes the list.
+     *
+     * @param ih the instruction to insert before, in the list or inserted in this session.
+     * @param il the instructions to insert.
+     * @return the handle of the first inserted instruction, which is valid once the session is committed.
+     */
+    public InstructionHandle insertBefore(final InstructionHandle ih, final InstructionList il) {
+        Objects.requireNonNull(ih, "ih");
+        final InstructionList pending = inserted.get(ih);
+        if (pending != null) {
+            final InstructionHandle first = add(pending, il);
+            pending.insert(ih, il);
+            return first;
+        }
+        final InstructionList list = before.computeIfAbsent(ih, k -> new InstructionList());
+        final InstructionHandle first = add(list, il);
+        list.append(il);
+        return first;
+    }
+
+    /**
+     * Replaces an instruction, branches and exception handlers targeting it move to the replacement.
+     *
+     * @param ih the instruction to replace, in the list or inserted in this session.
+     * @param i the replacement.
+     * @return the handle of the replacement, which is valid once the session is committed.
+     */
+    public InstructionHandle replace(final InstructionHandle ih, final Instruction i) {
+        return replace(ih, toList(i));
+    }
+
+    /**
+     * Replaces an instruction by a sequence of instructions, branches and exception handlers targeting it move to the first one. Consumes the list.
+     *
+     * @param ih the instruction to replace, in the list or inserted in this session.
+     * @param il the replacement, which must not be empty.
+     * @return the handle of the first replacement instruction, which is valid once the session is committed.
+     */
+    public InstructionHandle replace(final InstructionHandle ih, final InstructionList il) {
+        if (il.isEmpty()) {
+            throw new ClassGenException("Empty replacement for " + ih);
+        }
+        final InstructionHandle last = il.getEnd();
+        final InstructionHandle first = insertAfter(ih, il);
+        replacements.put(ih, first);
+        lastReplacements.put(ih, last);
+        delete(ih);
+        return first;
+    }
+
+    private void retarget(final CodeExceptionGen c, final Map<InstructionHandle, Integer> positions, final InstructionHandle[] next,
+        final InstructionHandle[] prev) {
+        final InstructionHandle start = getStart(c.getStartPC(), positions, next);
+        final InstructionHandle end = getEnd(c.getEndPC(), positions, prev);
+        if (start == null || end == null || positions.get(start) > positions.get(end)) {
+            mg.removeExceptionHandler(c);
+            c.setStartPC(null);
+            c.setEndPC(null);
+            c.setHandlerPC(null);
+            return;
+        }
+        c.setStartPC(start);
+        c.setEndPC(end);
+        if (deleted.contains(c.getHandlerPC())) {
+            c.setHandlerPC(getSuccessor(c.getHandlerPC(), c, positions, next, prev));
+        }
+    }
+
+    private void retarget(final LocalVariableGen lv, final Map<InstructionHandle, Integer> positions, final InstructionHandle[] next,
+        final InstructionHandle[] prev) {
+        final InstructionHandle start = getStart(lv.getStart(), positions, next);
+        final InstructionHandle end = getEnd(lv.getEnd(), positions, prev);
+        if (start == null || end == null || positions.get(start) > positions.get(end)) {
+            mg.removeLocalVariable(lv);
+            return;
+        }
+        lv.setStart(start);
+        lv.setEnd(end);
+    }
+}
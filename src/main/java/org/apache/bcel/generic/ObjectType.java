@@ -29,14 +29,21 @@ import org.apache.bcel.classfile.Utility;
 public class ObjectType extends ReferenceType {
 
     /**
-     * Constructs a new instance.
+     * Canonical instances by class name, kept in a holder so that {@link Type}'s constants can be initialized through {@link #getInstance(String)}.
+     */
+    private static final class Instances {
+        static final WeakInterner<String, ObjectType> INSTANCES = new WeakInterner<>();
+    }
+
+    /**
+     * Gets the canonical instance for a class name, the same instance is returned as long as it is in use.
      *
      * @param className fully qualified class name, e.g. java.lang.String
-     * @return a new instance.
+     * @return the canonical instance.
      * @since 6.0
      */
     public static ObjectType getInstance(final String className) {
-        return new ObjectType(className);
+        return Instances.INSTANCES.intern(Utility.pathToPackage(className), ObjectType::new);
     }
 
     private final String className; // Class name of type
@@ -70,7 +77,7 @@ public class ObjectType extends ReferenceType {
      */
     @Override
     public boolean equals(final Object type) {
-        return type instanceof ObjectType && ((ObjectType) type).className.equals(className);
+        return this == type || type instanceof ObjectType && ((ObjectType) type).className.equals(className);
     }
 
     /**
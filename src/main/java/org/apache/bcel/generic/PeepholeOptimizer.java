@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+
+/**
+ * Peephole optimizer for the instruction list of a {@link MethodGen}, meant to be run before {@link MethodGen#getMethod()}.
+ * <p>
+ * The optimizer runs its {@link Pass passes} in declaration order and repeats them until none of them changes the code any more. Exception handlers, local
+ * variables and line numbers that target removed instructions are moved to the surrounding instructions, or removed when nothing is left for them to cover.
+ * The maximum stack size may shrink, so callers should call {@link MethodGen#setMaxStackAndLocals()} afterwards.
+ * </p>
+ * <pre>
+ * MethodGen mg = new MethodGen(method, className, cp);
+ * if (new PeepholeOptimizer(cp).optimize(mg)) {
+ *     mg.setMaxStackAndLocals();
+ *     method = mg.getMethod();
+ * }
+ * </pre>
+ *
+ * @since 6.10.1
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * An optimization pass.
+     */
+    public enum Pass {
+
+        /**
+         * Replaces constant loads and local variable accesses by their shortest encoding, for example {@code LDC 3} becomes {@code ICONST_3},
+         * {@code SIPUSH 100} becomes {@code BIPUSH 100}, and {@code ILOAD 2} becomes {@code ILOAD_2}.
+         */
+        SHORT_FORMS,
+
+        /**
+         * Evaluates {@code int} and {@code long} arithmetic, logic, shift and conversion instructions whose operands are pushed by the directly preceding
+         * constant instructions. Divisions by zero are left alone so they still throw at run time.
+         */
+        FOLD_CONSTANTS,
+
+        /**
+         * Redirects branches that target a {@code GOTO} to the final destination of the {@code GOTO} chain and removes {@code GOTO}s to the next instruction.
+         */
+        THREAD_JUMPS,
+
+        /**
+         * Removes instructions that cannot be reached from the method entry or from a reachable exception handler, typically the code after an unconditional
+         * branch, a return or an {@code ATHROW}.
+         */
+        REMOVE_DEAD_CODE,
+
+        /**
+         * Removes side effect free instruction pairs such as a load or constant directly followed by a {@code POP}, {@code DUP POP} and
+         * {@code xLOAD n xSTORE n}.
+         */
+        REMOVE_REDUNDANT_LOADS_AND_STORES
+    }
+
+    private final ConstantPoolGen cp;
+    private final Set<Pass> passes;
+
+    /**
+     * Constructs an optimizer running all passes.
+     *
+     * @param cp the constant pool of the methods to optimize.
+     */
+    public PeepholeOptimizer(final ConstantPoolGen cp) {
+        this(cp, Pass.values());
+    }
+
+    /**
+     * Constructs an optimizer running the given passes.
+     *
+     * @param cp the constant pool of the methods to optimize.
+     * @param passes the passes to run, always run in declaration order.
+     */
+    public PeepholeOptimizer(final ConstantPoolGen cp, final Pass... passes) {
+        this.cp = Objects.requireNonNull(cp, "cp");
+        this.passes = EnumSet.noneOf(Pass.class);
+        Collections.addAll(this.passes, passes);
+    }
+
+    private boolean foldConstants(final MethodGen mg) {
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        boolean changed = false;
+        for (InstructionHandle ih = mg.getInstructionList().getStart(); ih != null; ih = ih.getNext()) {
+            final Instruction i = ih.getInstruction();
+            if (!(i instanceof ArithmeticInstruction || i instanceof ConversionInstruction) || ih.hasTargeters()) {
+                continue;
+            }
+            final InstructionHandle operand2 = ih.getPrev();
+            final Number value2 = operand2 != null ? getConstant(operand2.getInstruction()) : null;
+            if (value2 == null) {
+                continue;
+            }
+            Number folded = fold(i.getOpcode(), value2);
+            InstructionHandle first = operand2;
+            if (folded == null && !operand2.hasTargeters() && operand2.getPrev() != null) {
+                final Number value1 = getConstant(operand2.getPrev().getInstruction());
+                if (value1 != null) {
+                    folded = fold(i.getOpcode(), value1, value2);
+                    first = operand2.getPrev();
+                }
+            }
+            if (folded != null) {
+                first.setInstruction(push(folded));
+                rewriter.delete(first.getNext(), ih);
+                changed = true;
+            }
+        }
+        if (changed) {
+            rewriter.commit();
+        }
+        return changed;
+    }
+
+    /**
+     * Evaluates a unary operation, returns null if the operation cannot be folded.
+     */
+    private static Number fold(final short opcode, final Number value) {
+        if (value instanceof Integer) {
+            final int i = value.intValue();
+            switch (opcode) {
+            case Const.INEG:
+                return -i;
+            case Const.I2L:
+                return (long) i;
+            case Const.I2B:
+                return (int) (byte) i;
+            case Const.I2C:
+                return (int) (char) i;
+            case Const.I2S:
+                return (int) (short) i;
+            default:
+                return null;
+            }
+        }
+        if (value instanceof Long) {
+            final long l = value.longValue();
+            switch (opcode) {
+            case Const.LNEG:
+                return -l;
+            case Const.L2I:
+                return (int) l;
+            default:
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates a binary operation, returns null if the operation cannot be folded.
+     */
+    private static Number fold(final short opcode, final Number value1, final Number value2) {
+        if (value1 instanceof Integer && value2 instanceof Integer) {
+            final int a = value1.intValue();
+            final int b = value2.intValue();
+            switch (opcode) {
+            case Const.IADD:
+                return a + b;
+            case Const.ISUB:
+                return a - b;
+            case Const.IMUL:
+                return a * b;
+            case Const.IDIV:
+                return b != 0 ? a / b : null;
+            case Const.IREM:
+                return b != 0 ? a % b : null;
+            case Const.IAND:
+                return a & b;
+            case Const.IOR:
+                return a | b;
+            case Const.IXOR:
+                return a ^ b;
+            case Const.ISHL:
+                return a << b;
+            case Const.ISHR:
+                return a >> b;
+            case Const.IUSHR:
+                return a >>> b;
+            default:
+                return null;
+            }
+        }
+        if (value1 instanceof Long && value2 instanceof Integer) {
+            final long a = value1.longValue();
+            final int b = value2.intValue();
+            switch (opcode) {
+            case Const.LSHL:
+                return a << b;
+            case Const.LSHR:
+                return a >> b;
+            case Const.LUSHR:
+                return a >>> b;
+            default:
+                return null;
+            }
+        }
+        if (value1 instanceof Long && value2 instanceof Long) {
+            final long a = value1.longValue();
+            final long b = value2.longValue();
+            switch (opcode) {
+            case Const.LADD:
+                return a + b;
+            case Const.LSUB:
+                return a - b;
+            case Const.LMUL:
+                return a * b;
+            case Const.LDIV:
+                return b != 0 ? a / b : null;
+            case Const.LREM:
+                return b != 0 ? a % b : null;
+            case Const.LAND:
+                return a & b;
+            case Const.LOR:
+                return a | b;
+            case Const.LXOR:
+                return a ^ b;
+            default:
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the numeric constant pushed by the given instruction, or null.
+     */
+    private Number getConstant(final Instruction i) {
+        if (i instanceof ConstantPushInstruction) {
+            return ((ConstantPushInstruction) i).getValue();
+        }
+        if (i instanceof LDC) {
+            final Object value = ((LDC) i).getValue(cp);
+            return value instanceof Integer || value instanceof Float ? (Number) value : null;
+        }
+        if (i instanceof LDC2_W) {
+            return ((LDC2_W) i).getValue(cp);
+        }
+        return null;
+    }
+
+    /**
+     * Runs the configured passes over the instruction list of the given method until the code does not change any more.
+     *
+     * @param mg the method to optimize in place.
+     * @return whether the instruction list was changed.
+     * @throws ClassGenException if the code is malformed, for example if it falls off its end.
+     */
+    public boolean optimize(final MethodGen mg) {
+        final InstructionList il = mg.getInstructionList();
+        if (il == null || il.isEmpty()) {
+            return false;
+        }
+        boolean optimized = false;
+        boolean changed;
+        do {
+            changed = false;
+            for (final Pass pass : passes) {
+                changed |= run(pass, mg);
+            }
+            optimized |= changed;
+        } while (changed);
+        return optimized;
+    }
+
+    /**
+     * Gets the instruction that eventually executes when jumping to the given target, following {@code GOTO} chains.
+     * Chains that end in an endless loop of {@code GOTO}s are not followed, so that threading them cannot go on forever.
+     */
+    private static InstructionHandle getFinalTarget(final InstructionHandle target) {
+        final Set<InstructionHandle> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        InstructionHandle ih = target;
+        while (ih.getInstruction() instanceof GotoInstruction) {
+            if (!seen.add(ih)) {
+                return target;
+            }
+            ih = ((GotoInstruction) ih.getInstruction()).getTarget();
+        }
+        return ih;
+    }
+
+    private boolean removeDeadCode(final MethodGen mg) {
+        final InstructionList il = mg.getInstructionList();
+        final Set<InstructionHandle> reached = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<InstructionHandle> workList = new ArrayDeque<>();
+        workList.push(il.getStart());
+        final CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        final boolean[] handlerReached = new boolean[handlers.length];
+        boolean pending = true;
+        while (pending) {
+            while (!workList.isEmpty()) {
+                for (InstructionHandle ih = workList.pop(); ih != null && reached.add(ih); ih = ih.getNext()) {
+                    final Instruction i = ih.getInstruction();
+                    if (i instanceof BranchInstruction) {
+                        workList.push(((BranchInstruction) i).getTarget());
+                        if (i instanceof Select) {
+                            Collections.addAll(workList, ((Select) i).getTargets());
+                        }
+                    }
+                    if (i instanceof GotoInstruction || i instanceof Select || i instanceof ReturnInstruction || i instanceof RET || i instanceof ATHROW) {
+                        break;
+                    }
+                    if (ih.getNext() == null && !(i instanceof JsrInstruction)) {
+                        throw new ClassGenException("Execution falls off the end of the code after " + ih);
+                    }
+                }
+            }
+            // A handler is reachable once one of the instructions it covers is.
+            pending = false;
+            for (int h = 0; h < handlers.length; h++) {
+                if (!handlerReached[h] && covers(handlers[h], reached)) {
+                    handlerReached[h] = true;
+                    workList.push(handlers[h].getHandlerPC());
+                    pending = true;
+                }
+            }
+        }
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        boolean changed = false;
+        InstructionHandle ih = il.getStart();
+        while (ih != null) {
+            if (reached.contains(ih)) {
+                ih = ih.getNext();
+                continue;
+            }
+            final InstructionHandle from = ih;
+            while (ih.getNext() != null && !reached.contains(ih.getNext())) {
+                ih = ih.getNext();
+            }
+            final InstructionHandle to = ih;
+            ih = ih.getNext();
+            rewriter.delete(from, to);
+            changed = true;
+        }
+        if (changed) {
+            rewriter.commit();
+        }
+        return changed;
+    }
+
+    private static boolean covers(final CodeExceptionGen handler, final Set<InstructionHandle> reached) {
+        for (InstructionHandle ih = handler.getStartPC(); ih != null; ih = ih.getNext()) {
+            if (reached.contains(ih)) {
+                return true;
+            }
+            if (ih == handler.getEndPC()) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private boolean removeRedundantLoadsAndStores(final MethodGen mg) {
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        boolean changed = false;
+        InstructionHandle ih = mg.getInstructionList().getStart();
+        while (ih != null && ih.getNext() != null) {
+            final InstructionHandle second = ih.getNext();
+            if (!second.hasTargeters() && isRedundantPair(ih.getInstruction(), second.getInstruction())) {
+                final InstructionHandle next = second.getNext();
+                rewriter.delete(ih, second);
+                ih = next;
+                changed = true;
+            } else {
+                ih = second;
+            }
+        }
+        if (changed) {
+            rewriter.commit();
+        }
+        return changed;
+    }
+
+    private boolean isRedundantPair(final Instruction first, final Instruction second) {
+        if (second instanceof POP || second instanceof POP2) {
+            final int size = second instanceof POP ? 1 : 2;
+            if (first instanceof DUP || first instanceof DUP2) {
+                return first.produceStack(cp) == size * 2;
+            }
+            if (first instanceof LoadInstruction || first instanceof ConstantPushInstruction || first instanceof LDC2_W) {
+                return ((TypedInstruction) first).getType(cp).getSize() == size;
+            }
+            if (first instanceof LDC) {
+                // Loading a class or a dynamic constant may fail, strings and numbers are side effect free.
+                final Object value = ((LDC) first).getValue(cp);
+                return size == 1 && (value instanceof Number || value instanceof String);
+            }
+            return false;
+        }
+        if (first instanceof LoadInstruction && second instanceof StoreInstruction) {
+            final LocalVariableInstruction load = (LocalVariableInstruction) first;
+            final LocalVariableInstruction store = (LocalVariableInstruction) second;
+            return load.getIndex() == store.getIndex() && load.getType(cp).equals(store.getType(cp));
+        }
+        return false;
+    }
+
+    private boolean run(final Pass pass, final MethodGen mg) {
+        switch (pass) {
+        case SHORT_FORMS:
+            return useShortForms(mg);
+        case FOLD_CONSTANTS:
+            return foldConstants(mg);
+        case THREAD_JUMPS:
+            return threadJumps(mg);
+        case REMOVE_DEAD_CODE:
+            return removeDeadCode(mg);
+        case REMOVE_REDUNDANT_LOADS_AND_STORES:
+            return removeRedundantLoadsAndStores(mg);
+        default:
+            throw new IllegalArgumentException(Objects.toString(pass));
+        }
+    }
+
+    private boolean threadJumps(final MethodGen mg) {
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        boolean changed = false;
+        InstructionHandle ih = mg.getInstructionList().getStart();
+        while (ih != null) {
+            final InstructionHandle next = ih.getNext();
+            final Instruction i = ih.getInstruction();
+            if (i instanceof BranchInstruction && !(i instanceof JsrInstruction)) {
+                final BranchInstruction bi = (BranchInstruction) i;
+                if (i instanceof GotoInstruction && bi.getTarget() == next) {
+                    rewriter.delete(ih);
+                    changed = true;
+                    ih = next;
+                    continue;
+                }
+                final InstructionHandle target = getFinalTarget(bi.getTarget());
+                if (target != bi.getTarget() && target != ih) {
+                    bi.setTarget(target);
+                    changed = true;
+                }
+                if (i instanceof Select) {
+                    final Select select = (Select) i;
+                    final InstructionHandle[] targets = select.getTargets();
+                    for (int t = 0; t < targets.length; t++) {
+                        final InstructionHandle finalTarget = getFinalTarget(targets[t]);
+                        if (finalTarget != targets[t]) {
+                            select.setTarget(t, finalTarget);
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            ih = next;
+        }
+        if (changed) {
+            rewriter.commit();
+        }
+        return changed;
+    }
+
+    /**
+     * @return the shortest instruction that pushes the constant. Unlike {@link PUSH}, it keeps -0.0, which FCONST_0 and
+     *         DCONST_0 would turn into 0.0.
+     */
+    private Instruction push(final Number value) {
+        if (value instanceof Float) {
+            final int bits = Float.floatToIntBits(value.floatValue());
+            if (bits != Float.floatToIntBits(0) && bits != Float.floatToIntBits(1) && bits != Float.floatToIntBits(2)) {
+                return new LDC(cp.addFloat(value.floatValue()));
+            }
+        } else if (value instanceof Double) {
+            final long bits = Double.doubleToLongBits(value.doubleValue());
+            if (bits != Double.doubleToLongBits(0) && bits != Double.doubleToLongBits(1)) {
+                return new LDC2_W(cp.addDouble(value.doubleValue()));
+            }
+        }
+        return new PUSH(cp, value).getInstruction();
+    }
+
+    private boolean useShortForms(final MethodGen mg) {
+        boolean changed = false;
+        for (InstructionHandle ih = mg.getInstructionList().getStart(); ih != null; ih = ih.getNext()) {
+            final Instruction i = ih.getInstruction();
+            Instruction shorter = null;
+            if (i instanceof LocalVariableInstruction && !(i instanceof IINC)) {
+                final LocalVariableInstruction lvi = (LocalVariableInstruction) i;
+                final int index = lvi.getIndex();
+                if (lvi.getLength() > (index <= 3 ? 1 : index <= Const.MAX_BYTE ? 2 : 4)) {
+                    // Recomputes the opcode and length from the index.
+                    lvi.setIndex(index);
+                    changed = true;
+                }
+            } else if (i instanceof BIPUSH || i instanceof SIPUSH || i instanceof LDC || i instanceof LDC2_W) {
+                final Number value = getConstant(i);
+                if (value != null) {
+                    shorter = push(value);
+                } else if (i instanceof LDC && ((LDC) i).getIndex() <= Const.MAX_BYTE) {
+                    shorter = new LDC(((LDC) i).getIndex());
+                }
+            }
+            if (shorter != null && shorter.getLength() < i.getLength()) {
+                ih.setInstruction(shorter);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -99,7 +99,7 @@ public abstract class ReferenceType extends Type {
             final ArrayType arrType2 = (ArrayType) t;
             if (arrType1.getDimensions() == arrType2.getDimensions() && arrType1.getBasicType() instanceof ObjectType
                 && arrType2.getBasicType() instanceof ObjectType) {
-                return new ArrayType(((ObjectType) arrType1.getBasicType()).getFirstCommonSuperclass((ObjectType) arrType2.getBasicType()),
+                return ArrayType.getInstance(((ObjectType) arrType1.getBasicType()).getFirstCommonSuperclass((ObjectType) arrType2.getBasicType()),
                     arrType1.getDimensions());
             }
         }
@@ -121,27 +121,10 @@ public abstract class ReferenceType extends Type {
         // this and t are ObjectTypes, see above.
         final ObjectType thiz = (ObjectType) this;
         final ObjectType other = (ObjectType) t;
-        final JavaClass[] thizSups = Repository.getSuperClasses(thiz.getClassName());
-        final JavaClass[] otherSups = Repository.getSuperClasses(other.getClassName());
-        if (thizSups == null || otherSups == null) {
-            return null;
-        }
-        // Waaahh...
-        final JavaClass[] thisSups = new JavaClass[thizSups.length + 1];
-        final JavaClass[] tSups = new JavaClass[otherSups.length + 1];
-        System.arraycopy(thizSups, 0, thisSups, 1, thizSups.length);
-        System.arraycopy(otherSups, 0, tSups, 1, otherSups.length);
-        thisSups[0] = Repository.lookupClass(thiz.getClassName());
-        tSups[0] = Repository.lookupClass(other.getClassName());
-        for (final JavaClass tSup : tSups) {
-            for (final JavaClass thisSup : thisSups) {
-                if (thisSup.equals(tSup)) {
-                    return ObjectType.getInstance(thisSup.getClassName());
-                }
-            }
-        }
-        // Huh? Did you ask for OBJECT's superclass??
-        return null;
+        final JavaClass common = Repository.getClassHierarchy().getFirstCommonSuperclass(Repository.lookupClass(thiz.getClassName()),
+            Repository.lookupClass(other.getClassName()));
+        // Null if you asked for OBJECT's superclass
+        return common == null ? null : ObjectType.getInstance(common.getClassName());
     }
 
     /**
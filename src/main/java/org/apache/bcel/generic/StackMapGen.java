@@ -0,0 +1,612 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+import org.apache.bcel.classfile.StackMapType;
+import org.apache.bcel.verifier.structurals.ExecutionVisitor;
+import org.apache.bcel.verifier.structurals.Frame;
+import org.apache.bcel.verifier.structurals.LocalVariables;
+import org.apache.bcel.verifier.structurals.OperandStack;
+import org.apache.bcel.verifier.structurals.UninitializedObjectType;
+
+/**
+ * Computes the 'StackMapTable' attribute of a method. The code is simulated with the {@link ExecutionVisitor} of the
+ * structural verifier, i.e. the types of the locals and of the operand stack are represented by its {@link Frame}s.
+ * Frames of different control flow paths are merged at every instruction that needs a stack map frame (branch targets,
+ * exception handlers and instructions following an unconditional transfer of control) until a fixed point is reached;
+ * common superclasses are determined by a {@link CommonSuperclassResolver}.
+ * <p>
+ * The frames are emitted in their most compact form (same, same_locals_1_stack_item, chop, append or full frame).
+ * Subroutines (JSR/RET) are not supported. Unreachable code must have been replaced by
+ * {@link #replaceUnreachableCode(MethodGen)}.
+ * </p>
+ *
+ * @see MethodGen#getStackMap(ConstantPoolGen)
+ */
+final class StackMapGen {
+
+    /**
+     * Simulates NEW so that the uninitialized objects created by the same instruction are identical and can be mapped back
+     * to the offset of that instruction.
+     */
+    private final class Simulator extends ExecutionVisitor {
+
+        @Override
+        public void visitNEW(final NEW o) {
+            UninitializedObjectType t = newTypes[current];
+            if (t == null) {
+                t = new UninitializedObjectType((ObjectType) o.getType(cp));
+                newTypes[current] = t;
+                newOffsets.put(t, Integer.valueOf(positions[current]));
+            }
+            working.getStack().push(t);
+        }
+    }
+
+    private static int getOrdinal(final InstructionHandle[] ihs, final int[] positions, final InstructionHandle ih) {
+        final int i = ih != null ? Arrays.binarySearch(positions, ih.getPosition()) : -1;
+        if (i < 0 || ihs[i] != ih) {
+            throw new ClassGenException("Branch target " + ih + " not in instruction list");
+        }
+        return i;
+    }
+
+    private static boolean isWide(final Type t) {
+        return t.equals(Type.LONG) || t.equals(Type.DOUBLE);
+    }
+
+    /**
+     * Marks an instruction as reachable and queues it if it was not marked before.
+     *
+     * @return the new top of the work list
+     */
+    private static int markReachable(final int i, final boolean[] reachable, final int[] workList, final int top) {
+        if (reachable[i]) {
+            return top;
+        }
+        reachable[i] = true;
+        workList[top] = i;
+        return top + 1;
+    }
+
+    private static Type normalize(final Type t) {
+        if (t.equals(Type.BOOLEAN) || t.equals(Type.BYTE) || t.equals(Type.CHAR) || t.equals(Type.SHORT)) {
+            return Type.INT;
+        }
+        return t;
+    }
+
+    /**
+     * Replaces the code that cannot be reached from the start of the method by NOP instructions followed by ATHROW and
+     * removes it from the ranges of the exception handlers. The verifier requires a stack map frame after every
+     * unconditional transfer of control, but there is no frame to compute for code that is never executed; the replaced
+     * code is valid with a frame that has no locals and a Throwable on the stack.
+     *
+     * @param mg method, its instruction list and exception handlers are changed
+     */
+    static void replaceUnreachableCode(final MethodGen mg) {
+        final InstructionList il = mg.getInstructionList();
+        if (il == null || il.isEmpty()) {
+            return;
+        }
+        il.setPositions();
+        final InstructionHandle[] ihs = il.getInstructionHandles();
+        final int[] positions = il.getInstructionPositions();
+        final CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        final boolean[] reachable = new boolean[ihs.length];
+        final int[] workList = new int[ihs.length];
+        int top = markReachable(0, reachable, workList, 0);
+        while (top > 0) {
+            while (top > 0) {
+                final int i = workList[--top];
+                final Instruction ins = ihs[i].getInstruction();
+                if (ins instanceof JsrInstruction || ins instanceof RET) {
+                    return; // reported by the constructor
+                }
+                if (ins instanceof BranchInstruction) {
+                    top = markReachable(getOrdinal(ihs, positions, ((BranchInstruction) ins).getTarget()), reachable, workList, top);
+                    if (ins instanceof Select) {
+                        for (final InstructionHandle target : ((Select) ins).getTargets()) {
+                            top = markReachable(getOrdinal(ihs, positions, target), reachable, workList, top);
+                        }
+                    }
+                }
+                if (i + 1 < ihs.length && !(ins instanceof UnconditionalBranch || ins instanceof Select || ins instanceof ReturnInstruction || ins instanceof ATHROW)) {
+                    top = markReachable(i + 1, reachable, workList, top);
+                }
+            }
+            // the handlers of reachable instructions are reachable
+            for (final CodeExceptionGen handler : handlers) {
+                final int handlerPc = getOrdinal(ihs, positions, handler.getHandlerPC());
+                if (!reachable[handlerPc]) {
+                    final int end = getOrdinal(ihs, positions, handler.getEndPC());
+                    for (int i = getOrdinal(ihs, positions, handler.getStartPC()); i <= end; i++) {
+                        if (reachable[i]) {
+                            top = markReachable(handlerPc, reachable, workList, top);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        boolean unreachable = false;
+        for (final boolean r : reachable) {
+            unreachable |= !r;
+        }
+        if (!unreachable) {
+            return;
+        }
+        removeUnreachableRanges(mg, handlers, ihs, positions, reachable);
+        for (int i = 0; i < ihs.length; i++) {
+            if (!reachable[i]) {
+                final Instruction replacement = i + 1 == ihs.length || reachable[i + 1] ? InstructionConst.ATHROW : InstructionConst.NOP;
+                if (ihs[i] instanceof BranchHandle) {
+                    // a branch handle cannot hold other instructions
+                    final InstructionHandle ih = il.insert(ihs[i], replacement);
+                    for (final InstructionTargeter targeter : ihs[i].getTargeters()) {
+                        targeter.updateTarget(ihs[i], ih);
+                    }
+                    try {
+                        il.delete(ihs[i]);
+                    } catch (final TargetLostException e) {
+                        throw new ClassGenException("Cannot replace unreachable " + ihs[i] + ": " + e, e);
+                    }
+                } else {
+                    ihs[i].setInstruction(replacement);
+                }
+            }
+        }
+        if (mg.getMaxStack() < 1) {
+            mg.setMaxStack(1);
+        }
+    }
+
+    /**
+     * Restricts the ranges of the exception handlers to reachable code, splitting them if necessary.
+     */
+    private static void removeUnreachableRanges(final MethodGen mg, final CodeExceptionGen[] handlers, final InstructionHandle[] ihs, final int[] positions,
+        final boolean[] reachable) {
+        final List<List<int[]>> ranges = new ArrayList<>(handlers.length);
+        boolean split = false;
+        for (final CodeExceptionGen handler : handlers) {
+            final List<int[]> handlerRanges = new ArrayList<>();
+            final int end = getOrdinal(ihs, positions, handler.getEndPC());
+            for (int i = getOrdinal(ihs, positions, handler.getStartPC()); i <= end; i++) {
+                if (reachable[i]) {
+                    final int start = i;
+                    while (i < end && reachable[i + 1]) {
+                        i++;
+                    }
+                    handlerRanges.add(new int[] {start, i});
+                }
+            }
+            split |= handlerRanges.size() > 1;
+            ranges.add(handlerRanges);
+        }
+        if (split) {
+            // the order of the handlers matters, so they are all added again
+            mg.removeExceptionHandlers();
+        }
+        for (int h = 0; h < handlers.length; h++) {
+            final CodeExceptionGen handler = handlers[h];
+            final List<int[]> handlerRanges = ranges.get(h);
+            if (split) {
+                for (final int[] range : handlerRanges) {
+                    mg.addExceptionHandler(ihs[range[0]], ihs[range[1]], handler.getHandlerPC(), handler.getCatchType());
+                }
+            } else if (handlerRanges.size() == 1) {
+                handler.setStartPC(ihs[handlerRanges.get(0)[0]]);
+                handler.setEndPC(ihs[handlerRanges.get(0)[1]]);
+                continue;
+            } else {
+                mg.removeExceptionHandler(handler);
+            }
+            // release the handles of the removed handler
+            handler.setStartPC(null);
+            handler.setEndPC(null);
+            handler.setHandlerPC(null);
+        }
+    }
+
+    private static boolean sameTypes(final StackMapType[] a, final StackMapType[] b, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i].getType() != b[i].getType() || a[i].getIndex() != b[i].getIndex()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final ConstantPoolGen cp;
+    private final CommonSuperclassResolver resolver;
+    private final InstructionHandle[] ihs;
+    private final int[] positions;
+    private final int maxLocals;
+    private final int maxStack;
+    private final CodeExceptionGen[] handlers;
+    private final int[] handlerStarts;
+    private final int[] handlerEnds;
+    private final int[] handlerTargets;
+
+    /** Instructions that need a stack map frame, indexed by ordinal. */
+    private final boolean[] framePoints;
+
+    /** Frames at the frame points (and the method entry), null if not reached (yet). */
+    private final Frame[] frames;
+
+    /** Work list of frame points whose frame has changed. */
+    private final int[] workList;
+    private final boolean[] queued;
+    private int top;
+
+    private final UninitializedObjectType[] newTypes;
+    private final Map<UninitializedObjectType, Integer> newOffsets = new IdentityHashMap<>();
+    private final UninitializedObjectType uninitializedThis;
+    private final Simulator simulator = new Simulator();
+
+    /** The frame being simulated and the ordinal of its current instruction. */
+    private Frame working;
+    private int current;
+
+    /**
+     * @param mg method, the positions of its instructions as well as max stack and max locals must be up to date
+     * @param cp constant pool
+     * @param resolver used to merge reference types
+     */
+    StackMapGen(final MethodGen mg, final ConstantPoolGen cp, final CommonSuperclassResolver resolver) {
+        this.cp = cp;
+        this.resolver = resolver;
+        final InstructionList il = mg.getInstructionList();
+        ihs = il.getInstructionHandles();
+        positions = il.getInstructionPositions();
+        maxLocals = mg.getMaxLocals();
+        maxStack = mg.getMaxStack();
+        final int count = ihs.length;
+        framePoints = new boolean[count];
+        frames = new Frame[count];
+        workList = new int[count];
+        queued = new boolean[count];
+        newTypes = new UninitializedObjectType[count];
+        handlers = mg.getExceptionHandlers();
+        handlerStarts = new int[handlers.length];
+        handlerEnds = new int[handlers.length];
+        handlerTargets = new int[handlers.length];
+        for (int h = 0; h < handlers.length; h++) {
+            handlerStarts[h] = getOrdinal(handlers[h].getStartPC());
+            handlerEnds[h] = getOrdinal(handlers[h].getEndPC());
+            handlerTargets[h] = getOrdinal(handlers[h].getHandlerPC());
+            framePoints[handlerTargets[h]] = true;
+        }
+        for (int i = 0; i < count; i++) {
+            final Instruction ins = ihs[i].getInstruction();
+            if (ins instanceof JsrInstruction || ins instanceof RET) {
+                throw new ClassGenException("Cannot compute stack map frames for subroutines: " + ihs[i]);
+            }
+            if (ins instanceof BranchInstruction) {
+                framePoints[getOrdinal(((BranchInstruction) ins).getTarget())] = true;
+                if (ins instanceof Select) {
+                    for (final InstructionHandle target : ((Select) ins).getTargets()) {
+                        framePoints[getOrdinal(target)] = true;
+                    }
+                }
+            }
+            if (i + 1 < count && (ins instanceof UnconditionalBranch || ins instanceof Select || ins instanceof ReturnInstruction || ins instanceof ATHROW)) {
+                framePoints[i + 1] = true;
+            }
+        }
+        final boolean isInit = Const.CONSTRUCTOR_NAME.equals(mg.getName()) && !Type.OBJECT.getClassName().equals(mg.getClassName());
+        uninitializedThis = isInit ? new UninitializedObjectType(ObjectType.getInstance(mg.getClassName())) : null;
+        simulator.setConstantPoolGen(cp);
+        if (count > 0) {
+            frames[0] = getInitialFrame(mg);
+        }
+    }
+
+    /**
+     * Simulates the straight-line code starting at the given frame point, propagating the resulting frames to all
+     * successor frame points and exception handlers.
+     */
+    private void execute(final int start) {
+        working = frames[start].getClone();
+        current = start;
+        while (true) {
+            final Instruction ins = ihs[current].getInstruction();
+            // the exception handlers see the locals as they are before the instruction is executed.
+            for (int h = 0; h < handlers.length; h++) {
+                if (handlerStarts[h] <= current && current <= handlerEnds[h]) {
+                    final ObjectType catchType = handlers[h].getCatchType();
+                    final OperandStack stack = new OperandStack(Math.max(maxStack, 1));
+                    stack.push(catchType != null ? catchType : Type.THROWABLE);
+                    merge(new Frame(working.getLocals().getClone(), stack), handlerTargets[h]);
+                }
+            }
+            simulator.setFrame(working);
+            ins.accept(simulator);
+            if (ins instanceof BranchInstruction) {
+                merge(working, getOrdinal(((BranchInstruction) ins).getTarget()));
+                if (ins instanceof Select) {
+                    for (final InstructionHandle target : ((Select) ins).getTargets()) {
+                        merge(working, getOrdinal(target));
+                    }
+                }
+                if (!(ins instanceof IfInstruction)) {
+                    return;
+                }
+            } else if (ins instanceof ReturnInstruction || ins instanceof ATHROW) {
+                return;
+            }
+            if (++current == ihs.length) {
+                throw new ClassGenException("Execution falls off the end of the code after " + ihs[current - 1]);
+            }
+            if (framePoints[current]) {
+                merge(working, current);
+                return;
+            }
+        }
+    }
+
+    private Frame getInitialFrame(final MethodGen mg) {
+        final LocalVariables locals = new LocalVariables(maxLocals);
+        int slot = 0;
+        if (!mg.isStatic()) {
+            locals.set(slot++, uninitializedThis != null ? uninitializedThis : ObjectType.getInstance(mg.getClassName()));
+        }
+        for (final Type argType : mg.getArgumentTypes()) {
+            locals.set(slot, normalize(argType));
+            slot += argType.getSize();
+        }
+        return new Frame(locals, new OperandStack(maxStack));
+    }
+
+    /**
+     * @return the frame of code replaced by {@link #replaceUnreachableCode(MethodGen)}: no locals and a Throwable on the stack
+     */
+    private Frame getUnreachableFrame(final int i) {
+        int j = i;
+        while (j < ihs.length && ihs[j].getInstruction() == InstructionConst.NOP) {
+            j++;
+        }
+        if (j == ihs.length || !(ihs[j].getInstruction() instanceof ATHROW)) {
+            throw new ClassGenException("Cannot compute stack map frame for unreachable code at " + ihs[i]);
+        }
+        final OperandStack stack = new OperandStack(Math.max(maxStack, 1));
+        stack.push(Type.THROWABLE);
+        return new Frame(new LocalVariables(maxLocals), stack);
+    }
+
+    private int getOrdinal(final InstructionHandle ih) {
+        return getOrdinal(ihs, positions, ih);
+    }
+
+    /**
+     * @return 'StackMapTable' attribute, or null if the code does not need any stack map frames
+     */
+    StackMap getStackMap() {
+        if (ihs.length == 0) {
+            return null;
+        }
+        // The first frame is relative to the initial frame, not to the frame at offset 0 after merging the branches to it
+        StackMapType[] previous = getTypesOfLocals(frames[0]);
+        workList[top++] = 0;
+        queued[0] = true;
+        while (top > 0) {
+            final int i = workList[--top];
+            queued[i] = false;
+            execute(i);
+        }
+        final ConstantPool constantPool = cp.getConstantPool();
+        final List<StackMapEntry> entries = new ArrayList<>();
+        int previousOffset = -1;
+        for (int i = 0; i < ihs.length; i++) {
+            if (!framePoints[i]) {
+                continue;
+            }
+            if (frames[i] == null) {
+                frames[i] = getUnreachableFrame(i);
+            }
+            final StackMapType[] locals = getTypesOfLocals(frames[i]);
+            final StackMapType[] stack = getTypesOfStackItems(frames[i]);
+            final int delta = positions[i] - previousOffset - 1;
+            entries.add(getStackMapEntry(delta, previous, locals, stack, constantPool));
+            previous = locals;
+            previousOffset = positions[i];
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        final StackMap stackMap = new StackMap(cp.addUtf8("StackMapTable"), 0, null, constantPool);
+        stackMap.setStackMap(entries.toArray(new StackMapEntry[entries.size()]));
+        return stackMap;
+    }
+
+    /**
+     * @return the most compact entry describing the given frame relative to the previous one
+     */
+    private StackMapEntry getStackMapEntry(final int delta, final StackMapType[] previous, final StackMapType[] locals, final StackMapType[] stack,
+        final ConstantPool constantPool) {
+        final boolean sameLocals = locals.length == previous.length && sameTypes(locals, previous, locals.length);
+        if (sameLocals && stack.length == 0) {
+            return new StackMapEntry(delta <= Const.SAME_FRAME_MAX ? Const.SAME_FRAME + delta : Const.SAME_FRAME_EXTENDED, delta, null, null, constantPool);
+        }
+        if (sameLocals && stack.length == 1) {
+            return new StackMapEntry(delta <= Const.SAME_FRAME_MAX ? Const.SAME_LOCALS_1_STACK_ITEM_FRAME + delta : Const.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED,
+                delta, null, stack, constantPool);
+        }
+        if (stack.length == 0) {
+            final int diff = locals.length - previous.length;
+            if (diff < 0 && diff >= -3 && sameTypes(locals, previous, locals.length)) {
+                return new StackMapEntry(Const.SAME_FRAME_EXTENDED + diff, delta, null, null, constantPool);
+            }
+            if (diff > 0 && diff <= 3 && sameTypes(locals, previous, previous.length)) {
+                return new StackMapEntry(Const.SAME_FRAME_EXTENDED + diff, delta, Arrays.copyOfRange(locals, previous.length, locals.length), null,
+                    constantPool);
+            }
+        }
+        return new StackMapEntry(Const.FULL_FRAME, delta, locals, stack, constantPool);
+    }
+
+    private StackMapType getStackMapType(final Type t) {
+        if (t instanceof UninitializedObjectType) {
+            if (t == uninitializedThis) {
+                return new StackMapType(Const.ITEM_InitObject, -1, cp.getConstantPool());
+            }
+            return new StackMapType(Const.ITEM_NewObject, newOffsets.get(t).intValue(), cp.getConstantPool());
+        }
+        switch (t.getType()) {
+        case Const.T_INT:
+            return new StackMapType(Const.ITEM_Integer, -1, cp.getConstantPool());
+        case Const.T_FLOAT:
+            return new StackMapType(Const.ITEM_Float, -1, cp.getConstantPool());
+        case Const.T_LONG:
+            return new StackMapType(Const.ITEM_Long, -1, cp.getConstantPool());
+        case Const.T_DOUBLE:
+            return new StackMapType(Const.ITEM_Double, -1, cp.getConstantPool());
+        case Const.T_REFERENCE:
+            if (t == Type.NULL) {
+                return new StackMapType(Const.ITEM_Null, -1, cp.getConstantPool());
+            }
+            return new StackMapType(Const.ITEM_Object, cp.addClass((ObjectType) t), cp.getConstantPool());
+        case Const.T_ARRAY:
+            return new StackMapType(Const.ITEM_Object, cp.addArrayClass((ArrayType) t), cp.getConstantPool());
+        case Const.T_UNKNOWN:
+            return new StackMapType(Const.ITEM_Bogus, -1, cp.getConstantPool());
+        default:
+            throw new ClassGenException("Cannot represent " + t + " in a stack map frame");
+        }
+    }
+
+    /**
+     * @return the types of the locals, a long or double covers two slots, trailing Top entries are omitted
+     */
+    private StackMapType[] getTypesOfLocals(final Frame frame) {
+        final LocalVariables locals = frame.getLocals();
+        final List<StackMapType> types = new ArrayList<>();
+        int last = 0;
+        for (int i = 0; i < maxLocals; i++) {
+            Type t = locals.get(i);
+            if (isWide(t)) {
+                if (i + 1 < maxLocals && locals.get(i + 1) == Type.UNKNOWN) {
+                    i++;
+                } else {
+                    t = Type.UNKNOWN; // the upper half has been overwritten
+                }
+            }
+            types.add(getStackMapType(t));
+            if (t != Type.UNKNOWN) {
+                last = types.size();
+            }
+        }
+        return types.subList(0, last).toArray(StackMapType.EMPTY_ARRAY);
+    }
+
+    private StackMapType[] getTypesOfStackItems(final Frame frame) {
+        final OperandStack stack = frame.getStack();
+        final StackMapType[] types = new StackMapType[stack.size()];
+        // peek(0) is the top of the stack, the stack map lists the bottom first.
+        Arrays.setAll(types, i -> getStackMapType(stack.peek(types.length - 1 - i)));
+        return types;
+    }
+
+    /**
+     * Merges a frame into the frame of a frame point, queuing the latter if it changed.
+     */
+    private void merge(final Frame frame, final int target) {
+        final Frame old = frames[target];
+        if (old == null) {
+            frames[target] = frame.getClone();
+        } else {
+            final OperandStack stack = old.getStack();
+            final OperandStack other = frame.getStack();
+            if (stack.size() != other.size()) {
+                throw new ClassGenException("Cannot merge stacks of different size at " + ihs[target] + ":\n" + stack + "\n" + other);
+            }
+            final OperandStack mergedStack = new OperandStack(stack.maxStack());
+            boolean changed = false;
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                final Type t = mergeTypes(stack.peek(i), other.peek(i));
+                if (t == null) {
+                    throw new ClassGenException("Cannot merge stacks of different types at " + ihs[target] + ":\n" + stack + "\n" + other);
+                }
+                changed |= !t.equals(stack.peek(i));
+                mergedStack.push(t);
+            }
+            final LocalVariables locals = old.getLocals().getClone();
+            for (int i = 0; i < maxLocals; i++) {
+                final Type t = mergeTypes(locals.get(i), frame.getLocals().get(i));
+                final Type merged = t != null ? t : Type.UNKNOWN;
+                if (!merged.equals(locals.get(i))) {
+                    locals.set(i, merged);
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+            frames[target] = new Frame(locals, mergedStack);
+        }
+        if (!queued[target]) {
+            queued[target] = true;
+            workList[top++] = target;
+        }
+    }
+
+    /**
+     * @return the merged type, the first type if nothing changed, or null if the types cannot be merged
+     */
+    private Type mergeTypes(final Type t, final Type u) {
+        if (t == u || t == Type.UNKNOWN) {
+            return t;
+        }
+        if (t instanceof UninitializedObjectType || u instanceof UninitializedObjectType) {
+            return null;
+        }
+        if (t.equals(u)) {
+            return t;
+        }
+        if (!(t instanceof ReferenceType) || !(u instanceof ReferenceType)) {
+            return null;
+        }
+        if (u == Type.NULL) {
+            return t;
+        }
+        if (t == Type.NULL) {
+            return u;
+        }
+        try {
+            final ReferenceType s = resolver.getFirstCommonSuperclass((ReferenceType) t, (ReferenceType) u);
+            if (s == null) {
+                return Type.OBJECT;
+            }
+            // Resolvers need not return canonical instances, keep the first type if it is the result
+            return s.equals(t) ? t : s;
+        } catch (final ClassNotFoundException e) {
+            throw new ClassGenException("Cannot merge " + t + " and " + u + ": " + e, e);
+        }
+    }
+}
@@ -18,10 +18,10 @@
  */
 package org.apache.bcel.generic;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.ClassFormatException;
@@ -48,11 +48,11 @@ public abstract class Type {
     public static final BasicType DOUBLE = new BasicType(Const.T_DOUBLE);
     public static final BasicType FLOAT = new BasicType(Const.T_FLOAT);
     public static final BasicType CHAR = new BasicType(Const.T_CHAR);
-    public static final ObjectType OBJECT = new ObjectType("java.lang.Object");
-    public static final ObjectType CLASS = new ObjectType("java.lang.Class");
-    public static final ObjectType STRING = new ObjectType("java.lang.String");
-    public static final ObjectType STRINGBUFFER = new ObjectType("java.lang.StringBuffer");
-    public static final ObjectType THROWABLE = new ObjectType("java.lang.Throwable");
+    public static final ObjectType OBJECT = ObjectType.getInstance("java.lang.Object");
+    public static final ObjectType CLASS = ObjectType.getInstance("java.lang.Class");
+    public static final ObjectType STRING = ObjectType.getInstance("java.lang.String");
+    public static final ObjectType STRINGBUFFER = ObjectType.getInstance("java.lang.StringBuffer");
+    public static final ObjectType THROWABLE = ObjectType.getInstance("java.lang.Throwable");
 
     /**
      * Empty array.
@@ -64,9 +64,36 @@ public abstract class Type {
     public static final Type UNKNOWN = new Type(Const.T_UNKNOWN, "<unknown object>") {
     };
 
-    private static final ThreadLocal<Integer> CONSUMED_CHARS = ThreadLocal.withInitial(() -> Integer.valueOf(0));
+    /**
+     * Bounded concurrent cache from a signature to its parsed form, which is simply cleared when it is full.
+     */
+    private static final class SignatureCache<V> {
+
+        private static final int MAX_SIZE = 8192;
+
+        private final Map<String, V> map = new ConcurrentHashMap<>();
+
+        V get(final String key) {
+            return map.get(key);
+        }
+
+        void put(final String key, final V value) {
+            if (map.size() >= MAX_SIZE) {
+                map.clear();
+            }
+            map.put(key, value);
+        }
+    }
+
+    /** Types by signature, types are immutable. */
+    private static final SignatureCache<Type> TYPES = new SignatureCache<>();
+
+    /** Argument types by method signature, copied before they are handed out. */
+    private static final SignatureCache<Type[]> ARGUMENT_TYPES = new SignatureCache<>();
+
+    /** Return types by method signature. */
+    private static final SignatureCache<Type> RETURN_TYPES = new SignatureCache<>();
 
-    // int consumed_chars=0; // Remember position in string, see getArgumentTypes
     static int consumed(final int coded) {
         return coded >> 2;
     }
@@ -82,40 +109,44 @@ public abstract class Type {
      * @return array of argument types
      */
     public static Type[] getArgumentTypes(final String signature) {
-        final List<Type> vec = new ArrayList<>();
-        int index;
-        try {
-            // Skip any type arguments to read argument declarations between '(' and ')'
-            index = signature.indexOf('(') + 1;
-            if (index <= 0) {
-                throw new InvalidMethodSignatureException(signature);
-            }
-            while (signature.charAt(index) != ')') {
-                vec.add(getType(signature.substring(index)));
-                // corrected concurrent private static field access
-                index += unwrap(CONSUMED_CHARS); // update position
+        Type[] types = ARGUMENT_TYPES.get(signature);
+        if (types == null) {
+            try {
+                // Skip any type arguments to read argument declarations between '(' and ')'
+                final int start = getArgumentsStart(signature);
+                int count = 0;
+                for (int index = start; signature.charAt(index) != ')'; index = getTypeEnd(signature, index)) {
+                    count++;
+                }
+                types = new Type[count];
+                int index = start;
+                for (int i = 0; i < count; i++) {
+                    final int end = getTypeEnd(signature, index);
+                    types[i] = getType(signature, index, end);
+                    index = end;
+                }
+            } catch (final StringIndexOutOfBoundsException e) { // Should never occur
+                throw new InvalidMethodSignatureException(signature, e);
             }
-        } catch (final StringIndexOutOfBoundsException e) { // Should never occur
-            throw new InvalidMethodSignatureException(signature, e);
+            ARGUMENT_TYPES.put(signature, types);
         }
-        final Type[] types = new Type[vec.size()];
-        vec.toArray(types);
-        return types;
+        return types.length == 0 ? types : types.clone();
+    }
+
+    private static int getArgumentsStart(final String signature) {
+        final int index = signature.indexOf('(') + 1;
+        if (index <= 0) {
+            throw new InvalidMethodSignatureException(signature);
+        }
+        return index;
     }
 
     static int getArgumentTypesSize(final String signature) {
         int res = 0;
-        int index;
         try {
             // Skip any type arguments to read argument declarations between '(' and ')'
-            index = signature.indexOf('(') + 1;
-            if (index <= 0) {
-                throw new InvalidMethodSignatureException(signature);
-            }
-            while (signature.charAt(index) != ')') {
-                final int coded = getTypeSize(signature.substring(index));
-                res += size(coded);
-                index += consumed(coded);
+            for (int index = getArgumentsStart(signature); signature.charAt(index) != ')'; index = getTypeEnd(signature, index)) {
+                res += getSize(signature, index);
             }
         } catch (final StringIndexOutOfBoundsException e) { // Should never occur
             throw new InvalidMethodSignatureException(signature, e);
@@ -149,18 +180,47 @@ public abstract class Type {
      * @return return type
      */
     public static Type getReturnType(final String signature) {
-        try {
-            // Read return type after ')'
-            final int index = signature.lastIndexOf(')') + 1;
-            return getType(signature.substring(index));
-        } catch (final StringIndexOutOfBoundsException e) { // Should never occur
-            throw new InvalidMethodSignatureException(signature, e);
+        Type type = RETURN_TYPES.get(signature);
+        if (type == null) {
+            try {
+                // Read return type after ')'
+                final int index = signature.lastIndexOf(')') + 1;
+                type = getType(signature, index, getTypeEnd(signature, index));
+            } catch (final StringIndexOutOfBoundsException e) { // Should never occur
+                throw new InvalidMethodSignatureException(signature, e);
+            }
+            RETURN_TYPES.put(signature, type);
         }
+        return type;
     }
 
     static int getReturnTypeSize(final String signature) {
-        final int index = signature.lastIndexOf(')') + 1;
-        return size(getTypeSize(signature.substring(index)));
+        return getSize(signature, signature.lastIndexOf(')') + 1);
+    }
+
+    /**
+     * Gets the size of the type starting at the given index of a signature, without parsing the type.
+     */
+    private static int getSize(final String signature, final int index) {
+        switch (signature.charAt(index)) {
+        case 'J':
+        case 'D':
+            return 2;
+        case 'V':
+            return 0;
+        case 'B':
+        case 'C':
+        case 'F':
+        case 'I':
+        case 'S':
+        case 'Z':
+        case 'L':
+        case 'T':
+        case '[':
+            return 1;
+        default:
+            throw new InvalidMethodSignatureException(signature);
+        }
     }
 
     public static String getSignature(final java.lang.reflect.Method meth) {
@@ -228,29 +288,97 @@ public abstract class Type {
      * @return type object
      */
     public static Type getType(final String signature) throws StringIndexOutOfBoundsException {
-        final byte type = Utility.typeOfSignature(signature);
-        if (type <= Const.T_VOID) {
-            // corrected concurrent private static field access
-            wrap(CONSUMED_CHARS, 1);
-            return BasicType.getType(type);
+        Type type = TYPES.get(signature);
+        if (type == null) {
+            type = getType(signature, 0, getTypeEnd(signature, 0));
+            TYPES.put(signature, type);
         }
-        if (type != Const.T_ARRAY) { // type == T_REFERENCE
+        return type;
+    }
+
+    /**
+     * Parses the type between the given indices of a signature.
+     */
+    private static Type getType(final String signature, final int start, final int end) {
+        switch (signature.charAt(start)) {
+        case 'B':
+            return BYTE;
+        case 'C':
+            return CHAR;
+        case 'D':
+            return DOUBLE;
+        case 'F':
+            return FLOAT;
+        case 'I':
+            return INT;
+        case 'J':
+            return LONG;
+        case 'S':
+            return SHORT;
+        case 'Z':
+            return BOOLEAN;
+        case 'V':
+            return VOID;
+        case '[': {
+            int dim = 0;
+            do { // Count dimensions
+                dim++;
+            } while (signature.charAt(start + dim) == '[');
+            return ArrayType.getInstance(getType(signature, start + dim, end), dim);
+        }
+        default:
+            if (signature.indexOf('<', start) < 0 || signature.indexOf('<', start) >= end) {
+                // "Lblabla;" or "Tblabla;" 'L' or 'T' and ';' are removed
+                return ObjectType.getInstance(Utility.pathToPackage(signature.substring(start + 1, end - 1)));
+            }
             // Utility.typeSignatureToString understands how to parse generic types.
-            final String parsedSignature = Utility.typeSignatureToString(signature, false);
-            wrap(CONSUMED_CHARS, parsedSignature.length() + 2); // "Lblabla;" 'L' and ';' are removed
-            return ObjectType.getInstance(Utility.pathToPackage(parsedSignature));
+            return ObjectType.getInstance(Utility.pathToPackage(Utility.typeSignatureToString(signature.substring(start, end), false)));
+        }
+    }
+
+    /**
+     * Gets the index after the type starting at the given index of a signature.
+     */
+    private static int getTypeEnd(final String signature, final int start) {
+        int index = start;
+        while (signature.charAt(index) == '[') {
+            index++;
+        }
+        switch (signature.charAt(index)) {
+        case 'B':
+        case 'C':
+        case 'D':
+        case 'F':
+        case 'I':
+        case 'J':
+        case 'S':
+        case 'Z':
+        case 'V':
+            return index + 1;
+        case 'L':
+        case 'T': {
+            final int semicolon = signature.indexOf(';', index + 1);
+            final int bracket = signature.indexOf('<', index + 1);
+            if (semicolon >= 0 && (bracket < 0 || bracket > semicolon)) {
+                return semicolon + 1;
+            }
+            // Type arguments may contain ';'
+            int depth = 0;
+            for (int i = index + 1; i < signature.length(); i++) {
+                final char ch = signature.charAt(i);
+                if (ch == '<') {
+                    depth++;
+                } else if (ch == '>') {
+                    depth--;
+                } else if (ch == ';' && depth == 0) {
+                    return i + 1;
+                }
+            }
+            throw new ClassFormatException("Invalid signature: " + signature);
+        }
+        default:
+            throw new InvalidMethodSignatureException(signature);
         }
-        int dim = 0;
-        do { // Count dimensions
-            dim++;
-        } while (signature.charAt(dim) == '[');
-        // Recurse, but just once, if the signature is ok
-        final Type t = getType(signature.substring(dim));
-        // corrected concurrent private static field access
-        // consumed_chars += dim; // update counter - is replaced by
-        final int temp = unwrap(CONSUMED_CHARS) + dim;
-        wrap(CONSUMED_CHARS, temp);
-        return new ArrayType(t, dim);
     }
 
     /**
@@ -266,24 +394,7 @@ public abstract class Type {
     }
 
     static int getTypeSize(final String signature) throws StringIndexOutOfBoundsException {
-        final byte type = Utility.typeOfSignature(signature);
-        if (type <= Const.T_VOID) {
-            return encode(BasicType.getType(type).getSize(), 1);
-        }
-        if (type == Const.T_ARRAY) {
-            int dim = 0;
-            do { // Count dimensions
-                dim++;
-            } while (signature.charAt(dim) == '[');
-            // Recurse, but just once, if the signature is ok
-            final int consumed = consumed(getTypeSize(signature.substring(dim)));
-            return encode(1, dim + consumed);
-        }
-        final int index = signature.indexOf(';'); // Look for closing ';'
-        if (index < 0) {
-            throw new ClassFormatException("Invalid signature: " + signature);
-        }
-        return encode(1, index + 1);
+        return encode(getSize(signature, 0), getTypeEnd(signature, 0));
     }
 
     static String internalTypeNameToSignature(final String internalTypeName) {
@@ -308,14 +419,6 @@ public abstract class Type {
         return coded & 3;
     }
 
-    private static int unwrap(final ThreadLocal<Integer> tl) {
-        return tl.get().intValue();
-    }
-
-    private static void wrap(final ThreadLocal<Integer> tl, final int value) {
-        tl.set(Integer.valueOf(value));
-    }
-
     /**
      * @deprecated (since 6.0) will be made private; do not access directly, use getter/setter
      */
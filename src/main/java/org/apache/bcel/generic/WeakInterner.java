@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Thread-safe table of canonical instances that only holds them weakly, so that an instance no longer used elsewhere can be garbage collected.
+ * Stale entries are purged on access.
+ *
+ * @param <K> the key type.
+ * @param <V> the canonical instance type.
+ */
+final class WeakInterner<K, V> {
+
+    private static final class Entry<K, V> extends WeakReference<V> {
+
+        private final K key;
+
+        Entry(final K key, final V value, final ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    /**
+     * Gets the canonical instance for the given key, creating it if there is none yet.
+     *
+     * @param key the key.
+     * @param factory creates the instance for a key that has none.
+     * @return the canonical instance.
+     */
+    V intern(final K key, final Function<? super K, ? extends V> factory) {
+        purge();
+        while (true) {
+            final Entry<K, V> entry = map.get(key);
+            final V existing = entry != null ? entry.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            final V value = factory.apply(key);
+            final Entry<K, V> created = new Entry<>(key, value, queue);
+            if (entry == null ? map.putIfAbsent(key, created) == null : map.replace(key, entry, created)) {
+                return value;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(((Entry<K, V>) ref).key, ref);
+        }
+    }
+}
@@ -18,10 +18,17 @@
  */
 package org.apache.bcel.util;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.FieldOrMethod;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Utility;
 
@@ -37,23 +44,221 @@ import org.apache.bcel.classfile.Utility;
  */
 abstract class AbstractClassPathRepository implements Repository {
 
+    /**
+     * Counts the bytes read from a class file.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /** The number of missing class names remembered before they are forgotten. */
+    private static final int MAX_MISSING_CLASSES = 4096;
+
+    private static long estimateSize(final Attribute[] attributes) {
+        long size = 0;
+        for (final Attribute attribute : attributes) {
+            // The parsed form of an attribute takes about twice the space of its class file form
+            size += 32 + 2L * attribute.getLength();
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the number of bytes retained by a parsed class.
+     *
+     * @param clazz the class
+     * @return the estimated size, in bytes
+     * @since 6.10.1
+     */
+    static int estimateSize(final JavaClass clazz) {
+        long size = 128 + 48L * clazz.getConstantPool().getLength() + 8L * clazz.getInterfaceIndices().length;
+        size += estimateSize(clazz.getAttributes());
+        for (final FieldOrMethod member : clazz.getFields()) {
+            size += 64 + estimateSize(member.getAttributes());
+        }
+        for (final FieldOrMethod member : clazz.getMethods()) {
+            size += 64 + estimateSize(member.getAttributes());
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private static String toCanonicalName(final String className) {
+        if (className == null || className.isEmpty()) {
+            throw new IllegalArgumentException("Invalid class name " + className);
+        }
+        return Utility.pathToPackage(className); // Just in case, canonical form
+    }
+
     private final ClassPath classPath;
 
+    /** The names of classes that were not found on the classpath, if {@link #rememberMissingClasses} is set. */
+    private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean rememberMissingClasses;
+
+    private volatile RepositoryListener listener;
+
+    /** Softly referenced so that it doesn't keep classes alive that a memory-sensitive cache would drop. */
+    private volatile SoftReference<ClassHierarchy> classHierarchy = new SoftReference<>(null);
+
     AbstractClassPathRepository(final ClassPath classPath) {
         this.classPath = classPath;
     }
 
+    /**
+     * Called by {@link #clear()} after the cached classes are cleared: forgets the classes that were not found on the
+     * classpath, clears the class hierarchy, and notifies the listener.
+     */
+    void cacheCleared() {
+        missingClasses.clear();
+        clearClassHierarchy();
+        final RepositoryListener l = listener;
+        if (l != null) {
+            l.cacheCleared();
+        }
+    }
+
+    /**
+     * Notifies the listener that a class was looked up in the cache.
+     *
+     * @param className the canonical name of the class
+     * @param clazz the cached class, or null if it is not cached
+     */
+    private void cacheLookup(final String className, final JavaClass clazz) {
+        final RepositoryListener l = listener;
+        if (l != null) {
+            if (clazz != null) {
+                l.cacheHit(className);
+            } else {
+                l.cacheMiss(className);
+            }
+        }
+    }
+
+    /**
+     * Clears the class hierarchy and notifies the listener when the cache evicted a class to make room for other classes.
+     *
+     * @param clazz the evicted class
+     */
+    void classEvicted(final JavaClass clazz) {
+        clearClassHierarchy();
+        final RepositoryListener l = listener;
+        if (l != null) {
+            l.classEvicted(clazz);
+        }
+    }
+
+    /**
+     * Clears the class hierarchy and notifies the listener when a class was removed with {@link #removeClass(JavaClass)}.
+     *
+     * @param clazz the removed class
+     */
+    void classRemoved(final JavaClass clazz) {
+        clearClassHierarchy();
+        final RepositoryListener l = listener;
+        if (l != null) {
+            l.classRemoved(clazz);
+        }
+    }
+
+    /**
+     * Clears the class hierarchy when {@link #storeClass(JavaClass)} replaced a class, as hierarchies may refer to the old one.
+     *
+     * @param old the class stored before, or null if there was none
+     * @param clazz the stored class
+     */
+    void classStored(final JavaClass old, final JavaClass clazz) {
+        if (old != null && old != clazz) {
+            clearClassHierarchy();
+        }
+    }
+
     @Override
     public abstract void clear();
 
+    private void clearClassHierarchy() {
+        final ClassHierarchy hierarchy = classHierarchy.get();
+        if (hierarchy != null) {
+            hierarchy.clear();
+        }
+    }
+
     @Override
     public abstract JavaClass findClass(String className);
 
+    /**
+     * Gets the class hierarchy cache of this repository, which is cleared whenever classes are replaced in, removed from, or
+     * evicted from this repository.
+     *
+     * @return the class hierarchy cache.
+     * @since 6.10.1
+     */
+    @Override
+    public ClassHierarchy getClassHierarchy() {
+        ClassHierarchy hierarchy = classHierarchy.get();
+        if (hierarchy == null) {
+            hierarchy = new ClassHierarchy();
+            classHierarchy = new SoftReference<>(hierarchy);
+        }
+        return hierarchy;
+    }
+
     @Override
     public ClassPath getClassPath() {
         return classPath;
     }
 
+    /**
+     * Gets the listener notified of cache and class loading events.
+     *
+     * @return the listener, or null if there is none
+     * @since 6.10.1
+     */
+    public RepositoryListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Tests whether class names that are not found on the classpath are remembered.
+     *
+     * @return whether class names that are not found on the classpath are remembered
+     * @see #setRememberMissingClasses(boolean)
+     * @since 6.10.1
+     */
+    public boolean isRememberMissingClasses() {
+        return rememberMissingClasses;
+    }
+
     /**
      * Finds the JavaClass object for a runtime Class object. If a class with the same name is already in this Repository,
      * the Repository version is returned. Otherwise, getResourceAsStream() is called on the Class object to find the
@@ -68,6 +273,7 @@ abstract class AbstractClassPathRepository implements Repository {
     public JavaClass loadClass(final Class<?> clazz) throws ClassNotFoundException {
         final String className = clazz.getName();
         final JavaClass repositoryClass = findClass(className);
+        cacheLookup(className, repositoryClass);
         if (repositoryClass != null) {
             return repositoryClass;
         }
@@ -85,17 +291,9 @@ abstract class AbstractClassPathRepository implements Repository {
     }
 
     private JavaClass loadClass(final InputStream inputStream, final String className) throws ClassNotFoundException {
-        try {
-            if (inputStream != null) {
-                final ClassParser parser = new ClassParser(inputStream, className);
-                final JavaClass clazz = parser.parse();
-                storeClass(clazz);
-                return clazz;
-            }
-        } catch (final IOException e) {
-            throw new ClassNotFoundException("Exception while looking for class " + className + ": " + e, e);
-        }
-        throw new ClassNotFoundException("ClassRepository could not load " + className);
+        final JavaClass clazz = parseClass(inputStream, className);
+        storeClass(clazz);
+        return clazz;
     }
 
     /**
@@ -107,25 +305,150 @@ abstract class AbstractClassPathRepository implements Repository {
      * @throws ClassNotFoundException if the class is not in the Repository, and could not be found on the classpath
      */
     @Override
-    public JavaClass loadClass(String className) throws ClassNotFoundException {
-        if (className == null || className.isEmpty()) {
-            throw new IllegalArgumentException("Invalid class name " + className);
-        }
-        className = Utility.pathToPackage(className); // Just in case, canonical form
-        final JavaClass clazz = findClass(className);
+    public JavaClass loadClass(final String className) throws ClassNotFoundException {
+        final String name = toCanonicalName(className);
+        final JavaClass clazz = findClass(name);
+        cacheLookup(name, clazz);
         if (clazz != null) {
             return clazz;
         }
-        try (InputStream inputStream = classPath.getInputStream(className)) {
-            return loadClass(inputStream, className);
+        final JavaClass loaded = missingClasses.contains(name) ? null : loadClassFromClassPath(name);
+        if (loaded == null) {
+            throw new ClassNotFoundException("ClassRepository could not load " + name);
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads a class that is not in this Repository from the classpath and stores it.
+     *
+     * @param className the canonical name of the class
+     * @return the JavaClass object, or null if the class is not on the classpath
+     * @throws ClassNotFoundException if the class could not be read from the classpath
+     * @since 6.10.1
+     */
+    JavaClass loadClassFromClassPath(final String className) throws ClassNotFoundException {
+        final JavaClass clazz = parseClass(className);
+        if (clazz != null) {
+            storeClass(clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * Finds a JavaClass object by name like {@link #loadClass(String)}, without throwing an exception if it can't be found.
+     *
+     * @param className the name of the class
+     * @return the JavaClass object, or an empty Optional if the class can't be found or read
+     * @since 6.10.1
+     */
+    @Override
+    public Optional<JavaClass> loadClassIfPresent(final String className) {
+        final String name = toCanonicalName(className);
+        final JavaClass clazz = findClass(name);
+        cacheLookup(name, clazz);
+        if (clazz != null || missingClasses.contains(name)) {
+            return Optional.ofNullable(clazz);
+        }
+        try {
+            return Optional.ofNullable(loadClassFromClassPath(name));
+        } catch (final ClassNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parses a class file and notifies the listener.
+     *
+     * @param inputStream the class file
+     * @param className the canonical name of the class
+     * @return the JavaClass object
+     * @throws IOException if the class file could not be read or parsed
+     * @since 6.10.1
+     */
+    JavaClass parse(final InputStream inputStream, final String className) throws IOException {
+        final RepositoryListener l = listener;
+        if (l == null) {
+            return new ClassParser(inputStream, className).parse();
+        }
+        final long start = System.nanoTime();
+        final CountingInputStream countingInputStream = new CountingInputStream(inputStream);
+        final JavaClass clazz = new ClassParser(countingInputStream, className).parse();
+        l.classLoaded(clazz, countingInputStream.count, System.nanoTime() - start);
+        return clazz;
+    }
+
+    /**
+     * Parses a class from the classpath without storing it in this Repository.
+     *
+     * @param className the canonical name of the class
+     * @return the JavaClass object, or null if the class is not on the classpath
+     * @throws ClassNotFoundException if the class could not be read from the classpath
+     * @since 6.10.1
+     */
+    JavaClass parseClass(final String className) throws ClassNotFoundException {
+        try (InputStream inputStream = classPath.findInputStream(className)) {
+            if (inputStream == null) {
+                if (rememberMissingClasses) {
+                    if (missingClasses.size() >= MAX_MISSING_CLASSES) {
+                        missingClasses.clear();
+                    }
+                    missingClasses.add(className);
+                }
+                return null;
+            }
+            return parse(inputStream, className);
+        } catch (final IOException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className + ": " + e, e);
+        }
+    }
+
+    private JavaClass parseClass(final InputStream inputStream, final String className) throws ClassNotFoundException {
+        try {
+            if (inputStream != null) {
+                return parse(inputStream, className);
+            }
         } catch (final IOException e) {
             throw new ClassNotFoundException("Exception while looking for class " + className + ": " + e, e);
         }
+        throw new ClassNotFoundException("ClassRepository could not load " + className);
     }
 
     @Override
     public abstract void removeClass(JavaClass javaClass);
 
+    /**
+     * Sets the listener notified of cache and class loading events, for example a {@link RepositoryStatistics}.
+     * <p>
+     * The listener is called on the thread that uses this repository, sometimes while holding the repository's locks, so it
+     * should be fast and must not call back into this repository.
+     * </p>
+     *
+     * @param listener the listener, or null to remove it
+     * @since 6.10.1
+     */
+    public void setListener(final RepositoryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets whether class names that are not found on the classpath are remembered, so that looking them up again doesn't
+     * search the classpath. This is off by default.
+     * <p>
+     * A remembered class is not found until {@link #clear()} is called, even if it is later added to the classpath, for
+     * example to a directory. Turn this on for analyses over classpaths that don't change and that miss classes often.
+     * </p>
+     *
+     * @param rememberMissingClasses whether to remember class names that are not found on the classpath
+     * @since 6.10.1
+     */
+    public void setRememberMissingClasses(final boolean rememberMissingClasses) {
+        this.rememberMissingClasses = rememberMissingClasses;
+        if (!rememberMissingClasses) {
+            missingClasses.clear();
+        }
+    }
+
     @Override
     public abstract void storeClass(JavaClass javaClass);
 }
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Caches the type hierarchy of classes, so that repeated subtype checks and superclass queries don't walk the hierarchy
+ * again.
+ *
+ * <p>
+ * For each class, the hierarchy stores its superclasses and, once they are needed, its transitive interfaces, together
+ * with bit sets of the ids of its ancestors. {@link #instanceOf(JavaClass, JavaClass)} and
+ * {@link #implementationOf(JavaClass, JavaClass)} are then a bit test. The results are the same as those of the
+ * corresponding {@link JavaClass} methods. A class is identified by its name; an entry is rebuilt when it is asked for a
+ * different instance of a class with the same name.
+ * </p>
+ * <p>
+ * An entry doesn't notice when the classes of its ancestors are replaced in their repository, so {@link #clear()} must be
+ * called when classes are replaced in, removed from, or evicted from the repository. The class path repositories do this
+ * for the hierarchy they return from {@link Repository#getClassHierarchy()}. A circular hierarchy is reported with a
+ * {@link ClassNotFoundException}. This class is thread-safe.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class ClassHierarchy {
+
+    /**
+     * The cached hierarchy of one class.
+     */
+    private static final class Node {
+
+        final JavaClass clazz;
+        final int id;
+        final JavaClass[] superClasses;
+        /** The ids of the class and its superclasses. */
+        final BitSet classes;
+        /** The transitive interfaces, or null until they are needed. */
+        volatile JavaClass[] allInterfaces;
+        /** The ids of the class, its superclasses and its transitive interfaces, or null until they are needed. */
+        volatile BitSet types;
+
+        Node(final JavaClass clazz, final int id, final JavaClass[] superClasses, final BitSet classes) {
+            this.clazz = clazz;
+            this.id = id;
+            this.superClasses = superClasses;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * The ids and hierarchies of the classes. {@link #clear()} replaces it as a whole, so a query never mixes ids given out
+     * before and after clearing.
+     */
+    private static final class Cache {
+
+        private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+
+        int getId(final JavaClass clazz) {
+            return ids.computeIfAbsent(clazz.getClassName(), k -> nextId.getAndIncrement());
+        }
+
+        /**
+         * Gets the transitive interfaces of a class, and computes the ids of all its ancestors along with them.
+         *
+         * @param node the class
+         * @param path the classes whose interfaces are being computed, or null for a new query
+         */
+        JavaClass[] getInterfaces(final Node node, final Set<String> path) throws ClassNotFoundException {
+            JavaClass[] allInterfaces = node.allInterfaces;
+            if (allInterfaces == null) {
+                final Set<String> visiting = path != null ? path : new HashSet<>();
+                if (!visiting.add(node.clazz.getClassName())) {
+                    throw new ClassNotFoundException("Circular interface hierarchy of " + node.clazz.getClassName());
+                }
+                final Set<JavaClass> interfaces = new TreeSet<>();
+                final BitSet types = (BitSet) node.classes.clone();
+                if (node.clazz.isInterface()) {
+                    interfaces.add(node.clazz);
+                }
+                final JavaClass superClass = node.superClasses.length > 0 ? node.superClasses[0] : null;
+                if (superClass != null) {
+                    final Node superNode = getNode(superClass, null);
+                    for (final JavaClass iface : getInterfaces(superNode, visiting)) {
+                        interfaces.add(iface);
+                    }
+                    types.or(superNode.types);
+                }
+                for (final JavaClass iface : node.clazz.getInterfaces()) {
+                    final Node interfaceNode = getNode(iface, null);
+                    for (final JavaClass superInterface : getInterfaces(interfaceNode, visiting)) {
+                        interfaces.add(superInterface);
+                    }
+                    types.or(interfaceNode.types);
+                }
+                visiting.remove(node.clazz.getClassName());
+                allInterfaces = interfaces.toArray(JavaClass.EMPTY_ARRAY);
+                node.types = types;
+                node.allInterfaces = allInterfaces;
+            }
+            return allInterfaces;
+        }
+
+        /**
+         * Gets the hierarchy of a class, and computes it if needed.
+         *
+         * @param clazz the class
+         * @param path the classes whose hierarchies are being computed, or null for a new query
+         */
+        Node getNode(final JavaClass clazz, final Set<String> path) throws ClassNotFoundException {
+            Objects.requireNonNull(clazz, "clazz");
+            final Node node = nodes.get(clazz.getClassName());
+            if (node != null && node.clazz == clazz) {
+                return node;
+            }
+            final Set<String> visiting = path != null ? path : new HashSet<>();
+            if (!visiting.add(clazz.getClassName())) {
+                throw new ClassNotFoundException("Circular superclass hierarchy of " + clazz.getClassName());
+            }
+            final int id = getId(clazz);
+            final JavaClass superClass = clazz.getSuperClass();
+            final JavaClass[] superClasses;
+            final BitSet classes;
+            if (superClass == null) {
+                superClasses = JavaClass.EMPTY_ARRAY;
+                classes = new BitSet();
+            } else {
+                final Node superNode = getNode(superClass, visiting);
+                superClasses = new JavaClass[superNode.superClasses.length + 1];
+                superClasses[0] = superClass;
+                System.arraycopy(superNode.superClasses, 0, superClasses, 1, superNode.superClasses.length);
+                classes = (BitSet) superNode.classes.clone();
+            }
+            classes.set(id);
+            final Node newNode = new Node(clazz, id, superClasses, classes);
+            nodes.put(clazz.getClassName(), newNode);
+            return newNode;
+        }
+    }
+
+    private volatile Cache cache = new Cache();
+
+    /**
+     * Removes all cached hierarchies.
+     */
+    public void clear() {
+        cache = new Cache();
+    }
+
+    /**
+     * Gets all interfaces implemented by a class, transitively, like {@link JavaClass#getAllInterfaces()}.
+     *
+     * @param clazz the class.
+     * @return the interfaces, ordered by name; includes {@code clazz} if it is an interface.
+     * @throws ClassNotFoundException if any of the class's superclasses or interfaces can't be found.
+     */
+    public JavaClass[] getAllInterfaces(final JavaClass clazz) throws ClassNotFoundException {
+        final Cache c = cache;
+        return c.getInterfaces(c.getNode(clazz, null), null).clone();
+    }
+
+    /**
+     * Gets the first common superclass of two classes, that is the first class of {@code other} and its superclasses that is
+     * also {@code clazz} or one of its superclasses.
+     *
+     * @param clazz the first class.
+     * @param other the second class.
+     * @return the first common superclass.
+     * @throws ClassNotFoundException if any of the superclasses can't be found.
+     */
+    public JavaClass getFirstCommonSuperclass(final JavaClass clazz, final JavaClass other) throws ClassNotFoundException {
+        final Cache c = cache;
+        final BitSet classes = c.getNode(clazz, null).classes;
+        final Node otherNode = c.getNode(other, null);
+        if (classes.get(otherNode.id)) {
+            return other;
+        }
+        for (final JavaClass superClass : otherNode.superClasses) {
+            if (classes.get(c.getId(superClass))) {
+                return superClass;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the superclasses of a class, like {@link JavaClass#getSuperClasses()}.
+     *
+     * @param clazz the class.
+     * @return the superclasses in ascending order, {@code java.lang.Object} is the last element.
+     * @throws ClassNotFoundException if any of the superclasses can't be found.
+     */
+    public JavaClass[] getSuperClasses(final JavaClass clazz) throws ClassNotFoundException {
+        return cache.getNode(clazz, null).superClasses.clone();
+    }
+
+    /**
+     * Tests whether a class implements an interface, like {@link JavaClass#implementationOf(JavaClass)}.
+     *
+     * @param clazz the class.
+     * @param inter the interface.
+     * @return true if {@code clazz} is {@code inter} or implements it.
+     * @throws ClassNotFoundException if any of the superclasses or interfaces of {@code clazz} can't be found.
+     * @throws IllegalArgumentException if {@code inter} is not an interface.
+     */
+    public boolean implementationOf(final JavaClass clazz, final JavaClass inter) throws ClassNotFoundException {
+        if (!inter.isInterface()) {
+            throw new IllegalArgumentException(inter.getClassName() + " is no interface");
+        }
+        final Cache c = cache;
+        final Node node = c.getNode(clazz, null);
+        c.getInterfaces(node, null);
+        return node.types.get(c.getId(inter));
+    }
+
+    /**
+     * Tests whether a class is a subtype of another, like {@link JavaClass#instanceOf(JavaClass)}.
+     *
+     * @param clazz      the class.
+     * @param superclass the class or interface.
+     * @return true if {@code clazz} is {@code superclass}, extends it, or implements it.
+     * @throws ClassNotFoundException if any of the superclasses or, for an interface, the interfaces of {@code clazz} can't
+     *         be found.
+     */
+    public boolean instanceOf(final JavaClass clazz, final JavaClass superclass) throws ClassNotFoundException {
+        final Cache c = cache;
+        final Node node = c.getNode(clazz, null);
+        if (node.classes.get(c.getId(superclass))) {
+            return true;
+        }
+        if (superclass.isInterface()) {
+            c.getInterfaces(node, null);
+            return node.types.get(c.getId(superclass));
+        }
+        return false;
+    }
+}
@@ -32,13 +32,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -55,6 +60,15 @@ public class ClassPath implements Closeable {
 
         abstract ClassFile getClassFile(String name, String suffix);
 
+        /**
+         * Gets the packages this entry contains, for example {@code java/lang}.
+         *
+         * @return the package names, or null if this entry is not indexed and must always be probed.
+         */
+        Set<String> getPackages() {
+            return null;
+        }
+
         abstract URL getResource(String name);
 
         abstract InputStream getResourceAsStream(String name);
@@ -113,6 +127,14 @@ public class ClassPath implements Closeable {
             };
         }
 
+        @Override
+        Set<String> getPackages() {
+            // The entry name prefix of the unnamed package, for example "classes/" in a jmod file.
+            final String prefix = toEntryName("", "");
+            return zipFile.stream().map(ZipEntry::getName).filter(name -> name.startsWith(prefix) && !name.endsWith("/"))
+                .map(name -> packageOf(name.substring(prefix.length()))).collect(Collectors.toSet());
+        }
+
         @Override
         URL getResource(final String name) {
             final ZipEntry entry = zipFile.getEntry(name);
@@ -357,6 +379,7 @@ public class ClassPath implements Closeable {
 
         private final ModularRuntimeImage modularRuntimeImage;
         private final JrtModule[] modules;
+        private volatile Map<String, JrtModule[]> packageModules;
 
         JrtModules(final String path) throws IOException {
             this.modularRuntimeImage = new ModularRuntimeImage();
@@ -378,8 +401,13 @@ public class ClassPath implements Closeable {
 
         @Override
         ClassFile getClassFile(final String name, final String suffix) {
+            final Map<String, JrtModule[]> map = getPackageModules();
+            final JrtModule[] owners = map.isEmpty() ? modules : map.get(packageOf(Utility.packageToPath(name)));
+            if (owners == null) {
+                return null;
+            }
             // don't use a for each loop to avoid creating an iterator for the GC to collect.
-            for (final JrtModule module : modules) {
+            for (final JrtModule module : owners) {
                 final ClassFile classFile = module.getClassFile(name, suffix);
                 if (classFile != null) {
                     return classFile;
@@ -388,6 +416,37 @@ public class ClassPath implements Closeable {
             return null;
         }
 
+        /**
+         * Gets the modules of each package, read once from the packages directory of the image.
+         *
+         * @return the modules by package name, for example {@code java/lang}, or an empty map if the packages can't be read.
+         */
+        private Map<String, JrtModule[]> getPackageModules() {
+            Map<String, JrtModule[]> map = packageModules;
+            if (map == null) {
+                map = new HashMap<>();
+                try {
+                    for (final Path packagePath : modularRuntimeImage.packages()) {
+                        final Set<String> moduleNames = modularRuntimeImage.list(packagePath).stream().map(ClassPath::fileName)
+                            .collect(Collectors.toSet());
+                        final JrtModule[] owners = Stream.of(modules).filter(module -> moduleNames.contains(fileName(module.modulePath)))
+                            .toArray(JrtModule[]::new);
+                        map.put(Utility.packageToPath(fileName(packagePath)), owners);
+                    }
+                } catch (final IOException e) {
+                    map = Collections.emptyMap();
+                }
+                packageModules = map;
+            }
+            return map;
+        }
+
+        @Override
+        Set<String> getPackages() {
+            final Map<String, JrtModule[]> map = getPackageModules();
+            return map.isEmpty() ? null : map.keySet();
+        }
+
         @Override
         URL getResource(final String name) {
             // don't use a for each loop to avoid creating an iterator for the GC to collect.
@@ -432,6 +491,45 @@ public class ClassPath implements Closeable {
 
     }
 
+    /**
+     * Maps package names to the path entries that may contain them, in class path order. Archives are indexed once from their central
+     * directory, while entries that are not indexed, like directories whose contents may change, are candidates for every package.
+     */
+    private static final class PackageIndex {
+
+        private final Map<String, AbstractPathEntry[]> candidates = new HashMap<>();
+        private final AbstractPathEntry[] unindexed;
+
+        PackageIndex(final List<AbstractPathEntry> paths) {
+            final List<Set<String>> packages = new ArrayList<>(paths.size());
+            final Map<String, List<AbstractPathEntry>> lists = new HashMap<>();
+            for (final AbstractPathEntry path : paths) {
+                final Set<String> entryPackages = path.getPackages();
+                packages.add(entryPackages);
+                if (entryPackages != null) {
+                    entryPackages.forEach(name -> lists.computeIfAbsent(name, k -> new ArrayList<>()));
+                }
+            }
+            final List<AbstractPathEntry> others = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i++) {
+                final AbstractPathEntry path = paths.get(i);
+                final Set<String> entryPackages = packages.get(i);
+                if (entryPackages == null) {
+                    others.add(path);
+                    lists.values().forEach(list -> list.add(path));
+                } else {
+                    entryPackages.forEach(name -> lists.get(name).add(path));
+                }
+            }
+            lists.forEach((name, list) -> candidates.put(name, list.toArray(new AbstractPathEntry[0])));
+            unindexed = others.toArray(new AbstractPathEntry[0]);
+        }
+
+        AbstractPathEntry[] getCandidates(final String name) {
+            return candidates.getOrDefault(packageOf(Utility.packageToPath(name)), unindexed);
+        }
+    }
+
     private static final FilenameFilter ARCHIVE_FILTER = (dir, name) -> {
         name = name.toLowerCase(Locale.ROOT);
         return name.endsWith(".zip") || name.endsWith(".jar");
@@ -517,12 +615,23 @@ public class ClassPath implements Closeable {
         }
     }
 
+    private static String fileName(final Path path) {
+        return Objects.toString(path.getFileName(), "");
+    }
+
+    private static String packageOf(final String path) {
+        final int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
     private final String classPathString;
 
     private final ClassPath parent;
 
     private final List<AbstractPathEntry> paths;
 
+    private volatile PackageIndex packageIndex;
+
     /**
      * Search for classes in CLASSPATH.
      *
@@ -594,6 +703,74 @@ public class ClassPath implements Closeable {
         return Objects.equals(classPathString, other.classPathString);
     }
 
+    /**
+     * Finds a class file like {@link #getClassFile(String, String)}, but returns null instead of throwing an exception if it
+     * can't be found.
+     *
+     * @param name fully qualified file name, e.g. java/lang/String
+     * @param suffix file name ends with suffix, e.g. .java
+     * @return class file for the Java class, or null if it can't be found
+     * @since 6.10.1
+     */
+    public ClassFile findClassFile(final String name, final String suffix) {
+        ClassFile cf = null;
+
+        if (parent != null) {
+            cf = parent.getClassFileInternal(name, suffix);
+        }
+
+        if (cf == null) {
+            cf = getClassFileInternal(name, suffix);
+        }
+
+        return cf;
+    }
+
+    /**
+     * Finds an InputStream for a class like {@link #getInputStream(String)}, but returns null instead of throwing an
+     * exception if the class can't be found.
+     * <p>
+     * The caller is responsible for closing the InputStream.
+     * </p>
+     *
+     * @param name fully qualified class name, e.g. java.lang.String
+     * @return input stream for class, or null if it can't be found
+     * @throws IOException if an I/O error occurs.
+     * @since 6.10.1
+     */
+    public InputStream findInputStream(final String name) throws IOException {
+        return findInputStream(Utility.packageToPath(name), JavaClass.EXTENSION);
+    }
+
+    /**
+     * Finds an InputStream for a class or resource on the classpath like {@link #getInputStream(String, String)}, but
+     * returns null instead of throwing an exception if it can't be found.
+     * <p>
+     * The caller is responsible for closing the InputStream.
+     * </p>
+     *
+     * @param name   fully qualified file name, e.g. java/lang/String
+     * @param suffix file name ends with suff, e.g. .java
+     * @return input stream for file on class path, or null if it can't be found
+     * @throws IOException if an I/O error occurs.
+     * @since 6.10.1
+     */
+    public InputStream findInputStream(final String name, final String suffix) throws IOException {
+        try {
+            final java.lang.ClassLoader classLoader = getClass().getClassLoader();
+            @SuppressWarnings("resource") // closed by caller
+            final
+            InputStream inputStream = classLoader == null ? null : classLoader.getResourceAsStream(name + suffix);
+            if (inputStream != null) {
+                return inputStream;
+            }
+        } catch (final Exception ignored) {
+            // ignored
+        }
+        final ClassFile cf = findClassFile(name, suffix);
+        return cf == null ? null : cf.getInputStream();
+    }
+
     /**
      * @param name fully qualified file name, e.g. java/lang/String
      * @return byte array for class
@@ -642,25 +819,15 @@ public class ClassPath implements Closeable {
      * @throws IOException if an I/O error occurs.
      */
     public ClassFile getClassFile(final String name, final String suffix) throws IOException {
-        ClassFile cf = null;
-
-        if (parent != null) {
-            cf = parent.getClassFileInternal(name, suffix);
-        }
-
-        if (cf == null) {
-            cf = getClassFileInternal(name, suffix);
-        }
-
+        final ClassFile cf = findClassFile(name, suffix);
         if (cf != null) {
             return cf;
         }
-
         throw new IOException("Couldn't find: " + name + suffix);
     }
 
     private ClassFile getClassFileInternal(final String name, final String suffix) {
-        for (final AbstractPathEntry path : paths) {
+        for (final AbstractPathEntry path : getPackageIndex().getCandidates(name)) {
             final ClassFile cf = path.getClassFile(name, suffix);
             if (cf != null) {
                 return cf;
@@ -694,18 +861,24 @@ public class ClassPath implements Closeable {
      * @throws IOException if an I/O error occurs.
      */
     public InputStream getInputStream(final String name, final String suffix) throws IOException {
-        try {
-            final java.lang.ClassLoader classLoader = getClass().getClassLoader();
-            @SuppressWarnings("resource") // closed by caller
-            final
-            InputStream inputStream = classLoader == null ? null : classLoader.getResourceAsStream(name + suffix);
-            if (inputStream != null) {
-                return inputStream;
+        final InputStream inputStream = findInputStream(name, suffix);
+        if (inputStream != null) {
+            return inputStream;
+        }
+        throw new IOException("Couldn't find: " + name + suffix);
+    }
+
+    private PackageIndex getPackageIndex() {
+        PackageIndex index = packageIndex;
+        if (index == null) {
+            synchronized (paths) {
+                index = packageIndex;
+                if (index == null) {
+                    packageIndex = index = new PackageIndex(paths);
+                }
             }
-        } catch (final Exception ignored) {
-            // ignored
         }
-        return getClassFile(name, suffix).getInputStream();
+        return index;
     }
 
     /**
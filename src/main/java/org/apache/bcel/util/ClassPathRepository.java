@@ -44,6 +44,7 @@ public class ClassPathRepository extends AbstractClassPathRepository {
     @Override
     public void clear() {
         loadedClasses.clear();
+        cacheCleared();
     }
 
     /**
@@ -59,7 +60,10 @@ public class ClassPathRepository extends AbstractClassPathRepository {
      */
     @Override
     public void removeClass(final JavaClass javaClass) {
-        loadedClasses.remove(javaClass.getClassName());
+        final JavaClass removed = loadedClasses.remove(javaClass.getClassName());
+        if (removed != null) {
+            classRemoved(removed);
+        }
     }
 
     /**
@@ -67,7 +71,7 @@ public class ClassPathRepository extends AbstractClassPathRepository {
      */
     @Override
     public void storeClass(final JavaClass javaClass) {
-        loadedClasses.put(javaClass.getClassName(), javaClass);
+        classStored(loadedClasses.put(javaClass.getClassName(), javaClass), javaClass);
         javaClass.setRepository(this);
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * A thread-safe {@link ClassPathRepository} that can be shared by many threads.
+ *
+ * <p>
+ * Loading is single-flight: when several threads request the same class that is not in the repository yet, one of them
+ * parses it from the class path while the others wait for its result, so each class is parsed exactly once. Classes that
+ * fail to parse are not remembered, a later request tries again.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class ConcurrentClassPathRepository extends AbstractClassPathRepository {
+
+    private final ConcurrentMap<String, CompletableFuture<JavaClass>> loadedClasses = new ConcurrentHashMap<>(); // CLASSNAME X JAVACLASS
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param classPath the class path to load classes from.
+     */
+    public ConcurrentClassPathRepository(final ClassPath classPath) {
+        super(classPath);
+    }
+
+    /**
+     * Clears all entries from cache.
+     */
+    @Override
+    public void clear() {
+        loadedClasses.clear();
+        cacheCleared();
+    }
+
+    /**
+     * Finds an already defined (cached) JavaClass object by name. Classes that are still being loaded are not found.
+     */
+    @Override
+    public JavaClass findClass(final String className) {
+        final CompletableFuture<JavaClass> future = loadedClasses.get(className);
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    @Override
+    JavaClass loadClassFromClassPath(final String className) throws ClassNotFoundException {
+        final CompletableFuture<JavaClass> future = new CompletableFuture<>();
+        final CompletableFuture<JavaClass> existing = loadedClasses.putIfAbsent(className, future);
+        if (existing != null) {
+            return waitFor(existing, className);
+        }
+        try {
+            final JavaClass clazz = parseClass(className);
+            if (clazz == null) {
+                loadedClasses.remove(className, future);
+            } else {
+                clazz.setRepository(this);
+            }
+            future.complete(clazz);
+            return clazz;
+        } catch (final ClassNotFoundException | RuntimeException e) {
+            loadedClasses.remove(className, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Removes class from repository.
+     */
+    @Override
+    public void removeClass(final JavaClass javaClass) {
+        final CompletableFuture<JavaClass> removed = loadedClasses.remove(javaClass.getClassName());
+        if (removed != null && removed.isDone() && !removed.isCompletedExceptionally() && removed.join() != null) {
+            classRemoved(removed.join());
+        }
+    }
+
+    /**
+     * Stores a new JavaClass instance into this Repository.
+     */
+    @Override
+    public void storeClass(final JavaClass javaClass) {
+        final CompletableFuture<JavaClass> old = loadedClasses.put(javaClass.getClassName(), CompletableFuture.completedFuture(javaClass));
+        if (old != null && old.isDone() && !old.isCompletedExceptionally()) {
+            classStored(old.join(), javaClass);
+        }
+        javaClass.setRepository(this);
+    }
+
+    private JavaClass waitFor(final CompletableFuture<JavaClass> future, final String className) throws ClassNotFoundException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ClassNotFoundException("Interrupted while loading class " + className, e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ClassNotFoundException(cause.getMessage(), cause);
+        }
+    }
+}
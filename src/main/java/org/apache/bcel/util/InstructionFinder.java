@@ -20,13 +20,13 @@ package org.apache.bcel.util;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.generic.ClassGenException;
@@ -39,7 +39,8 @@ import org.apache.bcel.generic.InstructionList;
  * looks for code patterns and replaces them with faster equivalents.
  *
  * <p>
- * This class internally uses the java.util.regex package to search for regular expressions.
+ * Patterns are compiled once into a deterministic finite automaton over opcodes, which is cached and runs directly on
+ * the opcodes of the instruction list.
  *
  * A typical application would look like this:
  *
@@ -77,9 +78,47 @@ public class InstructionFinder {
         boolean checkCode(InstructionHandle[] match);
     }
 
-    private static final int OFFSET = 32767; // char + OFFSET is outside of LATIN-1
+    /**
+     * A match of one of several named patterns.
+     *
+     * @see InstructionFinder#search(Map, InstructionHandle, Map)
+     * @since 6.10.1
+     */
+    public static final class NamedMatch {
+
+        private final String name;
+        private final InstructionHandle[] match;
+
+        NamedMatch(final String name, final InstructionHandle[] match) {
+            this.name = name;
+            this.match = match;
+        }
+
+        /**
+         * @return the matched piece of code
+         */
+        public InstructionHandle[] getMatch() {
+            return match;
+        }
+
+        /**
+         * @return the name of the matching pattern
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name + Arrays.toString(match);
+        }
+    }
+
     private static final int NO_OPCODES = 256; // Potential number, some are not used
+    private static final int MAX_CACHED_PATTERNS = 1024;
     private static final Map<String, String> map = new HashMap<>();
+    private static final Map<String, BitSet> opcodeSets = new HashMap<>();
+    private static final Map<List<String>, InstructionPattern> patterns = new ConcurrentHashMap<>();
 
     // Initialize pattern map
     static {
@@ -128,11 +167,10 @@ public class InstructionFinder {
         map.put("if_icmp", "(if_icmpne|if_icmpeq|if_icmple|if_icmpge|if_icmplt|if_icmpgt)");
         map.put("if_acmp", "(if_acmpeq|if_acmpne)");
         map.put("if", "(ifeq|ifne|iflt|ifge|ifgt|ifle)");
-        // Precompile some aliases first
         map.put("iconst", precompile(Const.ICONST_0, Const.ICONST_5, Const.ICONST_M1));
-        map.put("lconst", new String(new char[] {'(', makeChar(Const.LCONST_0), '|', makeChar(Const.LCONST_1), ')'}));
-        map.put("dconst", new String(new char[] {'(', makeChar(Const.DCONST_0), '|', makeChar(Const.DCONST_1), ')'}));
-        map.put("fconst", new String(new char[] {'(', makeChar(Const.FCONST_0), '|', makeChar(Const.FCONST_1), '|', makeChar(Const.FCONST_2), ')'}));
+        map.put("lconst", precompile(Const.LCONST_0, Const.LCONST_0, Const.LCONST_1));
+        map.put("dconst", precompile(Const.DCONST_0, Const.DCONST_0, Const.DCONST_1));
+        map.put("fconst", precompile(Const.FCONST_0, Const.FCONST_1, Const.FCONST_2));
         map.put("lload", precompile(Const.LLOAD_0, Const.LLOAD_3, Const.LLOAD));
         map.put("iload", precompile(Const.ILOAD_0, Const.ILOAD_3, Const.ILOAD));
         map.put("dload", precompile(Const.DLOAD_0, Const.DLOAD_3, Const.DLOAD));
@@ -143,99 +181,89 @@ public class InstructionFinder {
         map.put("dstore", precompile(Const.DSTORE_0, Const.DSTORE_3, Const.DSTORE));
         map.put("fstore", precompile(Const.FSTORE_0, Const.FSTORE_3, Const.FSTORE));
         map.put("astore", precompile(Const.ASTORE_0, Const.ASTORE_3, Const.ASTORE));
-        // Compile strings
-        map.forEach((key, value) -> {
-            final char ch = value.charAt(1); // Omit already precompiled patterns
-            if (ch < OFFSET) {
-                map.put(key, compilePattern(value)); // precompile all patterns
-            }
-        });
+        // Resolve the aliases to opcode sets
+        map.keySet().forEach(InstructionFinder::mapName);
         // Add instruction alias to match anything
-        final StringBuilder buf = new StringBuilder("(");
+        final BitSet all = new BitSet(NO_OPCODES);
         for (short i = 0; i < NO_OPCODES; i++) {
             if (Const.getNoOfOperands(i) != Const.UNDEFINED) { // Not an invalid opcode
-                buf.append(makeChar(i));
-                if (i < NO_OPCODES - 1) {
-                    buf.append('|');
-                }
+                all.set(i);
             }
         }
-        buf.append(')');
-        map.put("instruction", buf.toString());
+        opcodeSets.put("instruction", all);
     }
 
     /**
-     * Replace symbolic names of instructions with the appropriate character and remove all white space from string. Meta
-     * characters such as +, * are ignored.
+     * Gets the compiled form of a list of patterns, compiling and caching it on first use.
      *
-     * @param pattern The pattern to compile
-     * @return translated regular expression string
+     * @param list The patterns to compile, the index of a pattern is its id in the automaton
+     * @return the automaton for the patterns
      */
-    private static String compilePattern(final String pattern) {
-        // Bug: BCEL-77 - Instructions are assumed to be english, to avoid odd Locale issues
-        final String lower = pattern.toLowerCase(Locale.ROOT);
-        final StringBuilder buf = new StringBuilder();
-        final int size = pattern.length();
-        for (int i = 0; i < size; i++) {
-            char ch = lower.charAt(i);
-            if (Character.isLetterOrDigit(ch)) {
-                final StringBuilder name = new StringBuilder();
-                while ((Character.isLetterOrDigit(ch) || ch == '_') && i < size) {
-                    name.append(ch);
-                    if (++i >= size) {
-                        break;
-                    }
-                    ch = lower.charAt(i);
-                }
-                i--;
-                buf.append(mapName(name.toString()));
-            } else if (!Character.isWhitespace(ch)) {
-                buf.append(ch);
+    private static InstructionPattern compilePatterns(final List<String> list) {
+        InstructionPattern compiled = patterns.get(list);
+        if (compiled == null) {
+            compiled = new InstructionPattern(list, InstructionFinder::mapName);
+            if (patterns.size() >= MAX_CACHED_PATTERNS) {
+                patterns.clear();
             }
+            patterns.put(list, compiled);
         }
-        return buf.toString();
-    }
-
-    /**
-     * Convert opcode number to char.
-     */
-    private static char makeChar(final short opcode) {
-        return (char) (opcode + OFFSET);
+        return compiled;
     }
 
     /**
-     * Map symbolic instruction names like "getfield" to a single character.
+     * Map symbolic instruction names like "getfield" to the set of opcodes they stand for.
      *
-     * @param pattern instruction pattern in lower case
-     * @return encoded string for a pattern such as "BranchInstruction".
+     * @param pattern instruction name or alias in lower case
+     * @return opcodes for a name such as "BranchInstruction", or null if the name is unknown.
      */
-    private static String mapName(final String pattern) {
-        final String result = map.get(pattern);
+    private static BitSet mapName(final String pattern) {
+        BitSet result = opcodeSets.get(pattern);
         if (result != null) {
             return result;
         }
+        final String alias = map.get(pattern);
+        if (alias != null) {
+            result = new BitSet(NO_OPCODES);
+            // Aliases are lists of names such as "(iload_0|iload_1|iload_2|iload_3|iload)" which may refer to other aliases
+            for (final String name : alias.substring(1, alias.length() - 1).split("\\|")) {
+                final BitSet opcodes = name.equals(pattern) ? mapOpcodeName(name) : mapName(name);
+                if (opcodes == null) {
+                    throw new IllegalStateException("Instruction unknown: " + name);
+                }
+                result.or(opcodes);
+            }
+            opcodeSets.put(pattern, result);
+            return result;
+        }
+        return mapOpcodeName(pattern);
+    }
+
+    private static BitSet mapOpcodeName(final String name) {
         for (short i = 0; i < NO_OPCODES; i++) {
-            if (pattern.equals(Const.getOpcodeName(i))) {
-                return String.valueOf(makeChar(i));
+            if (name.equals(Const.getOpcodeName(i))) {
+                final BitSet result = new BitSet(NO_OPCODES);
+                result.set(i);
+                return result;
             }
         }
-        throw new IllegalArgumentException("Instruction unknown: " + pattern);
+        return null;
     }
 
     private static String precompile(final short from, final short to, final short extra) {
         final StringBuilder buf = new StringBuilder("(");
         for (short i = from; i <= to; i++) {
-            buf.append(makeChar(i));
+            buf.append(Const.getOpcodeName(i));
             buf.append('|');
         }
-        buf.append(makeChar(extra));
+        buf.append(Const.getOpcodeName(extra));
         buf.append(")");
         return buf.toString();
     }
 
     private final InstructionList il;
 
-    private String ilString; // instruction list as string
+    private short[] opcodes; // opcodes of the instruction list
 
     private InstructionHandle[] handles; // map instruction
 
@@ -262,18 +290,25 @@ public class InstructionFinder {
         return Arrays.copyOfRange(handles, matchedFrom, matchedFrom + matchLength);
     }
 
+    private int indexOf(final InstructionHandle from) {
+        for (int i = 0; i < handles.length; i++) {
+            if (handles[i] == from) {
+                return i; // Where to start search from (index)
+            }
+        }
+        throw new ClassGenException("Instruction handle " + from + " not found in instruction list.");
+    }
+
     /**
      * Reread the instruction list, e.g., after you've altered the list upon a match.
      */
     public final void reread() {
         final int size = il.getLength();
-        final char[] buf = new char[size]; // Create a string with length equal to il length
+        opcodes = new short[size];
         handles = il.getInstructionHandles();
-        // Map opcodes to characters
         for (int i = 0; i < size; i++) {
-            buf[i] = makeChar(handles[i].getInstruction().getOpcode());
+            opcodes[i] = handles[i].getInstruction().getOpcode();
         }
-        ilString = new String(buf);
     }
 
     /**
@@ -317,7 +352,11 @@ public class InstructionFinder {
      * Consecutive instruction names must be separated by white space which will be removed during the compilation of the
      * pattern.
      *
-     * For the rest the usual pattern matching rules for regular expressions apply.
+     * For the rest the usual regular expression syntax applies to instructions: "." matches any instruction, groups may be
+     * written as "(...)" or "(?:...)", alternatives are separated by "|", elements may be repeated with "*", "+", "?",
+     * "{n}", "{n,}" and "{n,m}", and "^" and "$" anchor the pattern at the start and the end of the instruction list.
+     * Reluctant and possessive quantifiers, character classes and back references are not supported. At each position the
+     * longest match is taken, empty matches are ignored.
      * <P>
      * Example pattern:
      *
@@ -328,6 +367,11 @@ public class InstructionFinder {
      * <p>
      * If you alter the instruction list upon a match such that other matching areas are affected, you should call reread()
      * to update the finder and call search() again, because the matches are cached.
+     * </p>
+     * <p>
+     * The constraint is checked while matching: if it rejects the longest match at a position, the shorter matches at the
+     * same position are tried before the search moves on.
+     * </p>
      *
      * @param pattern the instruction pattern to search for, where case is ignored
      * @param from where to start the search in the instruction list
@@ -335,54 +379,86 @@ public class InstructionFinder {
      * @return iterator of matches where e.nextElement() returns an array of instruction handles describing the matched area
      */
     public final Iterator<InstructionHandle[]> search(final String pattern, final InstructionHandle from, final CodeConstraint constraint) {
-        final String search = compilePattern(pattern);
-        int start = -1;
-        for (int i = 0; i < handles.length; i++) {
-            if (handles[i] == from) {
-                start = i; // Where to start search from (index)
-                break;
-            }
-        }
-        if (start == -1) {
-            throw new ClassGenException("Instruction handle " + from + " not found in instruction list.");
-        }
-        final Pattern regex = Pattern.compile(search);
+        final InstructionPattern search = compilePatterns(Collections.singletonList(pattern));
+        int start = indexOf(from);
         final List<InstructionHandle[]> matches = new ArrayList<>();
-        final Matcher matcher = regex.matcher(ilString);
-        while (start < ilString.length() && matcher.find(start)) {
-            final int startExpr = matcher.start();
-            final int endExpr = matcher.end();
-            final int lenExpr = endExpr - startExpr;
-            final InstructionHandle[] match = getMatch(startExpr, lenExpr);
-            if (constraint == null || constraint.checkCode(match)) {
+        while (start < opcodes.length) {
+            InstructionHandle[] match = null;
+            for (int end = search.match(opcodes, start, opcodes.length, 0); end != -1; end = search.match(opcodes, start, end - 1, 0)) {
+                final InstructionHandle[] candidate = getMatch(start, end - start);
+                if (constraint == null || constraint.checkCode(candidate)) {
+                    match = candidate;
+                    break;
+                }
+            }
+            if (match != null) {
                 matches.add(match);
+                start += match.length;
+            } else {
+                start++;
             }
-            start = endExpr;
         }
         return matches.iterator();
     }
 
-    /*
-     * Internal debugging routines.
+    /**
+     * Searches for several named patterns at once, beginning from the start of the given instruction list.
+     *
+     * @param patterns the instruction patterns to search for by name, see {@link #search(String, InstructionHandle, CodeConstraint)}
+     * @return matches of all patterns, ordered by their first instruction and then by the iteration order of the patterns
+     * @see #search(Map, InstructionHandle, Map)
+     * @since 6.10.1
      */
-//    private static final String pattern2string( String pattern ) {
-//        return pattern2string(pattern, true);
-//    }
+    public final Iterator<NamedMatch> search(final Map<String, String> patterns) {
+        return search(patterns, il.getStart(), Collections.emptyMap());
+    }
 
-//    private static final String pattern2string( String pattern, boolean make_string ) {
-//        StringBuilder buf = new StringBuilder();
-//        for (int i = 0; i < pattern.length(); i++) {
-//            char ch = pattern.charAt(i);
-//            if (ch >= OFFSET) {
-//                if (make_string) {
-//                    buf.append(Constants.getOpcodeName(ch - OFFSET));
-//                } else {
-//                    buf.append((ch - OFFSET));
-//                }
-//            } else {
-//                buf.append(ch);
-//            }
-//        }
-//        return buf.toString();
-//    }
+    /**
+     * Searches for several named patterns at once in a single pass over the instruction list.
+     * <p>
+     * All patterns are compiled into one automaton, which runs once per instruction instead of once per instruction and
+     * pattern. For each pattern the matches are the same as the ones {@link #search(String, InstructionHandle, CodeConstraint)}
+     * returns for it, in particular the matches of a pattern do not overlap each other, while matches of different patterns
+     * may overlap.
+     * </p>
+     *
+     * @param patterns the instruction patterns to search for by name, see {@link #search(String, InstructionHandle, CodeConstraint)}
+     * @param from where to start the search in the instruction list
+     * @param constraints optional constraints by pattern name to check the found code patterns for user-defined constraints
+     * @return matches of all patterns, ordered by their first instruction and then by the iteration order of the patterns
+     * @since 6.10.1
+     */
+    public final Iterator<NamedMatch> search(final Map<String, String> patterns, final InstructionHandle from,
+        final Map<String, ? extends CodeConstraint> constraints) {
+        final String[] names = patterns.keySet().toArray(new String[patterns.size()]);
+        final InstructionPattern search = compilePatterns(new ArrayList<>(patterns.values()));
+        final int first = indexOf(from);
+        final int[] nextStart = new int[names.length]; // matches of one pattern must not overlap
+        final int[] ends = new int[names.length];
+        final int[] found = new int[names.length];
+        Arrays.fill(ends, -1);
+        final List<NamedMatch> matches = new ArrayList<>();
+        for (int start = first; start < opcodes.length; start++) {
+            final int count = search.matchAll(opcodes, start, ends, found);
+            Arrays.sort(found, 0, count);
+            for (int i = 0; i < count; i++) {
+                final int id = found[i];
+                final int longest = ends[id];
+                ends[id] = -1;
+                if (start < nextStart[id]) {
+                    continue;
+                }
+                final CodeConstraint constraint = constraints.get(names[id]);
+                for (int end = longest; end != -1; end = search.match(opcodes, start, end - 1, id)) {
+                    final InstructionHandle[] candidate = getMatch(start, end - start);
+                    if (constraint == null || constraint.checkCode(candidate)) {
+                        matches.add(new NamedMatch(names[id], candidate));
+                        nextStart[id] = end;
+                        break;
+                    }
+                }
+            }
+        }
+        return matches.iterator();
+    }
 }
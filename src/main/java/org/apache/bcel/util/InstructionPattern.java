@@ -0,0 +1,482 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * One or more {@link InstructionFinder} patterns compiled into a single deterministic finite automaton over opcodes.
+ * <p>
+ * The patterns are parsed into one nondeterministic automaton which is turned into a deterministic one by subset construction, each state knows which
+ * patterns it accepts. Opcodes that no pattern element tells apart share one input class, so the transition table has one column per class instead of one
+ * per opcode.
+ * </p>
+ */
+final class InstructionPattern {
+
+    /**
+     * A parsed pattern element that adds itself to a {@link Nfa} and returns its start and end state.
+     */
+    private interface Node {
+        int[] build(Nfa nfa);
+    }
+
+    /**
+     * Nondeterministic automaton with epsilon transitions, states are indices.
+     */
+    private static final class Nfa {
+
+        /** Opcodes on the single labeled transition of a state, or null. */
+        private final List<BitSet> labels = new ArrayList<>();
+        /** Target of the labeled transition of a state. */
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<List<Integer>> epsilons = new ArrayList<>();
+
+        void addEpsilon(final int from, final int to) {
+            epsilons.get(from).add(to);
+        }
+
+        /**
+         * Adds the epsilon closure of the given state to the given set.
+         */
+        void addClosure(final int state, final BitSet set) {
+            final Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(state);
+            while (!stack.isEmpty()) {
+                final int current = stack.pop();
+                if (!set.get(current)) {
+                    set.set(current);
+                    epsilons.get(current).forEach(stack::push);
+                }
+            }
+        }
+
+        int[] labeled(final BitSet opcodes) {
+            final int start = newState();
+            final int end = newState();
+            labels.set(start, opcodes);
+            targets.set(start, end);
+            return new int[] {start, end};
+        }
+
+        int newState() {
+            if (labels.size() >= MAX_STATES) {
+                throw new IllegalArgumentException("Pattern too complex");
+            }
+            labels.add(null);
+            targets.add(-1);
+            epsilons.add(new ArrayList<>());
+            return labels.size() - 1;
+        }
+    }
+
+    private static final int MAX_REPETITIONS = 1000;
+    private static final int MAX_STATES = 10_000;
+    private static final int NO_OPCODES = 256;
+
+    private static Node alternation(final List<Node> nodes) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        return nfa -> {
+            final int start = nfa.newState();
+            final int end = nfa.newState();
+            for (final Node node : nodes) {
+                final int[] fragment = node.build(nfa);
+                nfa.addEpsilon(start, fragment[0]);
+                nfa.addEpsilon(fragment[1], end);
+            }
+            return new int[] {start, end};
+        };
+    }
+
+    private static Node repetition(final Node node, final int min, final int max) {
+        return nfa -> {
+            final int start = nfa.newState();
+            int end = start;
+            for (int i = 0; i < min; i++) {
+                final int[] fragment = node.build(nfa);
+                nfa.addEpsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            if (max < 0) {
+                final int[] fragment = node.build(nfa);
+                final int after = nfa.newState();
+                nfa.addEpsilon(end, fragment[0]);
+                nfa.addEpsilon(end, after);
+                nfa.addEpsilon(fragment[1], fragment[0]);
+                nfa.addEpsilon(fragment[1], after);
+                end = after;
+            } else {
+                for (int i = min; i < max; i++) {
+                    final int[] fragment = node.build(nfa);
+                    final int after = nfa.newState();
+                    nfa.addEpsilon(end, fragment[0]);
+                    nfa.addEpsilon(end, after);
+                    nfa.addEpsilon(fragment[1], after);
+                    end = after;
+                }
+            }
+            return new int[] {start, end};
+        };
+    }
+
+    private static Node sequence(final List<Node> nodes) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        return nfa -> {
+            final int start = nfa.newState();
+            int end = start;
+            for (final Node node : nodes) {
+                final int[] fragment = node.build(nfa);
+                nfa.addEpsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            return new int[] {start, end};
+        };
+    }
+
+    /**
+     * Recursive descent parser for a single pattern.
+     */
+    private static final class Parser {
+
+        private final String pattern;
+        private final Function<String, BitSet> names;
+        private int pos;
+        private final int end;
+        private final boolean anchoredStart;
+        private final boolean anchoredEnd;
+
+        Parser(final String pattern, final Function<String, BitSet> names) {
+            // Bug: BCEL-77 - Instructions are assumed to be english, to avoid odd Locale issues
+            this.pattern = pattern.toLowerCase(Locale.ROOT).trim();
+            this.names = names;
+            final int length = this.pattern.length();
+            anchoredStart = length > 0 && this.pattern.charAt(0) == '^';
+            if (anchoredStart) {
+                pos++;
+            }
+            anchoredEnd = length > pos && this.pattern.charAt(length - 1) == '$';
+            end = anchoredEnd ? length - 1 : length;
+        }
+
+        Node parse() {
+            final Node root = parseAlternation();
+            if (pos < end) {
+                throw syntaxError("Unmatched ')'");
+            }
+            return root;
+        }
+
+        private boolean consume(final char ch) {
+            skipWhitespace();
+            if (pos < pattern.length() && pattern.charAt(pos) == ch) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node parseAlternation() {
+            final List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (pos < end && consume('|')) {
+                alternatives.add(parseSequence());
+            }
+            return alternation(alternatives);
+        }
+
+        private Node parseAtom() {
+            final char ch = pattern.charAt(pos);
+            if (ch == '(') {
+                pos++;
+                if (consume('?')) {
+                    if (!consume(':')) {
+                        throw syntaxError("Unsupported group construct");
+                    }
+                }
+                final Node group = parseAlternation();
+                if (!consume(')')) {
+                    throw syntaxError("Unclosed group");
+                }
+                return group;
+            }
+            if (ch == '.') {
+                pos++;
+                final BitSet all = new BitSet(NO_OPCODES);
+                all.set(0, NO_OPCODES);
+                return nfa -> nfa.labeled(all);
+            }
+            if (Character.isLetterOrDigit(ch)) {
+                final int from = pos;
+                while (pos < end && (Character.isLetterOrDigit(pattern.charAt(pos)) || pattern.charAt(pos) == '_')) {
+                    pos++;
+                }
+                final String name = pattern.substring(from, pos);
+                final BitSet opcodes = names.apply(name);
+                if (opcodes == null) {
+                    throw new IllegalArgumentException("Instruction unknown: " + name);
+                }
+                return nfa -> nfa.labeled(opcodes);
+            }
+            throw syntaxError("Unsupported character '" + ch + "'");
+        }
+
+        private int parseNumber() {
+            skipWhitespace();
+            final int from = pos;
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos))) {
+                pos++;
+            }
+            if (from == pos) {
+                throw syntaxError("Number expected");
+            }
+            final int value = Integer.parseInt(pattern.substring(from, Math.min(pos, from + 9)));
+            if (value > MAX_REPETITIONS) {
+                throw syntaxError("Repetition count above " + MAX_REPETITIONS);
+            }
+            return value;
+        }
+
+        private Node parseQuantifiers(final Node atom) {
+            Node node = atom;
+            while (true) {
+                skipWhitespace();
+                if (pos >= end) {
+                    return node;
+                }
+                final char ch = pattern.charAt(pos++);
+                final int min;
+                final int max;
+                if (ch == '*') {
+                    min = 0;
+                    max = -1;
+                } else if (ch == '+') {
+                    min = 1;
+                    max = -1;
+                } else if (ch == '?') {
+                    min = 0;
+                    max = 1;
+                } else if (ch == '{') {
+                    min = parseNumber();
+                    if (consume(',')) {
+                        max = consume('}') ? -1 : parseNumber();
+                    } else {
+                        max = min;
+                    }
+                    if (max >= 0 && (max < min || !consume('}'))) {
+                        throw syntaxError("Malformed repetition");
+                    }
+                } else {
+                    pos--;
+                    return node;
+                }
+                if (pos < end && (pattern.charAt(pos) == '?' || pattern.charAt(pos) == '+')) {
+                    throw syntaxError("Reluctant and possessive quantifiers are not supported");
+                }
+                node = repetition(node, min, max);
+            }
+        }
+
+        private Node parseSequence() {
+            final List<Node> nodes = new ArrayList<>();
+            skipWhitespace();
+            while (pos < end && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+                nodes.add(parseQuantifiers(parseAtom()));
+                skipWhitespace();
+            }
+            return nodes.isEmpty() ? repetition(null, 0, 0) : sequence(nodes);
+        }
+
+        private void skipWhitespace() {
+            while (pos < pattern.length() && Character.isWhitespace(pattern.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException syntaxError(final String message) {
+            return new IllegalArgumentException(message + " at index " + pos + " in pattern: " + pattern);
+        }
+    }
+
+    /** Maps an opcode to its input class. */
+    private final int[] classes = new int[NO_OPCODES];
+    private final int classCount;
+
+    /** Next state for state * classCount + input class, -1 if no match is possible any more. */
+    private final int[] transitions;
+    /** Patterns accepted by a state, in ascending order. */
+    private final int[][] accepted;
+    private final boolean[] anchoredStart;
+    private final boolean[] anchoredEnd;
+
+    /**
+     * Compiles the given patterns, the index of a pattern is its id.
+     *
+     * @param patterns the patterns, where case is ignored.
+     * @param names maps a lower case instruction name or alias to its opcodes, or returns null for unknown names.
+     * @throws IllegalArgumentException if a pattern is malformed or uses an unknown instruction name.
+     */
+    InstructionPattern(final List<String> patterns, final Function<String, BitSet> names) {
+        final Nfa nfa = new Nfa();
+        final int start = nfa.newState();
+        final int[] acceptStates = new int[patterns.size()];
+        anchoredStart = new boolean[patterns.size()];
+        anchoredEnd = new boolean[patterns.size()];
+        for (int id = 0; id < acceptStates.length; id++) {
+            final Parser parser = new Parser(patterns.get(id), names);
+            final int[] fragment = parser.parse().build(nfa);
+            nfa.addEpsilon(start, fragment[0]);
+            acceptStates[id] = fragment[1];
+            anchoredStart[id] = parser.anchoredStart;
+            anchoredEnd[id] = parser.anchoredEnd;
+        }
+        // Opcodes contained in the same labels are indistinguishable.
+        final Map<BitSet, Integer> signatures = new HashMap<>();
+        final List<Integer> representatives = new ArrayList<>();
+        for (int opcode = 0; opcode < NO_OPCODES; opcode++) {
+            final BitSet signature = new BitSet();
+            for (int state = 0; state < nfa.labels.size(); state++) {
+                final BitSet label = nfa.labels.get(state);
+                if (label != null && label.get(opcode)) {
+                    signature.set(state);
+                }
+            }
+            final int opcodeClass = signatures.computeIfAbsent(signature, k -> signatures.size());
+            if (opcodeClass == representatives.size()) {
+                representatives.add(opcode);
+            }
+            classes[opcode] = opcodeClass;
+        }
+        classCount = representatives.size();
+        // Subset construction
+        final Map<BitSet, Integer> ids = new HashMap<>();
+        final List<BitSet> states = new ArrayList<>();
+        final BitSet initial = new BitSet();
+        nfa.addClosure(start, initial);
+        ids.put(initial, 0);
+        states.add(initial);
+        final List<int[]> rows = new ArrayList<>();
+        for (int id = 0; id < states.size(); id++) {
+            final BitSet current = states.get(id);
+            final int[] row = new int[classCount];
+            for (int c = 0; c < classCount; c++) {
+                final int opcode = representatives.get(c);
+                final BitSet next = new BitSet();
+                for (int state = current.nextSetBit(0); state >= 0; state = current.nextSetBit(state + 1)) {
+                    final BitSet label = nfa.labels.get(state);
+                    if (label != null && label.get(opcode)) {
+                        nfa.addClosure(nfa.targets.get(state), next);
+                    }
+                }
+                if (next.isEmpty()) {
+                    row[c] = -1;
+                } else {
+                    Integer nextId = ids.get(next);
+                    if (nextId == null) {
+                        if (states.size() >= MAX_STATES) {
+                            throw new IllegalArgumentException("Pattern too complex: " + patterns);
+                        }
+                        nextId = states.size();
+                        ids.put(next, nextId);
+                        states.add(next);
+                    }
+                    row[c] = nextId;
+                }
+            }
+            rows.add(row);
+        }
+        transitions = new int[states.size() * classCount];
+        accepted = new int[states.size()][];
+        for (int id = 0; id < states.size(); id++) {
+            System.arraycopy(rows.get(id), 0, transitions, id * classCount, classCount);
+            final BitSet state = states.get(id);
+            accepted[id] = IntStream.range(0, acceptStates.length).filter(p -> state.get(acceptStates[p])).toArray();
+        }
+    }
+
+    /**
+     * Finds the longest match of the given pattern starting at the given index.
+     *
+     * @param opcodes the opcodes of the instruction list.
+     * @param start index of the first instruction of the match.
+     * @param limit the match must end at or before this index.
+     * @param id the pattern to match.
+     * @return the end index (exclusive) of the longest non empty match, or -1 if there is none.
+     */
+    int match(final short[] opcodes, final int start, final int limit, final int id) {
+        if (anchoredStart[id] && start != 0) {
+            return -1;
+        }
+        int state = 0;
+        int end = -1;
+        for (int i = start; i < limit; i++) {
+            state = transitions[state * classCount + classes[opcodes[i]]];
+            if (state < 0) {
+                break;
+            }
+            if (Arrays.binarySearch(accepted[state], id) >= 0 && (!anchoredEnd[id] || i + 1 == opcodes.length)) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the longest match of every pattern starting at the given index in a single run of the automaton.
+     *
+     * @param opcodes the opcodes of the instruction list.
+     * @param start index of the first instruction of the matches.
+     * @param ends receives for each matching pattern id the end index (exclusive) of its longest non empty match, entries of other patterns must be -1 and
+     *        are left alone.
+     * @param found receives the ids of the matching patterns.
+     * @return the number of matching patterns.
+     */
+    int matchAll(final short[] opcodes, final int start, final int[] ends, final int[] found) {
+        int count = 0;
+        int state = 0;
+        for (int i = start; i < opcodes.length; i++) {
+            state = transitions[state * classCount + classes[opcodes[i]]];
+            if (state < 0) {
+                break;
+            }
+            for (final int id : accepted[state]) {
+                if ((!anchoredStart[id] || start == 0) && (!anchoredEnd[id] || i + 1 == opcodes.length)) {
+                    if (ends[id] == -1) {
+                        found[count++] = id;
+                    }
+                    ends[id] = i + 1;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.AnnotationEntry;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.EnclosingMethod;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.FieldOrMethod;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.LineNumberTable;
+import org.apache.bcel.classfile.LocalVariableTable;
+import org.apache.bcel.classfile.LocalVariableTypeTable;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.NestHost;
+import org.apache.bcel.classfile.NestMembers;
+import org.apache.bcel.classfile.SourceFile;
+import org.apache.bcel.classfile.Utility;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.INVOKEDYNAMIC;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionList;
+
+/**
+ * Makes classes and jar files smaller by removing what the JVM does not need to run them.
+ * <p>
+ * Depending on the configuration, all of which is on by default, the shrinker
+ * </p>
+ * <ul>
+ * <li>removes the {@code LineNumberTable} attributes, so stack traces no longer show line numbers,</li>
+ * <li>removes the {@code LocalVariableTable} and {@code LocalVariableTypeTable} attributes,</li>
+ * <li>removes the {@code SourceFile} attribute,</li>
+ * <li>removes private fields and methods that nothing refers to, and</li>
+ * <li>removes unreferenced constants from the constant pool, see {@link ClassGen#setCompactConstantPool(boolean)}.</li>
+ * </ul>
+ * <p>
+ * Private members are kept when the JVM or the serialization mechanism may use them without a reference in the class file: constructors, static
+ * initializers, native methods, the serialization hooks and fields, and members with runtime visible annotations. Private members of a class that
+ * belongs to a nest are only removed when the whole nest is shrunk together, because nestmates may refer to them. Members that are only used through
+ * reflection by name can not be detected and should be kept with {@link #setRemoveUnusedPrivateMembers(boolean)}.
+ * </p>
+ * <p>
+ * The classes of a jar are shrunk in parallel, while all other entries are copied byte for byte. Signature files are left out of the shrunk jar,
+ * since its classes no longer match them. Classes that BCEL can not parse are copied unchanged.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class JarShrinker {
+
+    /** Names of the private members that serialization looks up by name. */
+    private static final Set<String> SERIALIZATION_MEMBERS = new HashSet<>(Arrays.asList("serialVersionUID", "serialPersistentFields", "writeObject",
+        "readObject", "readObjectNoData", "writeReplace", "readResolve", "$deserializeLambda$"));
+
+    private static void addReference(final Set<String> references, final ConstantPool cp, final String owner, final int nameAndTypeIndex) {
+        final ConstantNameAndType nat = cp.getConstant(nameAndTypeIndex, Const.CONSTANT_NameAndType, ConstantNameAndType.class);
+        references.add(owner + ' ' + memberKey(nat.getName(cp), nat.getSignature(cp)));
+    }
+
+    /**
+     * Adds the references that the given class makes to fields and methods of other classes.
+     */
+    private static void addReferences(final JavaClass clazz, final Set<String> references) {
+        final ConstantPool cp = clazz.getConstantPool();
+        for (final Constant c : cp) {
+            if (c != null
+                && (c.getTag() == Const.CONSTANT_Fieldref || c.getTag() == Const.CONSTANT_Methodref || c.getTag() == Const.CONSTANT_InterfaceMethodref)) {
+                final String owner = ((ConstantCP) c).getClass(cp);
+                if (!owner.equals(clazz.getClassName())) {
+                    addReference(references, cp, owner, ((ConstantCP) c).getNameAndTypeIndex());
+                }
+            }
+        }
+        for (final Attribute attribute : clazz.getAttributes()) {
+            if (attribute instanceof EnclosingMethod && ((EnclosingMethod) attribute).getEnclosingMethodIndex() != 0) {
+                final EnclosingMethod enclosing = (EnclosingMethod) attribute;
+                addReference(references, cp, Utility.pathToPackage(enclosing.getEnclosingClass().getBytes(cp)), enclosing.getEnclosingMethodIndex());
+            }
+        }
+    }
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static String getNestHost(final JavaClass clazz) {
+        for (final Attribute attribute : clazz.getAttributes()) {
+            if (attribute instanceof NestHost) {
+                return Utility.pathToPackage(clazz.getConstantPool().getConstantString(((NestHost) attribute).getHostClassIndex(), Const.CONSTANT_Class));
+            }
+            if (attribute instanceof NestMembers) {
+                return clazz.getClassName();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isClass(final ZipEntry entry) {
+        return !entry.isDirectory() && entry.getName().endsWith(JavaClass.EXTENSION);
+    }
+
+    /**
+     * Tests whether a member may be used without a reference in the class file.
+     */
+    private static boolean isImplicitlyUsed(final FieldOrMethod member) {
+        if (!member.isPrivate() || member.isNative()) {
+            return true;
+        }
+        final String name = member.getName();
+        if (name.equals(Const.CONSTRUCTOR_NAME) || name.equals(Const.STATIC_INITIALIZER_NAME) || SERIALIZATION_MEMBERS.contains(name)) {
+            return true;
+        }
+        for (final AnnotationEntry annotation : member.getAnnotationEntries()) {
+            if (annotation.isRuntimeVisible()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSignatureFile(final ZipEntry entry) {
+        final String name = entry.getName().toUpperCase();
+        return name.startsWith("META-INF/") && name.indexOf('/', "META-INF/".length()) < 0
+            && (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC"));
+    }
+
+    /**
+     * Shrinks a jar file.
+     *
+     * @param argv options, followed by the input and the output jar file
+     * @throws IOException if a jar file can not be read or written
+     */
+    public static void main(final String[] argv) throws IOException {
+        final JarShrinker shrinker = new JarShrinker();
+        final List<String> files = new ArrayList<>();
+        for (final String arg : argv) {
+            if (arg.equals("-keepLineNumbers")) {
+                shrinker.setStripLineNumbers(false);
+            } else if (arg.equals("-keepLocalVariables")) {
+                shrinker.setStripLocalVariables(false);
+            } else if (arg.equals("-keepSourceFile")) {
+                shrinker.setStripSourceFile(false);
+            } else if (arg.equals("-keepPrivateMembers")) {
+                shrinker.setRemoveUnusedPrivateMembers(false);
+            } else if (arg.equals("-keepConstants")) {
+                shrinker.setCompactConstantPools(false);
+            } else if (arg.startsWith("-")) {
+                System.out.println("Unknown option " + arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            System.out.println("Usage: JarShrinker [-keepLineNumbers] [-keepLocalVariables] [-keepSourceFile] [-keepPrivateMembers] [-keepConstants]"
+                + " input.jar output.jar");
+            return;
+        }
+        final Path input = Paths.get(files.get(0));
+        final Path output = Paths.get(files.get(1));
+        shrinker.shrink(input, output);
+        System.out.println(input + ": " + Files.size(input) + " bytes, " + output + ": " + Files.size(output) + " bytes");
+    }
+
+    private static String memberKey(final String name, final String signature) {
+        return name + ' ' + signature;
+    }
+
+    private boolean stripLineNumbers = true;
+
+    private boolean stripLocalVariables = true;
+
+    private boolean stripSourceFile = true;
+
+    private boolean removeUnusedPrivateMembers = true;
+
+    private boolean compactConstantPools = true;
+
+    /**
+     * Tests whether unreferenced constants are removed.
+     *
+     * @return whether constant pools are compacted.
+     */
+    public boolean isCompactConstantPools() {
+        return compactConstantPools;
+    }
+
+    /**
+     * Tests whether private fields and methods that nothing refers to are removed.
+     *
+     * @return whether unused private members are removed.
+     */
+    public boolean isRemoveUnusedPrivateMembers() {
+        return removeUnusedPrivateMembers;
+    }
+
+    /**
+     * Tests whether {@code LineNumberTable} attributes are removed.
+     *
+     * @return whether line numbers are removed.
+     */
+    public boolean isStripLineNumbers() {
+        return stripLineNumbers;
+    }
+
+    /**
+     * Tests whether {@code LocalVariableTable} and {@code LocalVariableTypeTable} attributes are removed.
+     *
+     * @return whether local variable names are removed.
+     */
+    public boolean isStripLocalVariables() {
+        return stripLocalVariables;
+    }
+
+    /**
+     * Tests whether the {@code SourceFile} attribute is removed.
+     *
+     * @return whether the source file name is removed.
+     */
+    public boolean isStripSourceFile() {
+        return stripSourceFile;
+    }
+
+    private void removeUnusedPrivateMembers(final ClassGen cg, final JavaClass clazz, final Set<String> references) {
+        final ConstantPool cp = clazz.getConstantPool();
+        final String className = clazz.getClassName();
+        final Map<String, Method> methods = new HashMap<>();
+        final Set<String> used = new HashSet<>();
+        final Deque<Method> pending = new ArrayDeque<>();
+        for (final Method m : clazz.getMethods()) {
+            methods.put(memberKey(m.getName(), m.getSignature()), m);
+        }
+        for (final Method m : clazz.getMethods()) {
+            if (isImplicitlyUsed(m) || references != null && references.contains(className + ' ' + memberKey(m.getName(), m.getSignature()))) {
+                use(memberKey(m.getName(), m.getSignature()), used, methods, pending);
+            }
+        }
+        for (final Field f : clazz.getFields()) {
+            if (isImplicitlyUsed(f) || references != null && references.contains(className + ' ' + memberKey(f.getName(), f.getSignature()))) {
+                used.add(memberKey(f.getName(), f.getSignature()));
+            }
+        }
+        // Method handles, as used by lambdas, may refer to private members
+        for (final Constant c : cp) {
+            if (c instanceof ConstantMethodHandle) {
+                final ConstantCP ref = cp.getConstant(((ConstantMethodHandle) c).getReferenceIndex(), ConstantCP.class);
+                if (ref.getClass(cp).equals(className)) {
+                    final ConstantNameAndType nat = cp.getConstant(ref.getNameAndTypeIndex(), Const.CONSTANT_NameAndType, ConstantNameAndType.class);
+                    use(memberKey(nat.getName(cp), nat.getSignature(cp)), used, methods, pending);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            final Code code = pending.pop().getCode();
+            if (code == null) {
+                continue;
+            }
+            for (final Instruction i : new InstructionList(code.getCode()).getInstructions()) {
+                if (i instanceof org.apache.bcel.generic.FieldOrMethod && !(i instanceof INVOKEDYNAMIC)) {
+                    final ConstantCP ref = cp.getConstant(((org.apache.bcel.generic.FieldOrMethod) i).getIndex(), ConstantCP.class);
+                    if (ref.getClass(cp).equals(className)) {
+                        final ConstantNameAndType nat = cp.getConstant(ref.getNameAndTypeIndex(), Const.CONSTANT_NameAndType, ConstantNameAndType.class);
+                        use(memberKey(nat.getName(cp), nat.getSignature(cp)), used, methods, pending);
+                    }
+                }
+            }
+        }
+        for (final Method m : clazz.getMethods()) {
+            if (!used.contains(memberKey(m.getName(), m.getSignature()))) {
+                cg.removeMethod(m);
+            }
+        }
+        for (final Field f : clazz.getFields()) {
+            if (!used.contains(memberKey(f.getName(), f.getSignature()))) {
+                cg.removeField(f);
+            }
+        }
+    }
+
+    /**
+     * Sets whether unreferenced constants are removed.
+     *
+     * @param compactConstantPools whether to compact constant pools.
+     */
+    public void setCompactConstantPools(final boolean compactConstantPools) {
+        this.compactConstantPools = compactConstantPools;
+    }
+
+    /**
+     * Sets whether private fields and methods that nothing refers to are removed.
+     *
+     * @param removeUnusedPrivateMembers whether to remove unused private members.
+     */
+    public void setRemoveUnusedPrivateMembers(final boolean removeUnusedPrivateMembers) {
+        this.removeUnusedPrivateMembers = removeUnusedPrivateMembers;
+    }
+
+    /**
+     * Sets whether {@code LineNumberTable} attributes are removed.
+     *
+     * @param stripLineNumbers whether to remove line numbers.
+     */
+    public void setStripLineNumbers(final boolean stripLineNumbers) {
+        this.stripLineNumbers = stripLineNumbers;
+    }
+
+    /**
+     * Sets whether {@code LocalVariableTable} and {@code LocalVariableTypeTable} attributes are removed.
+     *
+     * @param stripLocalVariables whether to remove local variable names.
+     */
+    public void setStripLocalVariables(final boolean stripLocalVariables) {
+        this.stripLocalVariables = stripLocalVariables;
+    }
+
+    /**
+     * Sets whether the {@code SourceFile} attribute is removed.
+     *
+     * @param stripSourceFile whether to remove the source file name.
+     */
+    public void setStripSourceFile(final boolean stripSourceFile) {
+        this.stripSourceFile = stripSourceFile;
+    }
+
+    /**
+     * Shrinks a single class. Private members of a class that belongs to a nest are kept, since its nestmates are not known.
+     *
+     * @param clazz the class to shrink, which is not modified.
+     * @return the shrunk class.
+     */
+    public JavaClass shrink(final JavaClass clazz) {
+        return shrink(clazz, null);
+    }
+
+    /**
+     * Shrinks a single class.
+     *
+     * @param clazz the class to shrink.
+     * @param references the references of the other classes of its nest to fields and methods, or null if they are not known.
+     */
+    private JavaClass shrink(final JavaClass clazz, final Set<String> references) {
+        final ClassGen cg = new ClassGen(clazz);
+        if (removeUnusedPrivateMembers && (references != null || getNestHost(clazz) == null)) {
+            removeUnusedPrivateMembers(cg, clazz, references);
+        }
+        if (stripLineNumbers || stripLocalVariables) {
+            final Method[] methods = cg.getMethods();
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i].getCode() != null) {
+                    final Method m = methods[i].copy(methods[i].getConstantPool());
+                    final Code code = m.getCode();
+                    code.setAttributes(Arrays.stream(code.getAttributes()).filter(a -> !(stripLineNumbers && a instanceof LineNumberTable
+                        || stripLocalVariables && (a instanceof LocalVariableTable || a instanceof LocalVariableTypeTable))).toArray(Attribute[]::new));
+                    cg.setMethodAt(m, i);
+                }
+            }
+        }
+        if (stripSourceFile) {
+            for (final Attribute attribute : cg.getAttributes()) {
+                if (attribute instanceof SourceFile) {
+                    cg.removeAttribute(attribute);
+                }
+            }
+        }
+        cg.setCompactConstantPool(compactConstantPools);
+        return cg.getJavaClass();
+    }
+
+    /**
+     * Shrinks the classes of a jar file and copies all other entries.
+     *
+     * @param input the jar file to read.
+     * @param output the jar file to write.
+     * @throws IOException if a jar file can not be read or written.
+     */
+    public void shrink(final Path input, final Path output) throws IOException {
+        try (ZipFile zip = new ZipFile(input.toFile())) {
+            final List<? extends ZipEntry> entries = Collections.list(zip.entries());
+            final JavaClass[] classes = new JavaClass[entries.size()];
+            try {
+                IntStream.range(0, classes.length).parallel().filter(i -> isClass(entries.get(i))).forEach(i -> {
+                    try (InputStream in = zip.getInputStream(entries.get(i))) {
+                        final byte[] bytes = new byte[(int) entries.get(i).getSize()];
+                        int n = 0;
+                        for (int read = 0; n < bytes.length && read >= 0; n += read) {
+                            read = in.read(bytes, n, bytes.length - n);
+                        }
+                        classes[i] = new ClassParser(new ByteArrayInputStream(bytes), entries.get(i).getName()).parse();
+                    } catch (final ClassFormatException e) {
+                        // Copied unchanged
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // References between the classes of a nest, which may use each other's private members
+            final Set<String> classNames = ConcurrentHashMap.newKeySet();
+            final Set<String> references = ConcurrentHashMap.newKeySet();
+            if (removeUnusedPrivateMembers) {
+                Arrays.stream(classes).parallel().filter(c -> c != null).forEach(c -> {
+                    classNames.add(c.getClassName());
+                    if (getNestHost(c) != null) {
+                        addReferences(c, references);
+                    }
+                });
+            }
+            final byte[][] shrunk = new byte[classes.length][];
+            IntStream.range(0, classes.length).parallel().filter(i -> classes[i] != null).forEach(i -> {
+                final String host = getNestHost(classes[i]);
+                shrunk[i] = shrink(classes[i], host != null && classNames.contains(host) ? references : null).getBytes();
+            });
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(output))) {
+                for (int i = 0; i < classes.length; i++) {
+                    final ZipEntry entry = entries.get(i);
+                    if (isSignatureFile(entry)) {
+                        continue;
+                    }
+                    final ZipEntry copy = new ZipEntry(entry.getName());
+                    copy.setTime(entry.getTime());
+                    copy.setComment(entry.getComment());
+                    if (shrunk[i] != null) {
+                        out.putNextEntry(copy);
+                        out.write(shrunk[i]);
+                    } else {
+                        copy.setExtra(entry.getExtra());
+                        if (entry.getMethod() == ZipEntry.STORED) {
+                            copy.setMethod(ZipEntry.STORED);
+                            copy.setSize(entry.getSize());
+                            copy.setCompressedSize(entry.getSize());
+                            copy.setCrc(entry.getCrc());
+                        }
+                        out.putNextEntry(copy);
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            copy(in, out);
+                        }
+                    }
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    private void use(final String key, final Set<String> used, final Map<String, Method> methods, final Deque<Method> pending) {
+        if (used.add(key) && methods.containsKey(key)) {
+            pending.push(methods.get(key));
+        }
+    }
+}
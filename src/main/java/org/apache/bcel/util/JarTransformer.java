@@ -0,0 +1,525 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Runs a transformation over all classes of a jar file and writes the result to another jar file.
+ * <p>
+ * The entries are read in order with a bounded read-ahead. Classes are parsed, transformed and dumped in parallel, while the output is written in
+ * the order of the input, so the same input and transformation always give the same jar. At most {@link #setReadAhead(int) read-ahead} entries are
+ * in flight, so a slow transformation holds back the reading instead of filling the memory. Entries that are not classes, and classes the
+ * transformation returns unchanged, are copied as their raw compressed bytes without being inflated.
+ * </p>
+ * <p>
+ * The transformation gets each parsed class and returns the class to write in its place, the same instance to leave the class untouched, or null
+ * to leave it out. It may be called from several threads at once. Classes that BCEL can not parse are copied unchanged. ZIP64 archives are not
+ * supported. Signed jars no longer verify once classes have changed.
+ * </p>
+ *
+ * <pre>
+ * new JarTransformer(clazz -&gt; {
+ *     final ClassGen cg = new ClassGen(clazz);
+ *     // ...
+ *     return cg.getJavaClass();
+ * }).transform(Paths.get("in.jar"), Paths.get("out.jar"));
+ * </pre>
+ *
+ * @since 6.10.1
+ */
+public class JarTransformer {
+
+    /**
+     * An entry of the central directory.
+     */
+    private static final class Entry {
+
+        int versionMadeBy;
+        int versionNeeded;
+        int flags;
+        int method;
+        int time;
+        int date;
+        long crc;
+        long compressedSize;
+        long size;
+        byte[] name;
+        byte[] extra;
+        byte[] comment;
+        int internalAttributes;
+        long externalAttributes;
+        long offset;
+
+        boolean isClass() {
+            final String n = new String(name, StandardCharsets.UTF_8);
+            return n.endsWith(JavaClass.EXTENSION) && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) && (flags & 1) == 0;
+        }
+    }
+
+    /**
+     * The compressed bytes of a transformed class.
+     */
+    private static final class Result {
+
+        static final Result UNCHANGED = new Result(null, 0, 0);
+
+        static final Result REMOVED = new Result(null, 0, 0);
+
+        final byte[] compressed;
+        final long crc;
+        final long size;
+
+        Result(final byte[] compressed, final long crc, final long size) {
+            this.compressed = compressed;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private static final int CENTRAL_HEADER = 0x02014b50;
+
+    private static final int END_HEADER = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_HEADER_SIZE = 22;
+
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 8;
+
+    private static ByteBuffer allocate(final int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] inflate(final Entry entry, final byte[] raw) throws IOException {
+        if (entry.method == ZipEntry.STORED) {
+            return raw;
+        }
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new IOException("Class too large: " + new String(entry.name, StandardCharsets.UTF_8));
+        }
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            final byte[] bytes = new byte[(int) entry.size];
+            int n = 0;
+            while (n < bytes.length && !inflater.finished()) {
+                final int inflated = inflater.inflate(bytes, n, bytes.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != bytes.length) {
+                throw new IOException("Truncated entry: " + new String(entry.name, StandardCharsets.UTF_8));
+            }
+            return bytes;
+        } catch (final DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void read(final FileChannel in, final ByteBuffer buffer, final long position) throws IOException {
+        long p = position;
+        while (buffer.hasRemaining()) {
+            final int n = in.read(buffer, p);
+            if (n < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            p += n;
+        }
+        buffer.flip();
+    }
+
+    private static byte[] readBytes(final ByteBuffer buffer, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the central directory.
+     *
+     * @param in the archive.
+     * @param comment receives the archive comment.
+     */
+    private static List<Entry> readEntries(final FileChannel in, final ByteArrayOutputStream comment) throws IOException {
+        final long size = in.size();
+        final int tail = (int) Math.min(size, END_HEADER_SIZE + 0xFFFF);
+        final ByteBuffer end = allocate(tail);
+        read(in, end, size - tail);
+        int pos = tail - END_HEADER_SIZE;
+        while (pos >= 0 && end.getInt(pos) != END_HEADER) {
+            pos--;
+        }
+        if (pos < 0) {
+            throw new IOException("Not a zip archive");
+        }
+        final int count = end.getShort(pos + 10) & 0xFFFF;
+        final long directorySize = end.getInt(pos + 12) & MAX_SIZE;
+        final long directoryOffset = end.getInt(pos + 16) & MAX_SIZE;
+        if (count == 0xFFFF || directorySize == MAX_SIZE || directoryOffset == MAX_SIZE) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+        comment.write(end.array(), pos + END_HEADER_SIZE, Math.min(end.getShort(pos + 20) & 0xFFFF, tail - pos - END_HEADER_SIZE));
+        final ByteBuffer directory = allocate((int) directorySize);
+        read(in, directory, directoryOffset);
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt() != CENTRAL_HEADER) {
+                throw new IOException("Invalid central directory");
+            }
+            final Entry entry = new Entry();
+            entry.versionMadeBy = directory.getShort() & 0xFFFF;
+            entry.versionNeeded = directory.getShort() & 0xFFFF;
+            entry.flags = directory.getShort() & 0xFFFF;
+            entry.method = directory.getShort() & 0xFFFF;
+            entry.time = directory.getShort() & 0xFFFF;
+            entry.date = directory.getShort() & 0xFFFF;
+            entry.crc = directory.getInt() & MAX_SIZE;
+            entry.compressedSize = directory.getInt() & MAX_SIZE;
+            entry.size = directory.getInt() & MAX_SIZE;
+            final int nameLength = directory.getShort() & 0xFFFF;
+            final int extraLength = directory.getShort() & 0xFFFF;
+            final int commentLength = directory.getShort() & 0xFFFF;
+            directory.getShort(); // disk
+            entry.internalAttributes = directory.getShort() & 0xFFFF;
+            entry.externalAttributes = directory.getInt() & MAX_SIZE;
+            entry.offset = directory.getInt() & MAX_SIZE;
+            entry.name = readBytes(directory, nameLength);
+            entry.extra = readBytes(directory, extraLength);
+            entry.comment = readBytes(directory, commentLength);
+            if (entry.compressedSize == MAX_SIZE || entry.size == MAX_SIZE || entry.offset == MAX_SIZE) {
+                throw new IOException("ZIP64 archives are not supported");
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void write(final FileChannel out, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private final UnaryOperator<JavaClass> transformation;
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    private int readAhead = 4 * ForkJoinPool.getCommonPoolParallelism();
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param transformation the transformation of each class, see the class comment.
+     */
+    public JarTransformer(final UnaryOperator<JavaClass> transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * Gets the number of entries that may be in flight at once.
+     *
+     * @return the read-ahead.
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Sets the compression level of the transformed classes.
+     *
+     * @param level the level, as for {@link Deflater#setLevel(int)}.
+     */
+    public void setCompressionLevel(final int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * Sets the executor that transforms the classes, by default the common fork join pool.
+     *
+     * @param executor the executor.
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the number of entries that may be read ahead of the one being written, which bounds both the memory and the parallelism.
+     *
+     * @param readAhead the read-ahead, at least 1.
+     */
+    public void setReadAhead(final int readAhead) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException("Invalid read-ahead " + readAhead);
+        }
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Transforms the classes of a jar file and copies all other entries.
+     *
+     * @param input the jar file to read.
+     * @param output the jar file to write.
+     * @throws IOException if a jar file can not be read or written.
+     */
+    public void transform(final Path input, final Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteArrayOutputStream comment = new ByteArrayOutputStream();
+            final List<Entry> entries = readEntries(in, comment);
+            final List<Entry> written = new ArrayList<>(entries.size());
+            final Deque<CompletableFuture<Result>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (final Entry entry : entries) {
+                if (pending.size() >= readAhead) {
+                    writeEntry(in, out, entries.get(next++), join(pending.removeFirst()), written);
+                }
+                if (entry.isClass()) {
+                    final byte[] raw = readData(in, entry);
+                    pending.addLast(CompletableFuture.supplyAsync(() -> transform(entry, raw), executor));
+                } else {
+                    pending.addLast(CompletableFuture.completedFuture(Result.UNCHANGED));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeEntry(in, out, entries.get(next++), join(pending.removeFirst()), written);
+            }
+            writeDirectory(out, written, comment.toByteArray());
+        }
+    }
+
+    private Result join(final CompletableFuture<Result> future) throws IOException {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the compressed data of an entry.
+     */
+    private byte[] readData(final FileChannel in, final Entry entry) throws IOException {
+        if (entry.compressedSize > Integer.MAX_VALUE) {
+            throw new IOException("Class too large: " + new String(entry.name, StandardCharsets.UTF_8));
+        }
+        final ByteBuffer header = readLocalHeader(in, entry);
+        final ByteBuffer data = allocate((int) entry.compressedSize);
+        read(in, data, entry.offset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF));
+        return data.array();
+    }
+
+    private ByteBuffer readLocalHeader(final FileChannel in, final Entry entry) throws IOException {
+        final ByteBuffer header = allocate(LOCAL_HEADER_SIZE);
+        read(in, header, entry.offset);
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new IOException("Invalid local header: " + new String(entry.name, StandardCharsets.UTF_8));
+        }
+        return header;
+    }
+
+    private Result transform(final Entry entry, final byte[] raw) {
+        try {
+            final byte[] bytes = inflate(entry, raw);
+            final JavaClass clazz;
+            try {
+                clazz = new ClassParser(new ByteArrayInputStream(bytes), new String(entry.name, StandardCharsets.UTF_8)).parse();
+            } catch (final ClassFormatException e) {
+                return Result.UNCHANGED;
+            }
+            final JavaClass transformed = transformation.apply(clazz);
+            if (transformed == clazz) {
+                return Result.UNCHANGED;
+            }
+            if (transformed == null) {
+                return Result.REMOVED;
+            }
+            final byte[] dumped = transformed.getBytes();
+            final CRC32 crc = new CRC32();
+            crc.update(dumped);
+            final Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(dumped);
+                deflater.finish();
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream(dumped.length / 2 + 64);
+                final byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return new Result(compressed.toByteArray(), crc.getValue(), dumped.length);
+            } finally {
+                deflater.end();
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeDirectory(final FileChannel out, final List<Entry> written, final byte[] comment) throws IOException {
+        final long offset = out.position();
+        for (final Entry entry : written) {
+            final ByteBuffer header = allocate(CENTRAL_HEADER_SIZE + entry.name.length + entry.extra.length + entry.comment.length);
+            header.putInt(CENTRAL_HEADER);
+            header.putShort((short) entry.versionMadeBy);
+            header.putShort((short) entry.versionNeeded);
+            header.putShort((short) entry.flags);
+            header.putShort((short) entry.method);
+            header.putShort((short) entry.time);
+            header.putShort((short) entry.date);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.compressedSize);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) entry.extra.length);
+            header.putShort((short) entry.comment.length);
+            header.putShort((short) 0); // disk
+            header.putShort((short) entry.internalAttributes);
+            header.putInt((int) entry.externalAttributes);
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            header.put(entry.extra);
+            header.put(entry.comment);
+            header.flip();
+            write(out, header);
+        }
+        final long size = out.position() - offset;
+        if (written.size() >= 0xFFFF || offset + size >= MAX_SIZE) {
+            throw new IOException("Output needs ZIP64, which is not supported");
+        }
+        final ByteBuffer end = allocate(END_HEADER_SIZE + comment.length);
+        end.putInt(END_HEADER);
+        end.putShort((short) 0); // disk
+        end.putShort((short) 0); // disk with the central directory
+        end.putShort((short) written.size());
+        end.putShort((short) written.size());
+        end.putInt((int) size);
+        end.putInt((int) offset);
+        end.putShort((short) comment.length);
+        end.put(comment);
+        end.flip();
+        write(out, end);
+    }
+
+    /**
+     * Writes an entry with its local header, either with the given compressed class or with the data of the input entry.
+     */
+    private void writeEntry(final FileChannel in, final FileChannel out, final Entry entry, final Result result, final List<Entry> written)
+        throws IOException {
+        if (result == Result.REMOVED) {
+            return;
+        }
+        // The local extra field may differ from the central one, for example by alignment padding
+        final ByteBuffer localHeader = readLocalHeader(in, entry);
+        final long extraOffset = entry.offset + LOCAL_HEADER_SIZE + (localHeader.getShort(26) & 0xFFFF);
+        final ByteBuffer localExtra = allocate(localHeader.getShort(28) & 0xFFFF);
+        read(in, localExtra, extraOffset);
+        final long dataOffset = extraOffset + localExtra.capacity();
+        // The sizes go into the local header, so no data descriptor follows the data
+        entry.flags &= ~DATA_DESCRIPTOR_FLAG;
+        if (result != Result.UNCHANGED) {
+            entry.method = ZipEntry.DEFLATED;
+            entry.crc = result.crc;
+            entry.compressedSize = result.compressed.length;
+            entry.size = result.size;
+            entry.versionNeeded = Math.max(entry.versionNeeded, 20);
+        }
+        entry.offset = out.position();
+        if (entry.offset >= MAX_SIZE) {
+            throw new IOException("Output needs ZIP64, which is not supported");
+        }
+        final ByteBuffer header = allocate(LOCAL_HEADER_SIZE + entry.name.length + localExtra.capacity());
+        header.putInt(LOCAL_HEADER);
+        header.putShort((short) entry.versionNeeded);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putShort((short) entry.time);
+        header.putShort((short) entry.date);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) localExtra.capacity());
+        header.put(entry.name);
+        header.put(localExtra);
+        header.flip();
+        write(out, header);
+        if (result == Result.UNCHANGED) {
+            long position = dataOffset;
+            final long end = dataOffset + entry.compressedSize;
+            while (position < end) {
+                final long n = in.transferTo(position, end - position, out);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of archive");
+                }
+                position += n;
+            }
+        } else {
+            write(out, ByteBuffer.wrap(result.compressed));
+        }
+        written.add(entry);
+    }
+}
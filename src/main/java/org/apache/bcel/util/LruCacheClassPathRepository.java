@@ -51,7 +51,11 @@ public class LruCacheClassPathRepository extends AbstractClassPathRepository {
 
             @Override
             protected boolean removeEldestEntry(final Map.Entry<String, JavaClass> eldest) {
-                return size() > cacheSize;
+                if (size() > cacheSize) {
+                    classEvicted(eldest.getValue());
+                    return true;
+                }
+                return false;
             }
         };
     }
@@ -59,6 +63,7 @@ public class LruCacheClassPathRepository extends AbstractClassPathRepository {
     @Override
     public void clear() {
         loadedClasses.clear();
+        cacheCleared();
     }
 
     @Override
@@ -68,13 +73,16 @@ public class LruCacheClassPathRepository extends AbstractClassPathRepository {
 
     @Override
     public void removeClass(final JavaClass javaClass) {
-        loadedClasses.remove(javaClass.getClassName());
+        final JavaClass removed = loadedClasses.remove(javaClass.getClassName());
+        if (removed != null) {
+            classRemoved(removed);
+        }
     }
 
     @Override
     public void storeClass(final JavaClass javaClass) {
         // Not storing parent's _loadedClass
-        loadedClasses.put(javaClass.getClassName(), javaClass);
+        classStored(loadedClasses.put(javaClass.getClassName(), javaClass), javaClass);
         javaClass.setRepository(this);
     }
 }
@@ -18,9 +18,14 @@
  */
 package org.apache.bcel.util;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.bcel.classfile.JavaClass;
 
@@ -29,15 +34,56 @@ import org.apache.bcel.classfile.JavaClass;
  * from the file systems using the paths specified in the given class path. By default, this is the value returned by
  * ClassPath.getClassPath(). This repository holds onto classes with SoftReferences, and will reload as needed, in cases
  * where memory sizes are important.
+ * <p>
+ * Entries whose classes were cleared by the garbage collector are removed as part of the normal operations of this
+ * repository. An optional size target bounds the number of entries even when memory is plentiful. This repository is
+ * thread-safe.
+ * </p>
  *
  * @see org.apache.bcel.Repository
  */
 public class MemorySensitiveClassPathRepository extends AbstractClassPathRepository {
 
-    private final Map<String, SoftReference<JavaClass>> loadedClasses = new HashMap<>(); // CLASSNAME X JAVACLASS
+    /**
+     * A soft reference to a class that remembers its key, to remove its entry once the class is cleared.
+     */
+    private static final class ClassReference extends SoftReference<JavaClass> {
+
+        private final String key;
+
+        ClassReference(final String key, final JavaClass clazz, final ReferenceQueue<JavaClass> queue) {
+            super(clazz, queue);
+            this.key = key;
+        }
+    }
+
+    private final ConcurrentMap<String, ClassReference> loadedClasses = new ConcurrentHashMap<>(); // CLASSNAME X JAVACLASS
+    private final ReferenceQueue<JavaClass> clearedClasses = new ReferenceQueue<>();
+    private final Queue<ClassReference> storeOrder;
+    private final AtomicInteger storeOrderSize = new AtomicInteger();
+    private final int sizeTarget;
 
     public MemorySensitiveClassPathRepository(final ClassPath path) {
         super(path);
+        this.storeOrder = null;
+        this.sizeTarget = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Constructs a new instance that holds at most about {@code sizeTarget} classes. When more classes are stored, the
+     * classes stored first are removed.
+     *
+     * @param path       the class path to load classes from.
+     * @param sizeTarget the number of classes to hold at most.
+     * @since 6.10.1
+     */
+    public MemorySensitiveClassPathRepository(final ClassPath path, final int sizeTarget) {
+        super(path);
+        if (sizeTarget < 1) {
+            throw new IllegalArgumentException("Invalid size target " + sizeTarget);
+        }
+        this.storeOrder = new ConcurrentLinkedQueue<>();
+        this.sizeTarget = sizeTarget;
     }
 
     /**
@@ -46,6 +92,12 @@ public class MemorySensitiveClassPathRepository extends AbstractClassPathReposit
     @Override
     public void clear() {
         loadedClasses.clear();
+        if (storeOrder != null) {
+            storeOrder.clear();
+            storeOrderSize.set(0);
+        }
+        purge();
+        cacheCleared();
     }
 
     /**
@@ -53,16 +105,79 @@ public class MemorySensitiveClassPathRepository extends AbstractClassPathReposit
      */
     @Override
     public JavaClass findClass(final String className) {
-        final SoftReference<JavaClass> ref = loadedClasses.get(className);
+        purge();
+        final ClassReference ref = loadedClasses.get(className);
         return ref == null ? null : ref.get();
     }
 
+    /**
+     * Gets the number of classes this repository holds at most.
+     *
+     * @return the size target, or {@link Integer#MAX_VALUE} if there is none.
+     * @since 6.10.1
+     */
+    public int getSizeTarget() {
+        return sizeTarget;
+    }
+
+    /**
+     * Removes the entries whose classes were cleared by the garbage collector.
+     */
+    private void purge() {
+        for (Reference<? extends JavaClass> ref = clearedClasses.poll(); ref != null; ref = clearedClasses.poll()) {
+            loadedClasses.remove(((ClassReference) ref).key, ref);
+        }
+    }
+
+    /**
+     * Removes the classes stored first until this repository holds at most {@link #sizeTarget} classes. Drops the references
+     * to removed or replaced entries once they outnumber the entries, keeping the others in the order they were stored.
+     */
+    private void trim() {
+        if (storeOrderSize.get() > 2 * loadedClasses.size() + 1) {
+            storeOrder.removeIf(ref -> {
+                if (loadedClasses.get(ref.key) == ref) {
+                    return false;
+                }
+                storeOrderSize.decrementAndGet();
+                return true;
+            });
+        }
+        while (loadedClasses.size() > sizeTarget) {
+            final ClassReference eldest = storeOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            storeOrderSize.decrementAndGet();
+            // An entry that was already removed or replaced is skipped
+            final JavaClass evicted = eldest.get();
+            if (loadedClasses.remove(eldest.key, eldest) && evicted != null) {
+                classEvicted(evicted);
+            }
+        }
+    }
+
     /**
      * Remove class from repository
      */
     @Override
     public void removeClass(final JavaClass clazz) {
-        loadedClasses.remove(clazz.getClassName());
+        purge();
+        final ClassReference removed = loadedClasses.remove(clazz.getClassName());
+        final JavaClass removedClass = removed == null ? null : removed.get();
+        if (removedClass != null) {
+            classRemoved(removedClass);
+        }
+    }
+
+    /**
+     * Gets the number of entries, after removing those whose classes were cleared by the garbage collector.
+     *
+     * @return the number of entries.
+     */
+    int size() {
+        purge();
+        return loadedClasses.size();
     }
 
     /**
@@ -70,8 +185,18 @@ public class MemorySensitiveClassPathRepository extends AbstractClassPathReposit
      */
     @Override
     public void storeClass(final JavaClass clazz) {
+        purge();
         // Not calling super.storeClass because this subclass maintains the mapping.
-        loadedClasses.put(clazz.getClassName(), new SoftReference<>(clazz));
+        final ClassReference ref = new ClassReference(clazz.getClassName(), clazz, clearedClasses);
+        final ClassReference old = loadedClasses.put(ref.key, ref);
+        if (old != null) {
+            classStored(old.get(), clazz);
+        }
         clazz.setRepository(this);
+        if (storeOrder != null) {
+            storeOrder.add(ref);
+            storeOrderSize.incrementAndGet();
+            trim();
+        }
     }
 }
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Utility;
+
+/**
+ * A {@link ConcurrentClassPathRepository} that keeps a persistent cache of class files in a local directory, so that later
+ * processes don't have to decompress them from the archives of the class path again.
+ *
+ * <p>
+ * The first time a class is loaded from a jar, zip, or jmod file, all class files of that archive are written
+ * decompressed to one cache file, together with an index of their offsets. The cache file is keyed by the real path, the
+ * size, and the modification time of the archive, so a changed archive gets a new cache file. Later lookups, in this or
+ * another process, read the class file from the memory mapped cache file and parse it without opening a zip entry.
+ * </p>
+ * <p>
+ * Classes from directories and from the Java runtime image are not cached. The cache is best-effort: if a cache file
+ * can't be written or read, classes are loaded from the class path as usual. Cache files of archives that changed are not
+ * deleted.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class PersistentCacheClassPathRepository extends ConcurrentClassPathRepository {
+
+    /**
+     * The class files of one archive, memory mapped from a cache file.
+     */
+    private static final class Pack {
+
+        private final ByteBuffer buffer;
+        private final Map<String, Long> index;
+
+        Pack(final ByteBuffer buffer, final Map<String, Long> index) {
+            this.buffer = buffer;
+            this.index = index;
+        }
+
+        byte[] get(final String name) {
+            final Long entry = index.get(name);
+            if (entry == null) {
+                return null;
+            }
+            final byte[] bytes = new byte[(int) entry.longValue()];
+            final ByteBuffer data = buffer.duplicate();
+            data.position((int) (entry >>> 32));
+            data.get(bytes);
+            return bytes;
+        }
+    }
+
+    private static final int MAGIC = 0xBCE1CAC4;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bcelcache";
+
+    private static InputStream asInputStream(final ByteBuffer buffer) {
+        return new InputStream() {
+
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                final int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    private static boolean isArchive(final String base) {
+        final String name = base.toLowerCase(Locale.ROOT);
+        return name.endsWith(".jar") || name.endsWith(".zip") || name.endsWith(org.apache.bcel.classfile.Module.EXTENSION);
+    }
+
+    private static Pack readPack(final Path packFile, final Path source, final long size, final long time) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(packFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final DataInputStream header = new DataInputStream(asInputStream(buffer.duplicate()));
+        if (header.readInt() != MAGIC || header.readInt() != VERSION || !header.readUTF().equals(source.toString()) || header.readLong() != size
+            || header.readLong() != time) {
+            return null;
+        }
+        final ByteBuffer indexBuffer = buffer.duplicate();
+        indexBuffer.position((int) buffer.getLong(buffer.limit() - Long.BYTES));
+        final DataInputStream in = new DataInputStream(asInputStream(indexBuffer));
+        final int count = in.readInt();
+        final Map<String, Long> index = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            final String name = in.readUTF();
+            index.put(name, (long) in.readInt() << 32 | in.readInt());
+        }
+        return new Pack(buffer, index);
+    }
+
+    private static void writePack(final Path source, final long size, final long time, final Path packFile) throws IOException {
+        // In a jmod file, the class files are in the classes directory
+        final String prefix = source.toString().endsWith(org.apache.bcel.classfile.Module.EXTENSION) ? "classes/" : "";
+        final Path temp = Files.createTempFile(packFile.getParent(), "pack", ".tmp");
+        try {
+            try (ZipFile zipFile = new ZipFile(source.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(source.toString());
+                out.writeLong(size);
+                out.writeLong(time);
+                final Map<String, Long> index = new HashMap<>();
+                final byte[] buffer = new byte[8192];
+                // DataOutputStream.size() stops at Integer.MAX_VALUE, so count the bytes written here
+                long position = out.size();
+                for (final ZipEntry entry : Collections.list(zipFile.entries())) {
+                    final String name = entry.getName();
+                    if (!entry.isDirectory() && name.startsWith(prefix) && name.endsWith(JavaClass.EXTENSION)) {
+                        final long offset = position;
+                        try (InputStream in = zipFile.getInputStream(entry)) {
+                            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                                out.write(buffer, 0, n);
+                                position += n;
+                            }
+                        }
+                        if (position > Integer.MAX_VALUE) {
+                            throw new IOException("Archive too large to cache: " + source);
+                        }
+                        index.put(name.substring(prefix.length(), name.length() - JavaClass.EXTENSION.length()), offset << 32 | position - offset);
+                    }
+                }
+                final long indexOffset = position;
+                out.writeInt(index.size());
+                for (final Map.Entry<String, Long> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt((int) (entry.getValue() >>> 32));
+                    out.writeInt(entry.getValue().intValue());
+                }
+                out.writeLong(indexOffset);
+            }
+            try {
+                Files.move(temp, packFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, packFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private final Path cacheDirectory;
+
+    private final ConcurrentMap<String, CompletableFuture<Optional<Pack>>> packs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param classPath      the class path to load classes from.
+     * @param cacheDirectory the directory of the cache files, created if needed.
+     */
+    public PersistentCacheClassPathRepository(final ClassPath classPath, final Path cacheDirectory) {
+        super(classPath);
+        this.cacheDirectory = Objects.requireNonNull(cacheDirectory, "cacheDirectory");
+    }
+
+    /**
+     * Gets the directory of the cache files.
+     *
+     * @return the cache directory.
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Gets the pack of an archive, opening or writing it only once. Other threads that need the same pack wait for it, outside of the map.
+     */
+    private Optional<Pack> getPack(final String archive) {
+        final CompletableFuture<Optional<Pack>> future = packs.get(archive);
+        if (future != null) {
+            return future.join();
+        }
+        final CompletableFuture<Optional<Pack>> created = new CompletableFuture<>();
+        final CompletableFuture<Optional<Pack>> existing = packs.putIfAbsent(archive, created);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            created.complete(openPack(archive));
+        } finally {
+            // Don't leave other threads waiting if opening failed with an error
+            created.complete(Optional.empty());
+        }
+        return created.join();
+    }
+
+    private Optional<Pack> openPack(final String archive) {
+        try {
+            final Path source = Paths.get(archive).toRealPath();
+            final long size = Files.size(source);
+            final long time = Files.getLastModifiedTime(source).toMillis();
+            final String key = UUID.nameUUIDFromBytes((source + "|" + size + "|" + time).getBytes(StandardCharsets.UTF_8)).toString();
+            final Path packFile = cacheDirectory.resolve(key + SUFFIX);
+            if (Files.isRegularFile(packFile)) {
+                final Pack pack = readPack(packFile, source, size, time);
+                if (pack != null) {
+                    return Optional.of(pack);
+                }
+            }
+            Files.createDirectories(cacheDirectory);
+            writePack(source, size, time, packFile);
+            return Optional.ofNullable(readPack(packFile, source, size, time));
+        } catch (final IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    JavaClass parseClass(final String className) throws ClassNotFoundException {
+        final byte[] bytes = readCached(className);
+        if (bytes == null) {
+            return super.parseClass(className);
+        }
+        try {
+            return parse(new ByteArrayInputStream(bytes), className);
+        } catch (final IOException e) {
+            throw new ClassNotFoundException("Exception while looking for class " + className + ": " + e, e);
+        }
+    }
+
+    private byte[] readCached(final String className) {
+        final ClassPath.ClassFile classFile = getClassPath().findClassFile(className, JavaClass.EXTENSION);
+        final String base = classFile == null ? null : classFile.getBase();
+        if (base == null || !isArchive(base)) {
+            return null;
+        }
+        return getPack(base).map(pack -> pack.get(Utility.packageToPath(className))).orElse(null);
+    }
+}
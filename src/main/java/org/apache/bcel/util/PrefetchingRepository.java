@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Utility;
+
+/**
+ * A {@link Repository} that prefetches the classes referenced by the classes it loads, so that later lookups find them in
+ * the cache.
+ *
+ * <p>
+ * When a class is loaded through this repository, the classes named by the {@link ConstantClass} entries of its constant
+ * pool are loaded into the wrapped repository in the background, and so on up to a maximum depth. The number of classes
+ * prefetched is bounded, and the references of each class are queued at most once. Classes that can't be found or parsed
+ * are skipped. Tools that walk a whole program, like a transitive hull or a call graph builder, then no longer wait for
+ * each class to be read and parsed in turn.
+ * </p>
+ * <p>
+ * The wrapped repository is used from several threads at once, so it must be thread-safe, like
+ * {@link ConcurrentClassPathRepository}. All other operations are delegated to it unchanged.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class PrefetchingRepository implements Repository {
+
+    private static final int DEFAULT_MAX_CLASSES = 10_000;
+
+    /**
+     * Converts the name of a class constant to a class name, using the element type of arrays.
+     *
+     * @param name the name of a class constant.
+     * @return the class name, or null for arrays of primitive types.
+     */
+    private static String toClassName(final String name) {
+        if (name.charAt(0) != '[') {
+            return Utility.pathToPackage(name);
+        }
+        final int start = name.lastIndexOf('[') + 1;
+        return name.charAt(start) == 'L' ? Utility.pathToPackage(name.substring(start + 1, name.length() - 1)) : null;
+    }
+
+    private final Repository repository;
+    private final Set<String> expanded = ConcurrentHashMap.newKeySet();
+    private final Set<String> requested = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private final Object lock = new Object();
+    private volatile Executor executor = ForkJoinPool.commonPool();
+    private volatile int maxDepth = 2;
+    private volatile int maxClasses = DEFAULT_MAX_CLASSES;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param repository the thread-safe repository to load classes into.
+     */
+    public PrefetchingRepository(final Repository repository) {
+        this.repository = Objects.requireNonNull(repository, "repository");
+    }
+
+    /**
+     * Waits until all queued classes are prefetched.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public void awaitPrefetch() throws InterruptedException {
+        synchronized (lock) {
+            while (pending.get() > 0) {
+                lock.wait();
+            }
+        }
+    }
+
+    /**
+     * Clears the wrapped repository and forgets which classes were prefetched.
+     */
+    @Override
+    public void clear() {
+        repository.clear();
+        expanded.clear();
+        requested.clear();
+        scheduled.set(0);
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public JavaClass findClass(final String className) {
+        return repository.findClass(className);
+    }
+
+    @Override
+    public ClassHierarchy getClassHierarchy() {
+        return repository.getClassHierarchy();
+    }
+
+    @Override
+    public ClassPath getClassPath() {
+        return repository.getClassPath();
+    }
+
+    /**
+     * Gets the maximum number of classes prefetched until the next {@link #clear()}.
+     *
+     * @return the maximum number of classes.
+     */
+    public int getMaxClasses() {
+        return maxClasses;
+    }
+
+    /**
+     * Gets how many references away from a loaded class classes are prefetched.
+     *
+     * @return the maximum depth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Gets the wrapped repository.
+     *
+     * @return the wrapped repository.
+     */
+    public Repository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public JavaClass loadClass(final Class<?> clazz) throws ClassNotFoundException {
+        return prefetch(repository.loadClass(clazz));
+    }
+
+    @Override
+    public JavaClass loadClass(final String className) throws ClassNotFoundException {
+        return prefetch(repository.loadClass(className));
+    }
+
+    @Override
+    public Optional<JavaClass> loadClassIfPresent(final String className) {
+        final Optional<JavaClass> clazz = repository.loadClassIfPresent(className);
+        clazz.ifPresent(this::prefetch);
+        return clazz;
+    }
+
+    private JavaClass prefetch(final JavaClass clazz) {
+        if (clazz != null) {
+            prefetchReferences(clazz, 0);
+        }
+        return clazz;
+    }
+
+    private void prefetchReferences(final JavaClass clazz, final int depth) {
+        if (depth >= maxDepth || !expanded.add(clazz.getClassName())) {
+            return;
+        }
+        final ConstantPool constantPool = clazz.getConstantPool();
+        for (final Constant constant : constantPool) {
+            if (constant instanceof ConstantClass) {
+                final String name = toClassName(constantPool.getConstantString(((ConstantClass) constant).getNameIndex(), Const.CONSTANT_Utf8));
+                if (name != null && !name.equals(clazz.getClassName()) && requested.add(name) && scheduled.incrementAndGet() <= maxClasses) {
+                    pending.incrementAndGet();
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                repository.loadClassIfPresent(name).ifPresent(referenced -> prefetchReferences(referenced, depth + 1));
+                            } catch (final RuntimeException ignored) {
+                                // Prefetching is best-effort, the class will fail again when it is loaded
+                            } finally {
+                                done();
+                            }
+                        });
+                    } catch (final RejectedExecutionException e) {
+                        requested.remove(name);
+                        scheduled.decrementAndGet();
+                        done();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeClass(final JavaClass clazz) {
+        repository.removeClass(clazz);
+    }
+
+    /**
+     * Sets the executor that loads the prefetched classes, by default the common fork join pool.
+     *
+     * @param executor the executor.
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    /**
+     * Sets the maximum number of classes prefetched until the next {@link #clear()}, by default 10000.
+     *
+     * @param maxClasses the maximum number of classes, at least 0.
+     */
+    public void setMaxClasses(final int maxClasses) {
+        if (maxClasses < 0) {
+            throw new IllegalArgumentException("Invalid maximum number of classes " + maxClasses);
+        }
+        this.maxClasses = maxClasses;
+    }
+
+    /**
+     * Sets how many references away from a loaded class classes are prefetched, by default 2. With 1, only the classes a
+     * loaded class refers to directly are prefetched; with 0, nothing is prefetched.
+     *
+     * @param maxDepth the maximum depth, at least 0.
+     */
+    public void setMaxDepth(final int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Invalid maximum depth " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public void storeClass(final JavaClass clazz) {
+        repository.storeClass(clazz);
+    }
+}
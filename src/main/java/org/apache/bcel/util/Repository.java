@@ -18,6 +18,8 @@
  */
 package org.apache.bcel.util;
 
+import java.util.Optional;
+
 import org.apache.bcel.classfile.JavaClass;
 
 /**
@@ -43,6 +45,17 @@ public interface Repository {
      */
     ClassPath getClassPath();
 
+    /**
+     * Gets the cache of the type hierarchies of the classes in this repository. The repository clears it whenever it replaces,
+     * removes, or evicts classes.
+     *
+     * @return the class hierarchy cache, or null if this repository doesn't keep one.
+     * @since 6.10.1
+     */
+    default ClassHierarchy getClassHierarchy() {
+        return null;
+    }
+
     /**
      * Finds the JavaClass instance for the given run-time class object.
      *
@@ -57,6 +70,22 @@ public interface Repository {
      */
     JavaClass loadClass(String className) throws ClassNotFoundException;
 
+    /**
+     * Finds the class with the name provided, if the class isn't there, make an attempt to load it. Unlike
+     * {@link #loadClass(String)}, doesn't throw an exception if the class can't be found.
+     *
+     * @param className the name of the class.
+     * @return the class, or an empty Optional if the class can't be found.
+     * @since 6.10.1
+     */
+    default Optional<JavaClass> loadClassIfPresent(final String className) {
+        try {
+            return Optional.of(loadClass(className));
+        } catch (final ClassNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Removes class from repository
      */
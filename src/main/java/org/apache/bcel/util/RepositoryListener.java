@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Listens to the cache and class loading events of a class path repository, for example to collect
+ * {@link RepositoryStatistics}.
+ *
+ * <p>
+ * All methods do nothing by default. They may be called concurrently by the threads that use a thread-safe repository.
+ * </p>
+ *
+ * @see AbstractClassPathRepository#setListener(RepositoryListener)
+ * @since 6.10.1
+ */
+public interface RepositoryListener {
+
+    /**
+     * Called when the repository is cleared.
+     */
+    default void cacheCleared() {
+    }
+
+    /**
+     * Called when a class is found in the cache of the repository.
+     *
+     * @param className the name of the class.
+     */
+    default void cacheHit(final String className) {
+    }
+
+    /**
+     * Called when a class is not found in the cache of the repository, before it is looked up on the class path.
+     *
+     * @param className the name of the class.
+     */
+    default void cacheMiss(final String className) {
+    }
+
+    /**
+     * Called when the cache evicts a class to make room for other classes.
+     *
+     * @param clazz the evicted class.
+     */
+    default void classEvicted(final JavaClass clazz) {
+    }
+
+    /**
+     * Called when a class is read and parsed from the class path.
+     *
+     * @param clazz     the parsed class.
+     * @param bytesRead the number of bytes read from the class file.
+     * @param nanos     the time taken to read and parse the class file, in nanoseconds.
+     */
+    default void classLoaded(final JavaClass clazz, final long bytesRead, final long nanos) {
+    }
+
+    /**
+     * Called when a class is removed from the repository.
+     *
+     * @param clazz the removed class.
+     */
+    default void classRemoved(final JavaClass clazz) {
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Collects the cache hits and misses, evictions, bytes read, parse times and the estimated retained size of a class path
+ * repository, to size caches like {@link LruCacheClassPathRepository} and to see where class loading time goes.
+ *
+ * <pre>
+ * RepositoryStatistics statistics = new RepositoryStatistics();
+ * repository.setListener(statistics);
+ * // optionally, to read the statistics through JMX
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, new ObjectName("org.apache.bcel:type=RepositoryStatistics"));
+ * </pre>
+ *
+ * <p>
+ * This class is thread-safe. The estimated retained size only includes the classes loaded from the class path since the
+ * listener was set, not the classes stored in the repository by other means, and still includes the classes cleared
+ * by the garbage collector from a {@link MemorySensitiveClassPathRepository}.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class RepositoryStatistics implements RepositoryListener, RepositoryStatisticsMBean {
+
+    private static final int HISTOGRAM_SIZE = 32;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    /** The estimated sizes of the classes loaded from the class path and still held, by class name. */
+    private final ConcurrentMap<String, Integer> retainedSizes = new ConcurrentHashMap<>();
+    private final LongAdder[] parseTimeHistogram = new LongAdder[HISTOGRAM_SIZE];
+
+    /**
+     * Constructs a new instance.
+     */
+    public RepositoryStatistics() {
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            parseTimeHistogram[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void cacheCleared() {
+        retainedSizes.clear();
+    }
+
+    @Override
+    public void cacheHit(final String className) {
+        hits.increment();
+    }
+
+    @Override
+    public void cacheMiss(final String className) {
+        misses.increment();
+    }
+
+    @Override
+    public void classEvicted(final JavaClass clazz) {
+        evictions.increment();
+        retainedSizes.remove(clazz.getClassName());
+    }
+
+    @Override
+    public void classLoaded(final JavaClass clazz, final long bytesRead, final long nanos) {
+        loads.increment();
+        this.bytesRead.add(bytesRead);
+        parseNanos.add(nanos);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        parseTimeHistogram[Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros), HISTOGRAM_SIZE - 1)].increment();
+        retainedSizes.put(clazz.getClassName(), AbstractClassPathRepository.estimateSize(clazz));
+    }
+
+    @Override
+    public void classRemoved(final JavaClass clazz) {
+        retainedSizes.remove(clazz.getClassName());
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getEstimatedRetainedBytes() {
+        long sum = 0;
+        for (final Integer size : retainedSizes.values()) {
+            sum += size;
+        }
+        return sum;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long hitCount = hits.sum();
+        final long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long[] getParseTimeHistogram() {
+        final long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            histogram[i] = parseTimeHistogram[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loads.reset();
+        evictions.reset();
+        bytesRead.reset();
+        parseNanos.reset();
+        retainedSizes.clear();
+        for (final LongAdder bucket : parseTimeHistogram) {
+            bucket.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%,d, misses=%,d, loads=%,d, evictions=%,d, bytesRead=%,d, parseMillis=%,d, estimatedRetainedBytes=%,d", getHits(),
+                getMisses(), getLoads(), getEvictions(), getBytesRead(), TimeUnit.NANOSECONDS.toMillis(getParseNanos()), getEstimatedRetainedBytes());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+/**
+ * The management interface of {@link RepositoryStatistics}, so that the statistics of a repository can be registered as
+ * a standard MBean and read through JMX.
+ *
+ * @since 6.10.1
+ */
+public interface RepositoryStatisticsMBean {
+
+    /**
+     * Gets the number of bytes read from class files.
+     *
+     * @return the number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * Gets the estimated size of the classes loaded from the class path that are still in the repository.
+     *
+     * @return the estimated size, in bytes.
+     */
+    long getEstimatedRetainedBytes();
+
+    /**
+     * Gets the number of classes evicted by the cache to make room for other classes.
+     *
+     * @return the number of evictions.
+     */
+    long getEvictions();
+
+    /**
+     * Gets the ratio of cache lookups that found the class.
+     *
+     * @return the hit rate, between 0 and 1, or 0 if there were no lookups.
+     */
+    double getHitRate();
+
+    /**
+     * Gets the number of cache lookups that found the class.
+     *
+     * @return the number of hits.
+     */
+    long getHits();
+
+    /**
+     * Gets the number of classes read and parsed from the class path.
+     *
+     * @return the number of loads.
+     */
+    long getLoads();
+
+    /**
+     * Gets the number of cache lookups that didn't find the class.
+     *
+     * @return the number of misses.
+     */
+    long getMisses();
+
+    /**
+     * Gets the total time taken to read and parse class files.
+     *
+     * @return the parse time, in nanoseconds.
+     */
+    long getParseNanos();
+
+    /**
+     * Gets a histogram of the times taken to read and parse class files. Element {@code i} counts the classes that took
+     * less than 2<sup>i</sup> microseconds and, for {@code i > 0}, at least 2<sup>i - 1</sup> microseconds. The last element also counts all slower
+     * classes.
+     *
+     * @return the number of classes per bucket.
+     */
+    long[] getParseTimeHistogram();
+
+    /**
+     * Resets all statistics to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Maintains a cache of {@link JavaClass} bounded by the estimated retained size of the cached classes, with a
+ * frequency-aware eviction policy in the style of W-TinyLFU.
+ *
+ * <p>
+ * New classes enter a small LRU window. When they leave the window, a compact frequency sketch decides whether they are
+ * admitted to the main area, a segmented LRU, or whether the main area's eviction candidate stays. Classes that are used
+ * often, like {@code java.lang.Object} or {@code java.lang.String}, therefore survive a scan over many classes that are
+ * used once, which flushes a plain LRU cache such as {@link LruCacheClassPathRepository}.
+ * </p>
+ * <p>
+ * This repository is thread-safe. Lookups don't block; they record the access in a buffer that is replayed under a lock
+ * when classes are stored or removed. Under heavy contention, some accesses may be dropped, which only affects the
+ * eviction order.
+ * </p>
+ *
+ * @since 6.10.1
+ */
+public class TinyLfuCacheClassPathRepository extends AbstractClassPathRepository {
+
+    /**
+     * A count-min sketch of 4-bit counters that estimates how often each class was used recently. The counters are
+     * halved periodically so that the history ages.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private long[] table = new long[0];
+        private int tableMask;
+        private int sampleSize;
+        private int size;
+
+        private static int spread(final int hash) {
+            final int h = hash * 0x9e3779b9;
+            return h ^ h >>> 17;
+        }
+
+        void ensureCapacity(final int maximumSize) {
+            final int capacity = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+            if (table.length < capacity) {
+                table = new long[capacity];
+                tableMask = capacity - 1;
+                sampleSize = 10 * capacity;
+                size = 0;
+            }
+        }
+
+        int frequency(final String key) {
+            final int hash = spread(key.hashCode());
+            final int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                final int offset = start + i << 2;
+                frequency = Math.min(frequency, (int) (table[indexOf(hash, i)] >>> offset & 0xF));
+            }
+            return frequency;
+        }
+
+        void increment(final String key) {
+            final int hash = spread(key.hashCode());
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = start + i << 2;
+                if ((table[index] >>> offset & 0xF) != 0xF) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++size >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = table[i] >>> 1 & RESET_MASK;
+                }
+                size /= 2;
+            }
+        }
+
+        private int indexOf(final int hash, final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+    }
+
+    /**
+     * A cached class, linked into one of the access-ordered queues.
+     */
+    private static final class Node {
+
+        final String key;
+        final JavaClass value;
+        final int weight;
+        AccessQueue queue;
+        Node prev;
+        Node next;
+
+        Node(final String key, final JavaClass value, final int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes in access order, the most recently used first.
+     */
+    private static final class AccessQueue {
+
+        Node head;
+        Node tail;
+        long weight;
+
+        void addFirst(final Node node) {
+            node.queue = this;
+            node.prev = null;
+            node.next = head;
+            if (head == null) {
+                tail = node;
+            } else {
+                head.prev = node;
+            }
+            head = node;
+            weight += node.weight;
+        }
+
+        void clear() {
+            head = tail = null;
+            weight = 0;
+        }
+
+        void remove(final Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.queue = null;
+            node.prev = node.next = null;
+            weight -= node.weight;
+        }
+    }
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int DRAIN_THRESHOLD = 32;
+
+    private final ConcurrentHashMap<String, Node> loadedClasses = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong readCount = new AtomicLong();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+    private final long maximumWeight;
+    private final long maximumWindowWeight;
+    private final long maximumMainWeight;
+    private final long maximumProtectedWeight;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param path          the class path to load classes from.
+     * @param maximumWeight the maximum estimated size of the cached classes, in bytes.
+     * @throws IllegalArgumentException if {@code maximumWeight} is not positive.
+     */
+    public TinyLfuCacheClassPathRepository(final ClassPath path, final long maximumWeight) {
+        super(path);
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("maximumWeight must be a positive number.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.maximumWindowWeight = Math.max(1, maximumWeight / 100);
+        this.maximumMainWeight = maximumWeight - maximumWindowWeight;
+        this.maximumProtectedWeight = maximumMainWeight * 4 / 5;
+    }
+
+    /**
+     * Admits a class leaving the window into the probation queue if it is used more often than the classes it would
+     * evict, or evicts it.
+     */
+    private void admit(final Node candidate) {
+        while (probation.weight + protectedQueue.weight + candidate.weight > maximumMainWeight) {
+            final Node victim = probation.tail != null ? probation.tail : protectedQueue.tail;
+            if (victim == null) {
+                break;
+            }
+            if (sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                evict(candidate);
+                return;
+            }
+            evict(victim);
+        }
+        probation.addFirst(candidate);
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            loadedClasses.clear();
+            cacheCleared();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                readBuffer.set(i, null);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            final Node node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void evict(final Node node) {
+        if (node.queue != null) {
+            node.queue.remove(node);
+        }
+        if (loadedClasses.remove(node.key, node)) {
+            classEvicted(node.value);
+        }
+    }
+
+    @Override
+    public JavaClass findClass(final String className) {
+        final Node node = loadedClasses.get(className);
+        if (node == null) {
+            return null;
+        }
+        final long count = readCount.getAndIncrement();
+        readBuffer.lazySet((int) (count % READ_BUFFER_SIZE), node);
+        if (count % DRAIN_THRESHOLD == DRAIN_THRESHOLD - 1 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Gets the maximum estimated size of the cached classes.
+     *
+     * @return the maximum weight, in bytes.
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Gets the estimated size of the cached classes.
+     *
+     * @return the weight, in bytes.
+     */
+    public long getWeight() {
+        evictionLock.lock();
+        try {
+            return window.weight + probation.weight + protectedQueue.weight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void onAccess(final Node node) {
+        if (node.queue == null) {
+            // Evicted or removed since the access
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == probation) {
+            probation.remove(node);
+            protectedQueue.addFirst(node);
+            while (protectedQueue.weight > maximumProtectedWeight) {
+                final Node demoted = protectedQueue.tail;
+                protectedQueue.remove(demoted);
+                probation.addFirst(demoted);
+            }
+        } else {
+            final AccessQueue queue = node.queue;
+            queue.remove(node);
+            queue.addFirst(node);
+        }
+    }
+
+    @Override
+    public void removeClass(final JavaClass javaClass) {
+        evictionLock.lock();
+        try {
+            final Node node = loadedClasses.remove(javaClass.getClassName());
+            if (node != null) {
+                if (node.queue != null) {
+                    node.queue.remove(node);
+                }
+                classRemoved(node.value);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void storeClass(final JavaClass javaClass) {
+        javaClass.setRepository(this);
+        final int weight = estimateSize(javaClass);
+        if (weight > maximumWeight) {
+            removeClass(javaClass);
+            return;
+        }
+        final Node node = new Node(javaClass.getClassName(), javaClass, weight);
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            final Node old = loadedClasses.put(node.key, node);
+            if (old != null) {
+                if (old.queue != null) {
+                    old.queue.remove(old);
+                }
+                classStored(old.value, javaClass);
+            }
+            sketch.ensureCapacity(loadedClasses.size());
+            sketch.increment(node.key);
+            window.addFirst(node);
+            while (window.weight > maximumWindowWeight) {
+                final Node candidate = window.tail;
+                window.remove(candidate);
+                admit(candidate);
+            }
+            // Only a class larger than the main area can still exceed the maximum
+            while (window.weight + probation.weight + protectedQueue.weight > maximumWeight) {
+                final Node victim = probation.tail != null ? probation.tail : protectedQueue.tail != null ? protectedQueue.tail : window.tail;
+                evict(victim);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+}
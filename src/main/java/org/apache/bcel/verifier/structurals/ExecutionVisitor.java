@@ -159,7 +159,7 @@ public class ExecutionVisitor extends EmptyVisitor {
     @Override
     public void visitANEWARRAY(final ANEWARRAY o) {
         stack().pop(); // count
-        stack().push(new ArrayType(o.getType(cpg), 1));
+        stack().push(ArrayType.getInstance(o.getType(cpg), 1));
     }
 
     /** Symbolically executes the corresponding Java Virtual Machine instruction. */
@@ -20,6 +20,9 @@
 package org.apache.bcel.generic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -53,6 +56,20 @@ public class ArrayTypeTest {
         assertEquals(type, objectType.getElementType());
     }
 
+    @Test
+    public void testGetInstanceIsCanonical() {
+        final ArrayType arrayType = ArrayType.getInstance(Type.STRING, 2);
+        assertSame(arrayType, ArrayType.getInstance(ArrayType.getInstance(Type.STRING, 1), 1));
+        assertSame(arrayType, Type.getType("[[Ljava/lang/String;"));
+        assertSame(arrayType.getElementType(), ArrayType.getInstance(Type.STRING, 1));
+        final ArrayType copy = new ArrayType(Type.STRING, 2);
+        assertNotSame(arrayType, copy);
+        assertEquals(arrayType, copy);
+        assertEquals(arrayType.hashCode(), copy.hashCode());
+        assertThrows(ClassGenException.class, () -> ArrayType.getInstance(Type.VOID, 1));
+        assertThrows(ClassGenException.class, () -> ArrayType.getInstance(Type.INT, 0));
+    }
+
     @Test
     public void testGetSignatureDim1() {
         final ArrayType objectType = new ArrayType(Type.BYTE, 1);
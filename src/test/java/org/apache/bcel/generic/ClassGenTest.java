@@ -19,9 +19,25 @@
 
 package org.apache.bcel.generic;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.ConstantMethodType;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.Unknown;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -37,4 +53,182 @@ public class ClassGenTest {
         assertFalse(ClassGen.getComparator().equals(obj, null));
         assertFalse(ClassGen.getComparator().equals(null, obj));
     }
+
+    private static Method method(final ClassGen cg, final String name, final Type returnType, final Type... argTypes) {
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.RETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC, returnType, argTypes, null, name, cg.getClassName(), il, cg.getConstantPool());
+        mg.setMaxStack();
+        return mg.getMethod();
+    }
+
+    @Test
+    public void testCompactConstantPool() throws Exception {
+        final ClassGen cg = new ClassGen("Test", "java.lang.Object", "Test.java", Const.ACC_PUBLIC, null);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        cp.addString("dead");
+        cp.addMethodref("Dead", "run", "()V");
+        cp.addLong(42);
+        final InstructionFactory factory = new InstructionFactory(cg);
+        final InstructionList il = new InstructionList();
+        il.append(factory.createConstant(Long.valueOf(7)));
+        il.append(InstructionConst.POP2);
+        il.append(factory.createConstant("live"));
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.STRING, Type.NO_ARGS, null, "get", "Test", il, cp);
+        mg.setMaxStack();
+        cg.addMethod(mg.getMethod());
+        cg.addAnnotationEntry(new AnnotationEntryGen(ObjectType.getInstance("Marker"), Collections.emptyList(), true, cp));
+        assertFalse(cg.isCompactConstantPool());
+        final JavaClass plain = cg.getJavaClass();
+
+        cg.setCompactConstantPool(true);
+        final JavaClass compact = new ClassParser(new ByteArrayInputStream(cg.getJavaClass().getBytes()), "Test.class").parse();
+        assertTrue(compact.getConstantPool().getLength() < plain.getConstantPool().getLength());
+        assertEquals(plain.getConstantPool().getLength(), cp.getSize());
+        final ConstantPoolGen compactCp = new ConstantPoolGen(compact.getConstantPool());
+        assertEquals(-1, compactCp.lookupString("dead"));
+        assertEquals(-1, compactCp.lookupMethodref("Dead", "run", "()V"));
+        assertEquals(-1, compactCp.lookupLong(42));
+        assertEquals("Test", compact.getClassName());
+        assertEquals("LMarker;", compact.getAnnotationEntries()[0].getAnnotationType());
+        final Instruction[] instructions = new MethodGen(compact.getMethods()[0], "Test", compactCp).getInstructionList().getInstructions();
+        assertEquals(Long.valueOf(7), ((LDC2_W) instructions[0]).getValue(compactCp));
+        assertEquals("live", ((LDC) instructions[2]).getValue(compactCp));
+
+        // An attribute BCEL knows nothing about may refer to any constant
+        cg.addAttribute(new Unknown(cp.addUtf8("Custom"), 2, new byte[] {0, 1}, cp.getConstantPool()));
+        assertEquals(cp.getSize(), cg.getJavaClass().getConstantPool().getLength());
+    }
+
+    @Test
+    public void testFieldIndex() {
+        final ClassGen cg = new ClassGen("Test", "java.lang.Object", "Test.java", Const.ACC_PUBLIC, null);
+        final Field a = new FieldGen(Const.ACC_PUBLIC, Type.INT, "a", cg.getConstantPool()).getField();
+        final Field b = new FieldGen(Const.ACC_PUBLIC, Type.STRING, "b", cg.getConstantPool()).getField();
+        final Field c = new FieldGen(Const.ACC_PUBLIC, Type.LONG, "c", cg.getConstantPool()).getField();
+        cg.addField(a);
+        assertSame(a, cg.containsField("a"));
+        cg.addField(b);
+        assertSame(b, cg.containsField("b"));
+        assertTrue(cg.containsField(b));
+        cg.replaceField(a, c);
+        assertNull(cg.containsField("a"));
+        assertSame(c, cg.containsField("c"));
+        cg.removeField(c);
+        assertFalse(cg.containsField(c));
+        assertArrayEquals(new Field[] {b}, cg.getFields());
+        // A field renamed in place is found by its new name only
+        b.setNameIndex(cg.getConstantPool().addUtf8("d"));
+        assertNull(cg.containsField("b"));
+        assertSame(b, cg.containsField("d"));
+        assertTrue(cg.containsField(b));
+    }
+
+    @Test
+    public void testGetMethodByReflection() throws Exception {
+        final JavaClass clazz = Repository.lookupClass(ClassGenTest.class);
+        final java.lang.reflect.Method m = ClassGenTest.class.getMethod("testFieldIndex");
+        assertEquals("testBCELComparator", clazz.getMethod(ClassGenTest.class.getMethod("testBCELComparator")).getName());
+        assertEquals("testFieldIndex", clazz.getMethod(m).getName());
+        assertNull(clazz.getMethod(Object.class.getMethod("hashCode")));
+        clazz.setMethods(new Method[] {clazz.getMethod(m)});
+        assertNull(clazz.getMethod(ClassGenTest.class.getMethod("testBCELComparator")));
+        assertSame(clazz.getMethods()[0], clazz.getMethod(m));
+    }
+
+    @Test
+    public void testMethodIndex() {
+        final ClassGen cg = new ClassGen("Test", "java.lang.Object", "Test.java", Const.ACC_PUBLIC, null);
+        final Method foo = method(cg, "foo", Type.VOID);
+        final Method fooInt = method(cg, "foo", Type.VOID, Type.INT);
+        final Method bar = method(cg, "bar", Type.VOID);
+        cg.addMethod(foo);
+        assertSame(foo, cg.containsMethod("foo", "()V"));
+        cg.addMethod(fooInt);
+        assertSame(fooInt, cg.containsMethod("foo", "(I)V"));
+        assertNull(cg.containsMethod("bar", "()V"));
+        cg.replaceMethod(foo, bar);
+        assertNull(cg.containsMethod("foo", "()V"));
+        assertSame(bar, cg.containsMethod("bar", "()V"));
+        assertSame(bar, cg.getMethodAt(0));
+        final Method fooInt2 = method(cg, "foo", Type.VOID, Type.INT);
+        cg.replaceMethod(fooInt, fooInt2);
+        assertSame(fooInt2, cg.containsMethod("foo", "(I)V"));
+        cg.removeMethod(bar);
+        assertNull(cg.containsMethod("bar", "()V"));
+        assertSame(fooInt2, cg.containsMethod("foo", "(I)V"));
+        cg.replaceMethod(bar, foo);
+        assertArrayEquals(new Method[] {fooInt2, foo}, cg.getMethods());
+        cg.setMethodAt(bar, 1);
+        assertNull(cg.containsMethod("foo", "()V"));
+        assertSame(bar, cg.containsMethod("bar", "()V"));
+        cg.setMethods(new Method[] {foo});
+        assertNull(cg.containsMethod("bar", "()V"));
+        assertSame(foo, cg.containsMethod("foo", "()V"));
+        // A method renamed in place is found by its new name and signature only
+        foo.setNameIndex(cg.getConstantPool().addUtf8("baz"));
+        assertNull(cg.containsMethod("foo", "()V"));
+        assertSame(foo, cg.containsMethod("baz", "()V"));
+        foo.setSignatureIndex(cg.getConstantPool().addUtf8("(J)V"));
+        assertNull(cg.containsMethod("baz", "()V"));
+        assertSame(foo, cg.containsMethod("baz", "(J)V"));
+    }
+
+    @Test
+    public void testTransformMethods() {
+        final ClassGen[] classes = new ClassGen[2];
+        for (int c = 0; c < classes.length; c++) {
+            final ClassGen cg = new ClassGen("Test", "java.lang.Object", "Test.java", Const.ACC_PUBLIC, null);
+            for (int i = 0; i < 300; i++) {
+                cg.addMethod(method(cg, "m" + i, Type.VOID));
+            }
+            cg.transformMethods(mg -> {
+                final InstructionFactory factory = new InstructionFactory(mg.getConstantPool());
+                final InstructionList il = mg.getInstructionList();
+                il.insert(InstructionConst.POP);
+                il.insert(factory.createInvoke("java.lang.String", "length", Type.INT, Type.NO_ARGS, Const.INVOKEVIRTUAL));
+                il.insert(factory.createConstant("value of " + mg.getName()));
+                mg.setMaxStack();
+            });
+            classes[c] = cg;
+        }
+        final ClassGen cg = classes[0];
+        final ConstantPoolGen cp = cg.getConstantPool();
+        for (final Method m : cg.getMethods()) {
+            final Instruction[] instructions = new MethodGen(m, cg.getClassName(), cp).getInstructionList().getInstructions();
+            assertEquals(4, instructions.length);
+            assertEquals("value of " + m.getName(), ((LDC) instructions[0]).getValue(cp));
+            assertEquals("length", ((INVOKEVIRTUAL) instructions[1]).getMethodName(cp));
+            assertEquals(Const.RETURN, instructions[3].getOpcode());
+        }
+        assertEquals(Const.LDC_W, new MethodGen(cg.getMethodAt(299), cg.getClassName(), cp).getInstructionList().getStart().getInstruction().getOpcode());
+        assertArrayEquals(cg.getJavaClass().getBytes(), classes[1].getJavaClass().getBytes());
+
+        final Method[] methods = cg.getMethods();
+        final int size = cp.getSize();
+        assertThrows(IllegalStateException.class, () -> cg.transformMethods(mg -> {
+            mg.getConstantPool().addUtf8("unused");
+            if (mg.getName().equals("m100")) {
+                throw new IllegalStateException();
+            }
+        }));
+        assertArrayEquals(methods, cg.getMethods());
+        assertEquals(size, cp.getSize());
+
+        // The constants of earlier methods are merged before the one of m200 fails to merge
+        assertThrows(IllegalArgumentException.class, () -> cg.transformMethods(mg -> {
+            final ConstantPoolGen scratch = mg.getConstantPool();
+            final int index = scratch.addInteger(mg.getName().hashCode());
+            if (mg.getName().equals("m200")) {
+                scratch.setConstant(index, new ConstantMethodType(scratch.addUtf8("()V")));
+            }
+            mg.getInstructionList().insert(InstructionConst.POP);
+            mg.getInstructionList().insert(new LDC(index));
+            mg.setMaxStack();
+        }));
+        assertArrayEquals(methods, cg.getMethods());
+        assertEquals(size, cp.getSize());
+        assertEquals(-1, cp.lookupInteger("m0".hashCode()));
+    }
 }
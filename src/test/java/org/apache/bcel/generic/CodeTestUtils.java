@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Helpers for tests of generated code.
+ */
+final class CodeTestUtils {
+
+    /**
+     * Defines a single class from its bytes.
+     */
+    private static final class TestClassLoader extends ClassLoader {
+
+        private final String name;
+        private final byte[] bytes;
+
+        TestClassLoader(final String name, final byte[] bytes) {
+            super(CodeTestUtils.class.getClassLoader());
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected Class<?> loadClass(final String className, final boolean resolve) throws ClassNotFoundException {
+            if (className.equals(name)) {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+            return super.loadClass(className, resolve);
+        }
+    }
+
+    /**
+     * Loads and initializes a generated class. Initializing links the class, i.e. the verifier checks its code and stack
+     * map frames.
+     *
+     * @param jc the class
+     * @return the loaded class
+     * @throws ClassNotFoundException if the class cannot be loaded
+     */
+    static Class<?> load(final JavaClass jc) throws ClassNotFoundException {
+        return Class.forName(jc.getClassName(), true, new TestClassLoader(jc.getClassName(), jc.getBytes()));
+    }
+
+    /**
+     * Gets the opcodes of the instructions in a list.
+     *
+     * @param il the instructions
+     * @return their opcodes, in order
+     */
+    static short[] opcodes(final InstructionList il) {
+        final Instruction[] instructions = il.getInstructions();
+        final short[] opcodes = new short[instructions.length];
+        for (int i = 0; i < opcodes.length; i++) {
+            opcodes[i] = instructions[i].getOpcode();
+        }
+        return opcodes;
+    }
+
+    private CodeTestUtils() {
+        // no instances
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentConstantPoolGenTestCase {
+
+    private static final int THREADS = 8;
+
+    /**
+     * Adds constants from several threads, each in its own order, and returns the index each task got per constant.
+     */
+    private static List<int[]> addConcurrently(final ConstantPoolGen cp, final long seed) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final Random random = new Random(seed + t);
+                futures.add(executor.submit(() -> {
+                    final List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, random);
+                    final int[] indexes = new int[500 * 4];
+                    for (final int i : order) {
+                        indexes[i * 4] = cp.addMethodref("pkg.Class" + i % 7, "method" + i, "()V");
+                        indexes[i * 4 + 1] = cp.addString("string " + i);
+                        indexes[i * 4 + 2] = cp.addLong(i);
+                        indexes[i * 4 + 3] = cp.addInteger(i);
+                    }
+                    return indexes;
+                }));
+            }
+            final List<int[]> results = new ArrayList<>();
+            for (final Future<int[]> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String[] describe(final ConstantPool pool) {
+        final Constant[] constants = pool.getConstantPool();
+        final String[] descriptions = new String[constants.length];
+        for (int i = 1; i < constants.length; i++) {
+            descriptions[i] = constants[i] == null ? null : constants[i].getTag() + " " + constants[i];
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final ConcurrentConstantPoolGen cp = new ConcurrentConstantPoolGen();
+        final List<int[]> results = addConcurrently(cp, 1);
+        for (final int[] indexes : results) {
+            assertArrayEquals(results.get(0), indexes);
+        }
+        final int[] indexes = results.get(0);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(indexes[i * 4], cp.lookupMethodref("pkg.Class" + i % 7, "method" + i, "()V"));
+            assertEquals(indexes[i * 4 + 1], cp.lookupString("string " + i));
+            assertEquals(indexes[i * 4 + 2], cp.lookupLong(i));
+            assertEquals(indexes[i * 4 + 3], cp.lookupInteger(i));
+        }
+        // 7 classes with their names, 500 methodrefs with their names and types, one shared "()V", 500 strings with their UTF-8, 500 longs taking two
+        // slots and 500 ints
+        assertEquals(1 + 14 + 500 * 3 + 1 + 500 * 2 + 500 * 2 + 500, cp.getSize());
+    }
+
+    @Test
+    public void testRenumber() throws Exception {
+        final ConcurrentConstantPoolGen cp1 = new ConcurrentConstantPoolGen();
+        final ConcurrentConstantPoolGen cp2 = new ConcurrentConstantPoolGen();
+        final int from = cp1.addUtf8("existing");
+        assertEquals(from, cp2.addUtf8("existing"));
+        final int[] indexes1 = addConcurrently(cp1, 1).get(0);
+        final int[] indexes2 = addConcurrently(cp2, 2).get(0);
+        final int[] map1 = cp1.renumber(from + 1);
+        final int[] map2 = cp2.renumber(from + 1);
+        assertArrayEquals(describe(cp1.getFinalConstantPool()), describe(cp2.getFinalConstantPool()));
+        for (int i = 0; i < indexes1.length; i++) {
+            assertEquals(map1[indexes1[i]], map2[indexes2[i]]);
+        }
+        assertEquals(from, map1[from]);
+        assertEquals("existing", ((ConstantUtf8) cp1.getConstant(from)).getBytes());
+        // The tables follow the new order
+        assertEquals(map1[indexes1[0]], cp1.lookupMethodref("pkg.Class0", "method0", "()V"));
+        assertEquals(map1[indexes1[0]], cp1.addMethodref("pkg.Class0", "method0", "()V"));
+        assertEquals(cp2.getSize(), cp1.getSize());
+        assertThrows(IllegalArgumentException.class, () -> cp1.renumber(0));
+    }
+
+    @Test
+    public void testRenumberInstructions() {
+        final ConcurrentConstantPoolGen cp = new ConcurrentConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        final InstructionFactory factory = new InstructionFactory(cp);
+        il.append(factory.createConstant("zzz"));
+        il.append(factory.createConstant("aaa"));
+        il.append(factory.createInvoke("java.lang.String", "concat", Type.STRING, new Type[] {Type.STRING}, Const.INVOKEVIRTUAL));
+        il.append(InstructionConst.ARETURN);
+        ConcurrentConstantPoolGen.renumber(il, cp.renumber(1));
+        final Instruction[] instructions = il.getInstructions();
+        assertEquals("zzz", ((LDC) instructions[0]).getValue(cp));
+        assertEquals("aaa", ((LDC) instructions[1]).getValue(cp));
+        assertEquals("concat", ((INVOKEVIRTUAL) instructions[2]).getMethodName(cp));
+    }
+}
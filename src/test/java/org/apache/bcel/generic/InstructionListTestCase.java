@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class InstructionListTestCase {
+
+    @Test
+    public void testRedirectBranches() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle oldTarget = il.append(InstructionConst.NOP);
+        final InstructionHandle newTarget = il.append(InstructionConst.NOP);
+        final GOTO jump = new GOTO(oldTarget);
+        il.append(jump);
+        final TABLESWITCH tableSwitch = new TABLESWITCH(new int[] {0, 1}, new InstructionHandle[] {oldTarget, newTarget}, oldTarget);
+        il.append(tableSwitch);
+        final GOTO other = new GOTO(newTarget);
+        il.append(other);
+
+        il.redirectBranches(oldTarget, newTarget);
+
+        assertSame(newTarget, jump.getTarget());
+        assertSame(newTarget, tableSwitch.getTarget());
+        assertArrayEquals(new InstructionHandle[] {newTarget, newTarget}, tableSwitch.getTargets());
+        assertSame(newTarget, other.getTarget());
+        assertFalse(oldTarget.hasTargeters());
+        assertTrue(newTarget.hasTargeters());
+    }
+
+    @Test
+    public void testRedirectBranchesWithoutTarget() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle newTarget = il.append(InstructionConst.NOP);
+        final GOTO jump = new GOTO(null);
+        il.append(jump);
+
+        il.redirectBranches(null, newTarget);
+
+        assertSame(newTarget, jump.getTarget());
+    }
+
+    @Test
+    public void testRedirectExceptionHandlers() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(InstructionConst.NOP);
+        final InstructionHandle end = il.append(InstructionConst.NOP);
+        final InstructionHandle handler = il.append(InstructionConst.ATHROW);
+        final InstructionHandle newHandler = il.append(InstructionConst.ATHROW);
+        final CodeExceptionGen listed = new CodeExceptionGen(start, end, handler, null);
+        final CodeExceptionGen unlisted = new CodeExceptionGen(start, end, handler, null);
+
+        il.redirectExceptionHandlers(new CodeExceptionGen[] {listed}, handler, newHandler);
+
+        assertSame(newHandler, listed.getHandlerPC());
+        assertSame(handler, unlisted.getHandlerPC());
+        assertTrue(handler.hasTargeters());
+
+        il.redirectExceptionHandlers(new CodeExceptionGen[] {unlisted}, end, newHandler);
+        assertSame(end, listed.getEndPC());
+        assertSame(newHandler, unlisted.getEndPC());
+    }
+
+    @Test
+    public void testRedirectLocalVariables() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(InstructionConst.NOP);
+        final InstructionHandle end = il.append(InstructionConst.NOP);
+        final InstructionHandle newEnd = il.append(InstructionConst.RETURN);
+        final LocalVariableGen lv = new LocalVariableGen(0, "a", Type.INT, start, end);
+        final LocalVariableGen open = new LocalVariableGen(1, "b", Type.INT, start, null);
+
+        il.redirectLocalVariables(new LocalVariableGen[] {lv, open}, end, newEnd);
+        assertSame(start, lv.getStart());
+        assertSame(newEnd, lv.getEnd());
+        assertFalse(end.hasTargeters());
+
+        // Untargeted handles are a no-op, null ones are found by scanning
+        il.redirectLocalVariables(new LocalVariableGen[] {lv, open}, end, start);
+        assertSame(newEnd, lv.getEnd());
+        il.redirectLocalVariables(new LocalVariableGen[] {lv, open}, null, newEnd);
+        assertSame(newEnd, open.getEnd());
+    }
+}
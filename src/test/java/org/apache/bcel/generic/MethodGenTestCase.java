@@ -100,6 +100,27 @@ public class MethodGenTestCase {
         assertThrows(IllegalStateException.class, () -> testInvalidNullMethodBody("javax.mail.internet.MailDateFormat"));
     }
 
+    @Test
+    public void testSetMaxStackAndLocals() throws Exception {
+        for (final Class<?> cls : new Class<?>[] {InstructionList.class, MethodGen.class, Type.class}) {
+            final JavaClass jc = Repository.lookupClass(cls);
+            final ConstantPoolGen cp = new ConstantPoolGen(jc.getConstantPool());
+            for (final Method method : jc.getMethods()) {
+                if (method.getCode() == null) {
+                    continue;
+                }
+                final MethodGen mg = new MethodGen(method, jc.getClassName(), cp);
+                mg.setMaxStackAndLocals();
+                assertEquals(method.getCode().getMaxStack(), mg.getMaxStack(), () -> "max stack of " + method);
+                assertEquals(method.getCode().getMaxLocals(), mg.getMaxLocals(), () -> "max locals of " + method);
+                mg.setMaxStack();
+                mg.setMaxLocals();
+                assertEquals(method.getCode().getMaxStack(), mg.getMaxStack(), () -> "max stack of " + method);
+                assertEquals(method.getCode().getMaxLocals(), mg.getMaxLocals(), () -> "max locals of " + method);
+            }
+        }
+    }
+
     @Test
     public void testRemoveLocalVariable() throws Exception {
         final MethodGen mg = getMethod(Foo.class, "bar");
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.MethodRewriter.TargetPolicy;
+import org.junit.jupiter.api.Test;
+
+public class MethodRewriterTestCase {
+
+    private static MethodGen newMethodGen(final InstructionList il) {
+        return new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "test", "Test", il, new ConstantPoolGen());
+    }
+
+    @Test
+    public void testDeleteMovesTargets() {
+        final InstructionList il = new InstructionList();
+        final BranchHandle branch = il.append(new IFEQ(null));
+        final InstructionHandle nop1 = il.append(InstructionConst.NOP);
+        final InstructionHandle nop2 = il.append(InstructionConst.NOP);
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        branch.setTarget(nop2);
+        il.insert(new ILOAD(0));
+        final MethodGen mg = newMethodGen(il);
+        final LineNumberGen line1 = mg.addLineNumber(nop1, 1);
+        mg.addLineNumber(nop2, 2);
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        rewriter.delete(nop1, nop2);
+        assertEquals(5, il.getLength());
+        rewriter.commit();
+        assertArrayEquals(new short[] {Const.ILOAD_0, Const.IFEQ, Const.RETURN}, CodeTestUtils.opcodes(il));
+        assertSame(ret, branch.getTarget());
+        // The first line number moves, the second one is dropped
+        assertSame(ret, line1.getInstruction());
+        assertArrayEquals(new LineNumberGen[] {line1}, mg.getLineNumbers());
+        assertEquals(4, ret.getPosition());
+    }
+
+    @Test
+    public void testDeleteWithPreviousPolicy() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle first = il.append(InstructionConst.NOP);
+        final InstructionHandle nop = il.append(InstructionConst.NOP);
+        final BranchHandle branch = il.append(new GOTO(nop));
+        il.append(InstructionConst.RETURN);
+        final MethodRewriter rewriter = new MethodRewriter(newMethodGen(il), TargetPolicy.PREVIOUS);
+        rewriter.delete(nop);
+        rewriter.commit();
+        assertSame(first, branch.getTarget());
+    }
+
+    @Test
+    public void testExceptionHandlersAndLocalVariables() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(InstructionConst.NOP);
+        final InstructionHandle middle = il.append(InstructionConst.NOP);
+        final InstructionHandle end = il.append(InstructionConst.NOP);
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        final InstructionHandle handler = il.append(InstructionConst.ATHROW);
+        final MethodGen mg = newMethodGen(il);
+        final CodeExceptionGen shrunk = mg.addExceptionHandler(start, end, handler, Type.THROWABLE);
+        final CodeExceptionGen removed = mg.addExceptionHandler(end, end, handler, Type.THROWABLE);
+        final LocalVariableGen variable = mg.addLocalVariable("v", Type.INT, 0, start, middle);
+        final LocalVariableGen gone = mg.addLocalVariable("w", Type.INT, 1, end, end);
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        rewriter.delete(start);
+        rewriter.delete(end);
+        rewriter.commit();
+        assertArrayEquals(new CodeExceptionGen[] {shrunk}, mg.getExceptionHandlers());
+        assertSame(middle, shrunk.getStartPC());
+        assertSame(middle, shrunk.getEndPC());
+        assertSame(handler, shrunk.getHandlerPC());
+        assertEquals(null, removed.getStartPC());
+        assertArrayEquals(new LocalVariableGen[] {variable}, mg.getLocalVariables());
+        assertSame(middle, variable.getStart());
+        assertSame(middle, variable.getEnd());
+        assertEquals(null, gone.getStart());
+        assertSame(ret, middle.getNext());
+    }
+
+    @Test
+    public void testReplaceKeepsRanges() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(InstructionConst.ICONST_1);
+        final InstructionHandle end = il.append(InstructionConst.POP);
+        il.append(InstructionConst.RETURN);
+        final InstructionHandle handler = il.append(InstructionConst.ATHROW);
+        final MethodGen mg = newMethodGen(il);
+        final CodeExceptionGen range = mg.addExceptionHandler(start, end, handler, Type.THROWABLE);
+        final LocalVariableGen variable = mg.addLocalVariable("v", Type.INT, 0, start, end);
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        final InstructionHandle first = rewriter.replace(start, InstructionConst.ICONST_0);
+        final InstructionList replacement = new InstructionList();
+        replacement.append(InstructionConst.NOP);
+        final InstructionHandle last = replacement.append(InstructionConst.POP);
+        rewriter.replace(end, replacement);
+        rewriter.commit();
+        assertArrayEquals(new short[] {Const.ICONST_0, Const.NOP, Const.POP, Const.RETURN, Const.ATHROW}, CodeTestUtils.opcodes(il));
+        assertSame(first, range.getStartPC());
+        assertSame(last, range.getEndPC());
+        assertSame(first, variable.getStart());
+        assertSame(last, variable.getEnd());
+    }
+
+    @Test
+    public void testInsertAndReplace() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle load = il.append(new ILOAD(0));
+        final InstructionHandle pop = il.append(InstructionConst.POP);
+        il.append(InstructionConst.RETURN);
+        final BranchHandle branch = il.insert(new GOTO(pop));
+        final MethodGen mg = newMethodGen(il);
+        final MethodRewriter rewriter = new MethodRewriter(mg);
+        final InstructionHandle dup = rewriter.replace(pop, InstructionConst.DUP);
+        rewriter.insertAfter(dup, InstructionConst.POP2);
+        rewriter.insertBefore(load, InstructionConst.NOP);
+        rewriter.insertBefore(load, InstructionConst.ICONST_0);
+        rewriter.insertAfter(load, InstructionConst.ICONST_1);
+        rewriter.commit();
+        assertArrayEquals(new short[] {Const.GOTO, Const.NOP, Const.ICONST_0, Const.ILOAD_0, Const.ICONST_1, Const.DUP, Const.POP2, Const.RETURN}, CodeTestUtils.opcodes(il));
+        assertSame(dup, branch.getTarget());
+        // A session can be reused
+        rewriter.replace(branch, new GOTO(dup));
+        rewriter.commit();
+        assertEquals(Const.GOTO, il.getStart().getInstruction().getOpcode());
+        assertSame(dup, ((GOTO) il.getStart().getInstruction()).getTarget());
+        assertEquals(8, il.getLength());
+    }
+
+    @Test
+    public void testNoSuccessor() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        il.insert(new GOTO(ret));
+        final MethodRewriter rewriter = new MethodRewriter(newMethodGen(il));
+        rewriter.delete(ret);
+        assertThrows(ClassGenException.class, rewriter::commit);
+    }
+
+    @Test
+    public void testDeletedBranchesReleaseTargets() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        final InstructionHandle dead = il.append(InstructionConst.NOP);
+        il.append(new GOTO(dead));
+        il.append(new GOTO(ret));
+        final MethodRewriter rewriter = new MethodRewriter(newMethodGen(il));
+        rewriter.delete(dead, il.getEnd());
+        assertThrows(ClassGenException.class, () -> rewriter.delete(il.getEnd(), dead));
+        rewriter.commit();
+        assertArrayEquals(new short[] {Const.RETURN}, CodeTestUtils.opcodes(il));
+        assertEquals(0, ret.getTargeters().length);
+    }
+}
@@ -20,6 +20,8 @@
 package org.apache.bcel.generic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.math.BigDecimal;
 
@@ -34,4 +36,17 @@ public class ObjectTypeTest {
         assertEquals(className, objectType.getClassName());
     }
 
+    @Test
+    public void testGetInstanceIsCanonical() {
+        final ObjectType objectType = ObjectType.getInstance("java.math.BigDecimal");
+        assertSame(objectType, ObjectType.getInstance("java/math/BigDecimal"));
+        assertSame(objectType, Type.getType("Ljava/math/BigDecimal;"));
+        assertSame(Type.OBJECT, ObjectType.getInstance(Object.class.getName()));
+        assertSame(Type.STRING, Type.getType(String.class));
+        final ObjectType copy = new ObjectType("java.math.BigDecimal");
+        assertNotSame(objectType, copy);
+        assertEquals(objectType, copy);
+        assertEquals(objectType.hashCode(), copy.hashCode());
+    }
+
 }
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.PeepholeOptimizer.Pass;
+import org.junit.jupiter.api.Test;
+
+public class PeepholeOptimizerTestCase {
+
+    private static final String CLASS_NAME = "org.apache.bcel.generic.PeepholeOptimizerTestCase$Generated";
+
+    private static ClassGen newClassGen() {
+        final ClassGen cg = new ClassGen(CLASS_NAME, "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        cg.setMinor(Const.MINOR_1_8);
+        return cg;
+    }
+
+    private static MethodGen newMethodGen(final Type returnType, final Type[] argTypes, final InstructionList il, final ConstantPoolGen cp) {
+        return new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, returnType, argTypes, null, "test", CLASS_NAME, il, cp);
+    }
+
+    @Test
+    public void testFoldConstants() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        // (long) (2 + 40) * 10L
+        il.append(InstructionConst.ICONST_2);
+        il.append(new BIPUSH((byte) 40));
+        il.append(InstructionConst.IADD);
+        il.append(InstructionConst.I2L);
+        il.append(new LDC2_W(cp.addLong(10)));
+        il.append(InstructionConst.LMUL);
+        il.append(InstructionConst.LRETURN);
+        final MethodGen mg = newMethodGen(Type.LONG, Type.NO_ARGS, il, cp);
+        assertTrue(new PeepholeOptimizer(cp, Pass.FOLD_CONSTANTS).optimize(mg));
+        assertArrayEquals(new short[] {Const.LDC2_W, Const.LRETURN}, CodeTestUtils.opcodes(il));
+        assertEquals(420L, ((LDC2_W) il.getStart().getInstruction()).getValue(cp));
+    }
+
+    @Test
+    public void testGotoCycle() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        // if (i == 0) for (;;) ; return 0; with the loop made of two GOTOs jumping to each other
+        il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.ICONST_0);
+        il.append(InstructionConst.IRETURN);
+        final BranchHandle goto1 = il.append(new GOTO(null));
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IRETURN);
+        final BranchHandle goto2 = il.append(new GOTO(goto1));
+        goto1.setTarget(goto2);
+        ifeq.setTarget(goto1);
+        final MethodGen mg = newMethodGen(Type.INT, new Type[] {Type.INT}, il, cp);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new PeepholeOptimizer(cp, Pass.THREAD_JUMPS).optimize(mg));
+        assertSame(goto1, ifeq.getTarget());
+        assertSame(goto2, goto1.getTarget());
+        assertSame(goto1, goto2.getTarget());
+    }
+
+    @Test
+    public void testKeepDivisionByZero() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.ICONST_0);
+        il.append(InstructionConst.IDIV);
+        il.append(InstructionConst.IRETURN);
+        final MethodGen mg = newMethodGen(Type.INT, Type.NO_ARGS, il, cp);
+        assertFalse(new PeepholeOptimizer(cp).optimize(mg));
+        assertEquals(4, il.getLength());
+    }
+
+    @Test
+    public void testKeepNegativeZero() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        il.append(new LDC(cp.addFloat(-0f)));
+        il.append(InstructionConst.POP);
+        il.append(new LDC(cp.addFloat(1f)));
+        il.append(InstructionConst.POP);
+        il.append(new LDC2_W(cp.addDouble(-0d)));
+        il.append(InstructionConst.DRETURN);
+        final MethodGen mg = newMethodGen(Type.DOUBLE, Type.NO_ARGS, il, cp);
+        assertTrue(new PeepholeOptimizer(cp, Pass.SHORT_FORMS).optimize(mg));
+        assertArrayEquals(new short[] {Const.LDC, Const.POP, Const.FCONST_1, Const.POP, Const.LDC2_W, Const.DRETURN}, CodeTestUtils.opcodes(il));
+        assertEquals(-0f, ((LDC) il.getStart().getInstruction()).getValue(cp));
+        assertEquals(-0d, ((LDC2_W) il.getEnd().getPrev().getInstruction()).getValue(cp));
+    }
+
+    @Test
+    public void testOptimizedClassesVerify() throws Exception {
+        for (final Class<?> cls : new Class<?>[] {InstructionList.class, PeepholeOptimizer.class}) {
+            final JavaClass jc = Repository.lookupClass(cls);
+            final ClassGen cg = new ClassGen(jc);
+            final ConstantPoolGen cp = cg.getConstantPool();
+            final PeepholeOptimizer optimizer = new PeepholeOptimizer(cp);
+            for (final Method method : cg.getMethods()) {
+                if (method.getCode() == null) {
+                    continue;
+                }
+                final MethodGen mg = new MethodGen(method, cg.getClassName(), cp);
+                final int length = mg.getInstructionList().getByteCode().length;
+                optimizer.optimize(mg);
+                assertTrue(mg.getInstructionList().getByteCode().length <= length, method::toString);
+                mg.setMaxStackAndLocals();
+                mg.computeStackMap(true);
+                cg.replaceMethod(method, mg.getMethod());
+            }
+            assertEquals(cls.getName(), CodeTestUtils.load(cg.getJavaClass()).getName());
+        }
+    }
+
+    @Test
+    public void testRemoveDeadCode() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.ICONST_1);
+        final InstructionHandle ret = il.append(InstructionConst.IRETURN);
+        final InstructionHandle dead = il.append(InstructionConst.ICONST_2);
+        il.append(InstructionConst.IRETURN);
+        final InstructionHandle handler = il.append(InstructionConst.ICONST_3);
+        il.append(InstructionConst.IRETURN);
+        final MethodGen mg = newMethodGen(Type.INT, Type.NO_ARGS, il, cp);
+        mg.addLineNumber(dead, 42);
+        mg.addLocalVariable("dead", Type.INT, dead, dead);
+        mg.addExceptionHandler(dead, dead, handler, null);
+        assertTrue(new PeepholeOptimizer(cp, Pass.REMOVE_DEAD_CODE).optimize(mg));
+        assertArrayEquals(new short[] {Const.ICONST_1, Const.IRETURN}, CodeTestUtils.opcodes(il));
+        assertSame(ret, il.getEnd());
+        assertEquals(0, mg.getLineNumbers().length);
+        assertEquals(0, mg.getLocalVariables().length);
+        assertEquals(0, mg.getExceptionHandlers().length);
+    }
+
+    @Test
+    public void testRemoveRedundantLoadsAndStores() throws Exception {
+        final ClassGen cg = newClassGen();
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionList il = new InstructionList();
+        // static int test(int i) { if (i == 0) return i; i = i; return i + 1; } with a few useless pushes
+        il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifne = il.append(new IFNE(null));
+        il.append(InstructionConst.ILOAD_0);
+        il.append(InstructionConst.IRETURN);
+        final InstructionHandle load = il.append(InstructionConst.ILOAD_0);
+        il.append(InstructionConst.ISTORE_0);
+        il.append(new PUSH(cp, "unused"));
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.LCONST_1);
+        il.append(InstructionConst.POP2);
+        final InstructionHandle end = il.append(InstructionConst.ILOAD_0);
+        il.append(InstructionConst.DUP);
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IADD);
+        il.append(InstructionConst.IRETURN);
+        ifne.setTarget(load);
+        final MethodGen mg = newMethodGen(Type.INT, new Type[] {Type.INT}, il, cp);
+        mg.addLocalVariable("i", Type.INT, 0, il.getStart(), il.getEnd());
+        assertTrue(new PeepholeOptimizer(cp, Pass.REMOVE_REDUNDANT_LOADS_AND_STORES).optimize(mg));
+        assertArrayEquals(new short[] {Const.ILOAD_0, Const.IFNE, Const.ILOAD_0, Const.IRETURN, Const.ILOAD_0, Const.ICONST_1, Const.IADD, Const.IRETURN},
+            CodeTestUtils.opcodes(il));
+        assertSame(end, ifne.getTarget());
+        mg.setMaxStackAndLocals();
+        mg.computeStackMap(true);
+        cg.addMethod(mg.getMethod());
+        final java.lang.reflect.Method test = CodeTestUtils.load(cg.getJavaClass()).getMethod("test", int.class);
+        assertEquals(0, test.invoke(null, 0));
+        assertEquals(6, test.invoke(null, 5));
+    }
+
+    @Test
+    public void testShortForms() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        // ILOAD 2 (not ILOAD_2), SIPUSH 100, IADD, LDC 3, IADD, IRETURN
+        final int three = cp.addInteger(3);
+        final InstructionList il = new InstructionList(new byte[] {Const.ILOAD, 2, Const.SIPUSH, 0, 100, (byte) Const.IADD, Const.LDC, (byte) three,
+            (byte) Const.IADD, (byte) Const.IRETURN});
+        final MethodGen mg = newMethodGen(Type.INT, new Type[] {Type.INT, Type.INT, Type.INT}, il, cp);
+        assertTrue(new PeepholeOptimizer(cp, Pass.SHORT_FORMS).optimize(mg));
+        assertArrayEquals(new short[] {Const.ILOAD_2, Const.BIPUSH, Const.IADD, Const.ICONST_3, Const.IADD, Const.IRETURN}, CodeTestUtils.opcodes(il));
+        assertEquals(7, il.getByteCode().length);
+        assertFalse(new PeepholeOptimizer(cp, Pass.SHORT_FORMS).optimize(mg));
+    }
+
+    @Test
+    public void testThreadJumps() throws Exception {
+        final ClassGen cg = newClassGen();
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionList il = new InstructionList();
+        // static int test(int i) { return i != 0 ? 1 : 0; } with the else branch jumping through two GOTOs
+        il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IRETURN);
+        final BranchHandle goto1 = il.append(new GOTO(null));
+        final BranchHandle goto2 = il.append(new GOTO(null));
+        final InstructionHandle zero = il.append(InstructionConst.ICONST_0);
+        il.append(InstructionConst.IRETURN);
+        ifeq.setTarget(goto1);
+        goto1.setTarget(goto2);
+        goto2.setTarget(zero);
+        final MethodGen mg = newMethodGen(Type.INT, new Type[] {Type.INT}, il, cp);
+        assertTrue(new PeepholeOptimizer(cp, Pass.THREAD_JUMPS).optimize(mg));
+        assertSame(zero, ifeq.getTarget());
+        // both GOTOs end up jumping to the next instruction
+        assertArrayEquals(new short[] {Const.ILOAD_0, Const.IFEQ, Const.ICONST_1, Const.IRETURN, Const.ICONST_0, Const.IRETURN}, CodeTestUtils.opcodes(il));
+        mg.setMaxStackAndLocals();
+        mg.computeStackMap(true);
+        cg.addMethod(mg.getMethod());
+        final java.lang.reflect.Method test = CodeTestUtils.load(cg.getJavaClass()).getMethod("test", int.class);
+        assertEquals(0, test.invoke(null, 0));
+        assertEquals(1, test.invoke(null, 7));
+    }
+}
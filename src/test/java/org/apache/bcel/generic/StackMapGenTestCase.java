@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+import org.apache.bcel.verifier.structurals.ExecutionVisitor;
+import org.apache.bcel.verifier.structurals.InstConstraintVisitor;
+import org.junit.jupiter.api.Test;
+
+public class StackMapGenTestCase {
+
+    private static StackMap getStackMap(final Method method) {
+        final Code code = method.getCode();
+        if (code != null) {
+            for (final Attribute a : code.getAttributes()) {
+                if (a instanceof StackMap) {
+                    return (StackMap) a;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testComputedFramesVerify() throws Exception {
+        for (final Class<?> cls : new Class<?>[] {InstructionList.class, StackMapGen.class, ExecutionVisitor.class, InstConstraintVisitor.class}) {
+            final JavaClass jc = Repository.lookupClass(cls);
+            final ClassGen cg = new ClassGen(jc);
+            final ConstantPoolGen cp = cg.getConstantPool();
+            for (final Method method : cg.getMethods()) {
+                if (method.getCode() == null) {
+                    continue;
+                }
+                final MethodGen mg = new MethodGen(method, cg.getClassName(), cp);
+                mg.computeStackMap(true);
+                final Method generated = mg.getMethod();
+                final StackMap expected = getStackMap(method);
+                final StackMap actual = getStackMap(generated);
+                assertEquals(expected == null, actual == null, () -> "StackMapTable of " + method);
+                if (expected != null) {
+                    assertEquals(expected.getMapLength(), actual.getMapLength(), () -> "number of frames of " + method);
+                }
+                cg.replaceMethod(method, generated);
+            }
+            assertEquals(cls.getName(), CodeTestUtils.load(cg.getJavaClass()).getName());
+        }
+    }
+
+    @Test
+    public void testMergeWithResolver() throws Exception {
+        final String className = "org.apache.bcel.generic.StackMapGenTestCase$Generated";
+        final ClassGen cg = new ClassGen(className, "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        cg.setMinor(Const.MINOR_1_8);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionFactory factory = new InstructionFactory(cg);
+        final InstructionList il = new InstructionList();
+        // static Object pick(int i) { Object o; if (i == 0) o = "zero"; else o = new StringBuilder("many"); ... }
+        il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifne = il.append(new IFNE(null));
+        il.append(new PUSH(cp, "zero"));
+        il.append(new ASTORE(1));
+        final BranchHandle gotoEnd = il.append(new GOTO(null));
+        final InstructionHandle elseStart = il.append(factory.createNew("java.lang.StringBuilder"));
+        il.append(InstructionConst.DUP);
+        il.append(new PUSH(cp, "many"));
+        il.append(factory.createInvoke("java.lang.StringBuilder", Const.CONSTRUCTOR_NAME, Type.VOID, new Type[] {Type.STRING}, Const.INVOKESPECIAL));
+        il.append(new ASTORE(1));
+        final InstructionHandle end = il.append(new ALOAD(1));
+        il.append(InstructionConst.ARETURN);
+        ifne.setTarget(elseStart);
+        gotoEnd.setTarget(end);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.OBJECT, new Type[] {Type.INT}, null, "pick", className, il, cp);
+        final AtomicInteger calls = new AtomicInteger();
+        mg.setCommonSuperclassResolver((first, second) -> {
+            calls.incrementAndGet();
+            return CommonSuperclassResolver.REPOSITORY.getFirstCommonSuperclass(first, second);
+        });
+        mg.setMaxStackAndLocals();
+        final StackMap stackMap = mg.getStackMap(cp);
+        assertNotNull(stackMap);
+        final StackMapEntry[] entries = stackMap.getStackMap();
+        assertEquals(2, entries.length);
+        // the else branch has no locals besides the argument, the join point appends the merged local
+        assertEquals(Const.SAME_FRAME + elseStart.getPosition(), entries[0].getFrameType());
+        assertEquals(Const.APPEND_FRAME, entries[1].getFrameType());
+        assertEquals("java.lang.Object", entries[1].getTypesOfLocals()[0].getClassName());
+        assertEquals(1, calls.get());
+        mg.computeStackMap(true);
+        cg.addMethod(mg.getMethod());
+        final Class<?> cls = CodeTestUtils.load(cg.getJavaClass());
+        assertEquals("zero", cls.getMethod("pick", int.class).invoke(null, 0));
+        assertEquals("many", cls.getMethod("pick", int.class).invoke(null, 1).toString());
+    }
+
+    @Test
+    public void testLoopAtOffsetZero() throws Exception {
+        final String className = "org.apache.bcel.generic.StackMapGenTestCase$LoopAtOffsetZero";
+        final ClassGen cg = new ClassGen(className, "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        cg.setMinor(Const.MINOR_1_8);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionFactory factory = new InstructionFactory(cg);
+        final InstructionList il = new InstructionList();
+        // static int loop(String s) { Object o = s; while (true) { if (o instanceof Integer) return 1; o = Integer.valueOf(0); } }
+        final InstructionHandle loop = il.append(new ALOAD(0));
+        il.append(new INSTANCEOF(cp.addClass("java.lang.Integer")));
+        final BranchHandle ifne = il.append(new IFNE(null));
+        il.append(InstructionConst.ICONST_0);
+        il.append(factory.createInvoke("java.lang.Integer", "valueOf", ObjectType.getInstance("java.lang.Integer"), new Type[] {Type.INT}, Const.INVOKESTATIC));
+        il.append(new ASTORE(0));
+        il.append(new GOTO(loop));
+        ifne.setTarget(il.append(InstructionConst.ICONST_1));
+        il.append(InstructionConst.IRETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT, new Type[] {Type.STRING}, null, "loop", className, il, cp);
+        mg.setMaxStackAndLocals();
+        final StackMap stackMap = mg.getStackMap(cp);
+        assertNotNull(stackMap);
+        // the merged local at offset 0 differs from the String argument of the initial frame
+        assertEquals(Const.FULL_FRAME, stackMap.getStackMap()[0].getFrameType());
+        mg.computeStackMap(true);
+        cg.addMethod(mg.getMethod());
+        final Class<?> cls = CodeTestUtils.load(cg.getJavaClass());
+        assertEquals(1, cls.getMethod("loop", String.class).invoke(null, "s"));
+    }
+
+    @Test
+    public void testMergeWithNonCanonicalResolver() throws Exception {
+        final String className = "org.apache.bcel.generic.StackMapGenTestCase$NonCanonical";
+        final ClassGen cg = new ClassGen(className, "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        cg.setMinor(Const.MINOR_1_8);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionFactory factory = new InstructionFactory(cg);
+        final InstructionList il = new InstructionList();
+        // static Object loop(int i) { Object o = "s"; while (i != 0) { o = new StringBuilder(); i--; } return o; }
+        il.append(new PUSH(cp, "s"));
+        il.append(new ASTORE(1));
+        final InstructionHandle loop = il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(factory.createNew("java.lang.StringBuilder"));
+        il.append(InstructionConst.DUP);
+        il.append(factory.createInvoke("java.lang.StringBuilder", Const.CONSTRUCTOR_NAME, Type.VOID, Type.NO_ARGS, Const.INVOKESPECIAL));
+        il.append(new ASTORE(1));
+        il.append(new IINC(0, -1));
+        il.append(new GOTO(loop));
+        ifeq.setTarget(il.append(new ALOAD(1)));
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.OBJECT, new Type[] {Type.INT}, null, "loop", className, il, cp);
+        final AtomicInteger calls = new AtomicInteger();
+        mg.setCommonSuperclassResolver((first, second) -> {
+            calls.incrementAndGet();
+            return new ObjectType("java.lang.Object");
+        });
+        mg.setMaxStackAndLocals();
+        mg.computeStackMap(true);
+        cg.addMethod(assertTimeoutPreemptively(Duration.ofSeconds(10), mg::getMethod));
+        assertTrue(calls.get() < 10, () -> calls.get() + " calls");
+        final Class<?> cls = CodeTestUtils.load(cg.getJavaClass());
+        assertEquals("s", cls.getMethod("loop", int.class).invoke(null, 0));
+        assertEquals("", cls.getMethod("loop", int.class).invoke(null, 2).toString());
+    }
+
+    @Test
+    public void testNoFramesForStraightLineCode() {
+        final ClassGen cg = new ClassGen("Straight", "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IRETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_STATIC, Type.INT, Type.NO_ARGS, null, "one", "Straight", il, cp);
+        mg.setMaxStackAndLocals();
+        assertNull(mg.getStackMap(cp));
+        mg.computeStackMap(true);
+        assertNull(getStackMap(mg.getMethod()));
+        assertTrue(mg.getMaxStack() > 0);
+    }
+
+    @Test
+    public void testUnreachableCode() throws Exception {
+        final String className = "org.apache.bcel.generic.StackMapGenTestCase$Unreachable";
+        final ClassGen cg = new ClassGen(className, "java.lang.Object", "<generated>", Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        cg.setMinor(Const.MINOR_1_8);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionList il = new InstructionList();
+        // static int pick(int i) { try { if (i == 0) ...; return 1; <unreachable>; return 2; } catch (Throwable t) { return -1; } <unreachable> }
+        final InstructionHandle start = il.append(InstructionConst.ILOAD_0);
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IRETURN);
+        il.append(InstructionConst.ICONST_5);
+        final BranchHandle deadGoto = il.append(new GOTO(null));
+        final InstructionHandle two = il.append(InstructionConst.ICONST_2);
+        final InstructionHandle end = il.append(InstructionConst.IRETURN);
+        final InstructionHandle handler = il.append(InstructionConst.POP);
+        il.append(InstructionConst.ICONST_M1);
+        il.append(InstructionConst.IRETURN);
+        il.append(new PUSH(cp, "dead"));
+        il.append(InstructionConst.ARETURN);
+        ifeq.setTarget(two);
+        deadGoto.setTarget(start);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT, new Type[] {Type.INT}, null, "pick", className, il, cp);
+        mg.addExceptionHandler(start, end, handler, null);
+        mg.setMaxStackAndLocals();
+        mg.computeStackMap(true);
+        cg.addMethod(mg.getMethod());
+        // the handler range is split around the unreachable code
+        assertEquals(2, mg.getExceptionHandlers().length);
+        assertSame(InstructionConst.ATHROW, il.getEnd().getInstruction());
+        final Class<?> cls = CodeTestUtils.load(cg.getJavaClass());
+        assertEquals(2, cls.getMethod("pick", int.class).invoke(null, 0));
+        assertEquals(1, cls.getMethod("pick", int.class).invoke(null, 1));
+    }
+}
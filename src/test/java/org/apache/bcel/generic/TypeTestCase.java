@@ -18,11 +18,16 @@
  */
 package org.apache.bcel.generic;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassFormatException;
 import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
@@ -31,6 +36,49 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 public class TypeTestCase {
+
+    @Test
+    public void testArgumentTypesAreCopies() {
+        final String signature = "(ILjava/lang/String;[[J)V";
+        final Type[] types = Type.getArgumentTypes(signature);
+        assertArrayEquals(new Type[] {Type.INT, Type.STRING, new ArrayType(Type.LONG, 2)}, types);
+        types[0] = Type.FLOAT;
+        assertEquals(Type.INT, Type.getArgumentTypes(signature)[0]);
+        assertNotSame(Type.getArgumentTypes(signature), Type.getArgumentTypes(signature));
+        assertSame(Type.getReturnType(signature), Type.getReturnType(signature));
+        assertEquals(Type.VOID, Type.getReturnType(signature));
+    }
+
+    @Test
+    public void testGenericArgumentTypes() {
+        final String signature = "(Ljava/util/Map<Ljava/lang/String;[I>;JTT;)Ljava/util/List<+Ljava/lang/Number;>;";
+        final Type[] types = Type.getArgumentTypes(signature);
+        assertEquals(3, types.length);
+        assertEquals("java.util.Map<java.lang.String, int[]>", ((ObjectType) types[0]).getClassName());
+        assertEquals(Type.LONG, types[1]);
+        assertEquals("T", ((ObjectType) types[2]).getClassName());
+        assertEquals(4, Type.getArgumentTypesSize(signature));
+        assertEquals(1, Type.getReturnTypeSize(signature));
+    }
+
+    @Test
+    public void testInvalidSignatures() {
+        assertThrows(ClassFormatException.class, () -> Type.getType("Ljava/lang/String"));
+        assertThrows(ClassFormatException.class, () -> Type.getType("X"));
+        assertThrows(ClassFormatException.class, () -> Type.getArgumentTypes("I)V"));
+        assertThrows(ClassFormatException.class, () -> Type.getArgumentTypes("(I"));
+    }
+
+    @Test
+    public void testTypeSize() {
+        assertEquals(2, Type.size(Type.getTypeSize("D")));
+        assertEquals(1, Type.consumed(Type.getTypeSize("D")));
+        assertEquals(1, Type.size(Type.getTypeSize("[[Ljava/lang/Object;I")));
+        assertEquals(20, Type.consumed(Type.getTypeSize("[[Ljava/lang/Object;I")));
+        assertEquals(0, Type.getReturnTypeSize("()V"));
+        assertEquals(2, Type.getReturnTypeSize("()J"));
+        assertEquals(5, Type.getArgumentTypesSize("(IJ[DLjava/lang/Object;)V"));
+    }
     @Test
     public void testBCEL243() {
         // expectedValue = "Ljava/util/Map<TX;Ljava/util/List<TY;>;>;";
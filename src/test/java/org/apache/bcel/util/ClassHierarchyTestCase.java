@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ObjectType;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ClassHierarchy}.
+ */
+public class ClassHierarchyTestCase {
+
+    private static final String[] CLASS_NAMES = {"java.lang.Object", "java.lang.String", "java.lang.Integer", "java.lang.Number",
+        "java.lang.Comparable", "java.lang.CharSequence", "java.io.Serializable", "java.util.ArrayList", "java.util.LinkedList",
+        "java.util.AbstractList", "java.util.List", "java.util.Collection", "java.lang.Iterable", "java.util.RandomAccess", "java.util.Deque",
+        "java.util.HashMap", "java.util.Map"};
+
+    @Test
+    public void testAgainstJavaClass() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final ClassHierarchy hierarchy = new ClassHierarchy();
+            for (final String name : CLASS_NAMES) {
+                final JavaClass clazz = repository.loadClass(name);
+                assertArrayEquals(clazz.getSuperClasses(), hierarchy.getSuperClasses(clazz), name);
+                assertArrayEquals(clazz.getAllInterfaces(), hierarchy.getAllInterfaces(clazz), name);
+                for (final String otherName : CLASS_NAMES) {
+                    final JavaClass other = repository.loadClass(otherName);
+                    assertEquals(clazz.instanceOf(other), hierarchy.instanceOf(clazz, other), name + " instanceof " + otherName);
+                    if (other.isInterface()) {
+                        assertEquals(clazz.implementationOf(other), hierarchy.implementationOf(clazz, other), name + " implements " + otherName);
+                    } else {
+                        assertThrows(IllegalArgumentException.class, () -> hierarchy.implementationOf(clazz, other));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCacheInvalidation() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final ClassHierarchy hierarchy = new ClassHierarchy();
+            final JavaClass list = repository.loadClass("java.util.ArrayList");
+            final JavaClass[] superClasses = hierarchy.getSuperClasses(list);
+            assertNotSame(superClasses, hierarchy.getSuperClasses(list));
+            assertSame(superClasses[0], hierarchy.getSuperClasses(list)[0]);
+            // Another instance of the class is a new entry
+            repository.clear();
+            final JavaClass reloaded = repository.loadClass("java.util.ArrayList");
+            assertNotSame(superClasses[0], hierarchy.getSuperClasses(reloaded)[0]);
+            repository.clear();
+            hierarchy.clear();
+            final JavaClass fresh = repository.loadClass("java.util.ArrayList");
+            assertSame(fresh.getSuperClass(), hierarchy.getSuperClasses(fresh)[0]);
+        }
+    }
+
+    @Test
+    public void testCircularHierarchy() throws IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final JavaClass a = new ClassGen("A", "B", "A.java", Const.ACC_PUBLIC, null).getJavaClass();
+            repository.storeClass(a);
+            repository.storeClass(new ClassGen("B", "A", "B.java", Const.ACC_PUBLIC, null).getJavaClass());
+            final int flags = Const.ACC_PUBLIC | Const.ACC_INTERFACE | Const.ACC_ABSTRACT;
+            final JavaClass i = new ClassGen("I", "java.lang.Object", "I.java", flags, new String[] {"J"}).getJavaClass();
+            repository.storeClass(i);
+            repository.storeClass(new ClassGen("J", "java.lang.Object", "J.java", flags, new String[] {"I"}).getJavaClass());
+            final ClassHierarchy hierarchy = repository.getClassHierarchy();
+            assertThrows(ClassNotFoundException.class, () -> hierarchy.getSuperClasses(a));
+            assertThrows(ClassNotFoundException.class, () -> hierarchy.getAllInterfaces(i));
+        }
+    }
+
+    @Test
+    public void testFirstCommonSuperclass() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final ClassHierarchy hierarchy = new ClassHierarchy();
+            final JavaClass arrayList = repository.loadClass("java.util.ArrayList");
+            final JavaClass linkedList = repository.loadClass("java.util.LinkedList");
+            final JavaClass object = repository.loadClass("java.lang.Object");
+            assertEquals("java.util.AbstractList", hierarchy.getFirstCommonSuperclass(arrayList, linkedList).getClassName());
+            assertEquals("java.util.AbstractList", hierarchy.getFirstCommonSuperclass(linkedList, arrayList).getClassName());
+            assertSame(arrayList, hierarchy.getFirstCommonSuperclass(arrayList, arrayList));
+            assertEquals("java.lang.Object", hierarchy.getFirstCommonSuperclass(arrayList, repository.loadClass("java.lang.String")).getClassName());
+            assertSame(object, hierarchy.getFirstCommonSuperclass(object, arrayList));
+        }
+        assertEquals(ObjectType.getInstance("java.lang.Number"),
+            ObjectType.getInstance("java.lang.Integer").getFirstCommonSuperclass(ObjectType.getInstance("java.lang.Long")));
+    }
+
+    @Test
+    public void testRepositoryFacade() throws ClassNotFoundException {
+        assertSame(Repository.getClassHierarchy(), Repository.getClassHierarchy());
+        final JavaClass[] superClasses = Repository.getSuperClasses("java.util.ArrayList");
+        assertEquals("java.util.AbstractList", superClasses[0].getClassName());
+        assertEquals("java.lang.Object", superClasses[superClasses.length - 1].getClassName());
+        assertTrue(Repository.instanceOf("java.util.ArrayList", "java.util.Collection"));
+        assertFalse(Repository.implementationOf("java.util.ArrayList", "java.util.Map"));
+    }
+
+    @Test
+    public void testRepositoryInvalidation() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final ClassHierarchy hierarchy = repository.getClassHierarchy();
+            assertSame(hierarchy, repository.getClassHierarchy());
+            final JavaClass list = repository.loadClass("java.util.ArrayList");
+            final JavaClass superClass = hierarchy.getSuperClasses(list)[0];
+            // Storing another instance of an ancestor replaces it in the hierarchy
+            final JavaClass replacement = superClass.copy();
+            repository.storeClass(replacement);
+            assertSame(replacement, hierarchy.getSuperClasses(list)[0]);
+            // Removing an ancestor drops it from the hierarchy
+            repository.removeClass(replacement);
+            final JavaClass reloaded = hierarchy.getSuperClasses(list)[0];
+            assertNotSame(replacement, reloaded);
+            assertSame(repository.findClass("java.util.AbstractList"), reloaded);
+        }
+    }
+}
@@ -19,18 +19,27 @@
 package org.apache.bcel.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
 
+import org.apache.bcel.Const;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
- * Tests {@link ClassPathRepository}, {@link MemorySensitiveClassPathRepository}, and
- * {@link LruCacheClassPathRepository} for their common attributes of caching.
+ * Tests {@link ClassPathRepository}, {@link MemorySensitiveClassPathRepository}, {@link LruCacheClassPathRepository},
+ * {@link ConcurrentClassPathRepository}, and {@link TinyLfuCacheClassPathRepository} for their common attributes of caching.
  *
  * <p>
  * Without memory scarcity, these classes behave in the same manner.
@@ -62,6 +71,13 @@ public class ClassPathRepositoryTestCase {
         }
     }
 
+    @Test
+    public void testConcurrentClassPathRepository() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            verifyCaching(new ConcurrentClassPathRepository(classPath));
+        }
+    }
+
     @Test
     public void testEmptyInput() throws IOException {
         try (ClassPath classPath = new ClassPath("")) {
@@ -77,6 +93,37 @@ public class ClassPathRepositoryTestCase {
         }
     }
 
+    @Test
+    public void testLoadClassIfPresent(@TempDir final Path dir) throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath(dir.toString())) {
+            final ClassPathRepository repository = new ClassPathRepository(classPath);
+            final Optional<JavaClass> string = repository.loadClassIfPresent("java.lang.String");
+            assertTrue(string.isPresent());
+            assertSame(string.get(), repository.loadClassIfPresent("java/lang/String").get());
+            assertFalse(repository.loadClassIfPresent("test.Missing").isPresent());
+            assertThrows(ClassNotFoundException.class, () -> repository.loadClass("test.Other"));
+            // By default, a miss is not remembered
+            assertFalse(repository.isRememberMissingClasses());
+            final Path classFile = dir.resolve("test/Missing.class");
+            Files.createDirectories(classFile.getParent());
+            Files.write(classFile, new ClassGen("test.Missing", "java.lang.Object", "Missing.java", Const.ACC_PUBLIC, null).getJavaClass().getBytes());
+            assertEquals("test.Missing", repository.loadClassIfPresent("test.Missing").get().getClassName());
+            final Path otherFile = dir.resolve("test/Other.class");
+            Files.write(otherFile, new ClassGen("test.Other", "java.lang.Object", "Other.java", Const.ACC_PUBLIC, null).getJavaClass().getBytes());
+            assertEquals("test.Other", repository.loadClass("test.Other").getClassName());
+            // If enabled, a miss is remembered until the repository is cleared
+            repository.setRememberMissingClasses(true);
+            assertFalse(repository.loadClassIfPresent("test.Later").isPresent());
+            final Path laterFile = dir.resolve("test/Later.class");
+            Files.write(laterFile, new ClassGen("test.Later", "java.lang.Object", "Later.java", Const.ACC_PUBLIC, null).getJavaClass().getBytes());
+            assertFalse(repository.loadClassIfPresent("test.Later").isPresent());
+            assertThrows(ClassNotFoundException.class, () -> repository.loadClass("test.Later"));
+            repository.clear();
+            assertEquals("test.Later", repository.loadClassIfPresent("test.Later").get().getClassName());
+            assertThrows(IllegalArgumentException.class, () -> repository.loadClassIfPresent(""));
+        }
+    }
+
     @Test
     public void testMemorySensitiveClassPathRepository() throws ClassNotFoundException, IOException {
         try (ClassPath classPath = new ClassPath("")) {
@@ -84,6 +131,40 @@ public class ClassPathRepositoryTestCase {
         }
     }
 
+    @Test
+    public void testMemorySensitiveClassPathRepositorySizeTarget() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            assertThrows(IllegalArgumentException.class, () -> new MemorySensitiveClassPathRepository(classPath, 0));
+            final MemorySensitiveClassPathRepository repository = new MemorySensitiveClassPathRepository(classPath, 2);
+            assertEquals(2, repository.getSizeTarget());
+            final RepositoryStatistics statistics = new RepositoryStatistics();
+            repository.setListener(statistics);
+            final JavaClass object = repository.loadClass("java.lang.Object");
+            repository.loadClass("java.lang.String");
+            repository.loadClass("java.lang.Integer");
+            assertEquals(2, repository.size());
+            assertEquals(1, statistics.getEvictions());
+            assertNull(repository.findClass("java.lang.Object"));
+            assertNotNull(repository.findClass("java.lang.String"));
+            // Storing Object again evicts String, the eldest class
+            for (int i = 0; i < 99; i++) {
+                repository.storeClass(object);
+                repository.removeClass(object);
+            }
+            assertEquals(1, repository.size());
+            assertEquals(2, statistics.getEvictions());
+            assertNotNull(repository.findClass("java.lang.Integer"));
+            // Integer is still the eldest class after the store and remove cycles, and is evicted before Object
+            repository.storeClass(object);
+            repository.loadClass("java.lang.Long");
+            assertEquals(3, statistics.getEvictions());
+            assertNull(repository.findClass("java.lang.Integer"));
+            assertNotNull(repository.findClass("java.lang.Object"));
+            repository.clear();
+            assertEquals(0, repository.size());
+        }
+    }
+
     @Test
     public void testNoClassNotFound() throws IOException {
         try (ClassPath classPath = new ClassPath("")) {
@@ -100,6 +181,13 @@ public class ClassPathRepositoryTestCase {
         }
     }
 
+    @Test
+    public void testTinyLfuCacheClassPathRepository() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            verifyCaching(new TinyLfuCacheClassPathRepository(classPath, Long.MAX_VALUE));
+        }
+    }
+
     private void verifyCaching(final AbstractClassPathRepository repository) throws ClassNotFoundException {
         // Tests loadClass()
         final JavaClass class1 = repository.loadClass("java.lang.String");
@@ -19,16 +19,58 @@
 
 package org.apache.bcel.util;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.bcel.AbstractTestCase;
+import org.apache.commons.lang3.JavaVersion;
+import org.apache.commons.lang3.SystemUtils;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class ClassPathTestCase extends AbstractTestCase {
 
+    private static Path createJar(final Path jar, final String... names) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (final String name : names) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(jar.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFindClassFile() throws IOException {
+        assertNotNull(ClassPath.SYSTEM_CLASS_PATH.findClassFile("java.lang.String", ".class"));
+        assertNull(ClassPath.SYSTEM_CLASS_PATH.findClassFile("no.such.Class", ".class"));
+        try (InputStream inputStream = ClassPath.SYSTEM_CLASS_PATH.findInputStream("java.lang.String")) {
+            assertNotNull(inputStream);
+        }
+        assertNull(ClassPath.SYSTEM_CLASS_PATH.findInputStream("no.such.Class"));
+        assertThrows(IOException.class, () -> ClassPath.SYSTEM_CLASS_PATH.getInputStream("no.such.Class"));
+    }
+
     @Test
     public void testGetClassFile() throws IOException {
         assertNotNull(ClassPath.SYSTEM_CLASS_PATH.getClassFile("java.lang.String"));
@@ -45,4 +87,38 @@ public class ClassPathTestCase extends AbstractTestCase {
             assertNotNull(inputStream);
         }
     }
+
+    @Test
+    public void testPackageIndex(@TempDir final Path dir) throws IOException {
+        final Path a = createJar(dir.resolve("a.jar"), "p/", "p/A.class", "p/q/Q.class", "Root.class");
+        final Path b = createJar(dir.resolve("b.jar"), "p/A.class", "p/B.class", "r/R.class");
+        final Path classes = dir.resolve("classes");
+        write(classes.resolve("r/R.class"), "classes");
+        try (ClassPath classPath = new ClassPath(a + File.pathSeparator + classes + File.pathSeparator + b)) {
+            assertArrayEquals("a.jar".getBytes(StandardCharsets.UTF_8), classPath.getBytes("p.A"));
+            assertArrayEquals("b.jar".getBytes(StandardCharsets.UTF_8), classPath.getBytes("p/B"));
+            assertArrayEquals("a.jar".getBytes(StandardCharsets.UTF_8), classPath.getBytes("p.q.Q"));
+            assertArrayEquals("a.jar".getBytes(StandardCharsets.UTF_8), classPath.getBytes("Root"));
+            assertArrayEquals("classes".getBytes(StandardCharsets.UTF_8), classPath.getBytes("r.R"));
+            assertThrows(IOException.class, () -> classPath.getClassFile("p.C"));
+            assertThrows(IOException.class, () -> classPath.getClassFile("s.S"));
+            // Directories are not indexed, so classes added after the first lookup are found
+            write(classes.resolve("p/C.class"), "classes");
+            write(classes.resolve("s/S.class"), "classes");
+            assertEquals(classes.toString(), classPath.getClassFile("p.C").getBase());
+            assertEquals(classes.toString(), classPath.getClassFile("s.S").getBase());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("resource") // closing would close the default jrt file system
+    public void testJrtModules() throws IOException {
+        assumeTrue(SystemUtils.isJavaVersionAtLeast(JavaVersion.JAVA_9));
+        final ClassPath classPath = new ClassPath(SystemUtils.JAVA_HOME + File.separator + "lib" + ModularRuntimeImage.MODULES_PATH);
+        assertTrue(classPath.getPath("java.lang.String", ".class").contains("/java.base/"));
+        assertTrue(classPath.getPath("java.sql.Connection", ".class").contains("/java.sql/"));
+        assertTrue(classPath.getPath("java.util.concurrent.atomic.AtomicLong", ".class").contains("/java.base/"));
+        assertThrows(IOException.class, () -> classPath.getClassFile("java.lang.NoSuchClass"));
+        assertThrows(IOException.class, () -> classPath.getClassFile("org.apache.bcel.NoSuchClass"));
+    }
 }
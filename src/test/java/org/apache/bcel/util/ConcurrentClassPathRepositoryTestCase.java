@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConcurrentClassPathRepository}.
+ */
+public class ConcurrentClassPathRepositoryTestCase {
+
+    /**
+     * Counts and slows down class file reads.
+     */
+    private static final class CountingClassPath extends ClassPath {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingClassPath() {
+            super("");
+        }
+
+        @Override
+        public InputStream findInputStream(final String name) throws IOException {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.findInputStream(name);
+        }
+    }
+
+    @Test
+    public void testMissingClass() throws IOException {
+        try (CountingClassPath classPath = new CountingClassPath()) {
+            final ConcurrentClassPathRepository repository = new ConcurrentClassPathRepository(classPath);
+            repository.setRememberMissingClasses(true);
+            assertThrows(ClassNotFoundException.class, () -> repository.loadClass("no.such.Class"));
+            assertThrows(ClassNotFoundException.class, () -> repository.loadClass("no.such.Class"));
+            assertFalse(repository.loadClassIfPresent("no.such.Class").isPresent());
+            assertEquals(1, classPath.reads.get());
+            repository.clear();
+            assertFalse(repository.loadClassIfPresent("no.such.Class").isPresent());
+            assertEquals(2, classPath.reads.get());
+        }
+    }
+
+    @Test
+    public void testSingleFlightLoading() throws Exception {
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (CountingClassPath classPath = new CountingClassPath()) {
+            final ConcurrentClassPathRepository repository = new ConcurrentClassPathRepository(classPath);
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final List<Future<JavaClass>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return repository.loadClass("java.lang.String");
+                }));
+            }
+            final JavaClass clazz = futures.get(0).get();
+            for (final Future<JavaClass> future : futures) {
+                assertSame(clazz, future.get());
+            }
+            assertEquals(1, classPath.reads.get());
+            assertSame(clazz, repository.findClass("java.lang.String"));
+            assertSame(repository, clazz.getRepository());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
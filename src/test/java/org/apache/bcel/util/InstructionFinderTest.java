@@ -20,19 +20,118 @@
 package org.apache.bcel.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.bcel.AbstractTestCase;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.IADD;
 import org.apache.bcel.generic.ILOAD;
 import org.apache.bcel.generic.ISTORE;
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.util.InstructionFinder.CodeConstraint;
 import org.junit.jupiter.api.Test;
 
 public class InstructionFinderTest extends AbstractTestCase {
 
+    private static InstructionList createList() {
+        final InstructionList il = new InstructionList();
+        il.append(new ILOAD(1));
+        il.append(new ILOAD(2));
+        il.append(new IADD());
+        il.append(new ISTORE(3));
+        return il;
+    }
+
+    private static List<Integer> matchLengths(final Iterator<InstructionHandle[]> it) {
+        final List<Integer> lengths = new ArrayList<>();
+        it.forEachRemaining(match -> lengths.add(match.length));
+        return lengths;
+    }
+
+    @Test
+    public void testAnchors() {
+        final InstructionFinder finder = new InstructionFinder(createList());
+        assertEquals(1, matchLengths(finder.search("^ILOAD")).size());
+        assertEquals(1, matchLengths(finder.search("StoreInstruction$")).size());
+        assertFalse(finder.search("ILOAD$").hasNext());
+        assertFalse(finder.search("^IADD").hasNext());
+    }
+
+    @Test
+    public void testConstraintTriesShorterMatches() {
+        final InstructionFinder finder = new InstructionFinder(createList());
+        assertEquals(Arrays.asList(2), matchLengths(finder.search("ILOAD+")));
+        assertEquals(Arrays.asList(1, 1), matchLengths(finder.search("ILOAD+", match -> match.length == 1)));
+    }
+
+    @Test
+    public void testInvalidPatterns() {
+        final InstructionFinder finder = new InstructionFinder(createList());
+        assertThrows(IllegalArgumentException.class, () -> finder.search("FOO"));
+        assertThrows(IllegalArgumentException.class, () -> finder.search("(ILOAD"));
+        assertThrows(IllegalArgumentException.class, () -> finder.search("ILOAD)"));
+        assertThrows(IllegalArgumentException.class, () -> finder.search("ILOAD*?"));
+        assertThrows(IllegalArgumentException.class, () -> finder.search("[ILOAD]"));
+        assertThrows(IllegalArgumentException.class, () -> finder.search("ILOAD{3,2}"));
+    }
+
+    @Test
+    public void testLongestMatch() {
+        final InstructionFinder finder = new InstructionFinder(createList());
+        assertEquals(Arrays.asList(2, 1), matchLengths(finder.search("(ILOAD | ILOAD ILOAD) | IADD")));
+        assertEquals(Arrays.asList(4), matchLengths(finder.search("LoadInstruction{2} ArithmeticInstruction (?:ISTORE)?")));
+        assertEquals(Arrays.asList(4), matchLengths(finder.search(".{2,} istore")));
+        assertFalse(finder.search("ILOAD{3,}").hasNext());
+        // empty matches are ignored
+        assertFalse(finder.search("NOP*").hasNext());
+    }
+
+    @Test
+    public void testNamedPatterns() throws ClassNotFoundException {
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("loads", "LoadInstruction+");
+        patterns.put("add", "ILOAD IADD");
+        patterns.put("store", "StoreInstruction");
+        patterns.put("unused", "NOP");
+        final InstructionList il = createList();
+        il.setPositions();
+        final InstructionFinder finder = new InstructionFinder(il);
+        final List<String> found = new ArrayList<>();
+        finder.search(patterns).forEachRemaining(match -> found.add(match.getName() + match.getMatch().length + "@" + match.getMatch()[0].getPosition()));
+        // matches of different patterns may overlap
+        assertEquals(Arrays.asList("loads2@0", "add2@1", "store1@3"), found);
+        final Map<String, CodeConstraint> constraints = Collections.singletonMap("loads", match -> match.length == 1);
+        found.clear();
+        finder.search(patterns, il.getStart(), constraints).forEachRemaining(match -> found.add(match.getName() + match.getMatch().length));
+        assertEquals(Arrays.asList("loads1", "loads1", "add2", "store1"), found);
+        // each pattern finds the same matches as a search for it alone
+        for (final Method method : Repository.lookupClass(InstructionFinder.class).getMethods()) {
+            if (method.getCode() == null) {
+                continue;
+            }
+            final InstructionFinder methodFinder = new InstructionFinder(new InstructionList(method.getCode().getCode()));
+            final Map<String, List<InstructionHandle>> byName = new HashMap<>();
+            methodFinder.search(patterns).forEachRemaining(match -> byName.computeIfAbsent(match.getName(), k -> new ArrayList<>()).add(match.getMatch()[0]));
+            patterns.forEach((name, pattern) -> {
+                final List<InstructionHandle> expected = new ArrayList<>();
+                methodFinder.search(pattern).forEachRemaining(match -> expected.add(match[0]));
+                assertEquals(expected, byName.getOrDefault(name, Collections.emptyList()), () -> method + " " + pattern);
+            });
+        }
+    }
+
     @Test
     public void testSearch() {
         final InstructionList il = new InstructionList();
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.SourceFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link JarShrinker}.
+ */
+public class JarShrinkerTestCase {
+
+    public static class Fixture implements IntSupplier, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int usedField = 42;
+
+        private int unusedField;
+
+        @Override
+        public int getAsInt() {
+            final IntSupplier supplier = () -> used();
+            return supplier.getAsInt();
+        }
+
+        private void unused() {
+            unusedField = unusedToo();
+        }
+
+        private int unusedToo() {
+            return unusedField;
+        }
+
+        private int used() {
+            return usedField;
+        }
+
+        private void writeObject(final ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        Class<?> define(final byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+
+    private static byte[] bytes(final Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class")) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testShrinkClass() throws Exception {
+        final JavaClass clazz = Repository.lookupClass(Fixture.class);
+        final JarShrinker shrinker = new JarShrinker();
+        shrinker.setStripLineNumbers(false);
+        shrinker.setRemoveUnusedPrivateMembers(false);
+        final JavaClass shrunk = shrinker.shrink(clazz);
+        assertEquals(clazz.getMethods().length, shrunk.getMethods().length);
+        assertNotNull(shrunk.getMethods()[0].getLineNumberTable());
+        assertNull(shrunk.getMethods()[0].getLocalVariableTable());
+        assertTrue(shrunk.getConstantPool().getLength() < clazz.getConstantPool().getLength());
+    }
+
+    @Test
+    public void testShrinkJar(@TempDir final Path dir) throws Exception {
+        final Path input = dir.resolve("input.jar");
+        final Path output = dir.resolve("output.jar");
+        final byte[] resource = "resource".getBytes(StandardCharsets.UTF_8);
+        final byte[] fixture = bytes(Fixture.class);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(input))) {
+            ZipTestUtils.put(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8), false);
+            ZipTestUtils.put(out, "META-INF/TEST.SF", resource, false);
+            ZipTestUtils.put(out, "org/apache/bcel/util/JarShrinkerTestCase.class", bytes(JarShrinkerTestCase.class), false);
+            ZipTestUtils.put(out, "org/apache/bcel/util/JarShrinkerTestCase$Fixture.class", fixture, false);
+            ZipTestUtils.put(out, "org/apache/bcel/util/resource.txt", resource, true);
+        }
+
+        new JarShrinker().shrink(input, output);
+
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            assertNull(zip.getEntry("META-INF/TEST.SF"));
+            final ZipEntry entry = zip.getEntry("org/apache/bcel/util/resource.txt");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            try (InputStream in = zip.getInputStream(entry)) {
+                assertArrayEquals(resource, IOUtils.toByteArray(in));
+            }
+            final byte[] shrunk;
+            try (InputStream in = zip.getInputStream(zip.getEntry("org/apache/bcel/util/JarShrinkerTestCase$Fixture.class"))) {
+                shrunk = IOUtils.toByteArray(in);
+            }
+            assertTrue(shrunk.length < fixture.length);
+            final JavaClass clazz = new ClassParser(new ByteArrayInputStream(shrunk), "Fixture.class").parse();
+            assertFalse(Arrays.stream(clazz.getAttributes()).anyMatch(SourceFile.class::isInstance));
+            assertFalse(Arrays.stream(clazz.getFields()).anyMatch(f -> f.getName().equals("unusedField")));
+            assertTrue(Arrays.stream(clazz.getFields()).anyMatch(f -> f.getName().equals("usedField")));
+            assertTrue(Arrays.stream(clazz.getFields()).anyMatch(f -> f.getName().equals("serialVersionUID")));
+            assertFalse(Arrays.stream(clazz.getMethods()).anyMatch(m -> m.getName().startsWith("unused")));
+            assertTrue(Arrays.stream(clazz.getMethods()).anyMatch(m -> m.getName().equals("used")));
+            assertTrue(Arrays.stream(clazz.getMethods()).anyMatch(m -> m.getName().equals("writeObject")));
+            for (final Method m : clazz.getMethods()) {
+                assertNull(m.getLineNumberTable());
+                assertNull(m.getLocalVariableTable());
+            }
+            assertEquals(42, ((IntSupplier) new Loader().define(shrunk).getConstructor().newInstance()).getAsInt());
+        }
+    }
+}
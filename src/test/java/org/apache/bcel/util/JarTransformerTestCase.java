@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link JarTransformer}.
+ */
+public class JarTransformerTestCase {
+
+    private static final String[] CLASSES = {"org/apache/bcel/util/ClassPath.class", "org/apache/bcel/util/ClassSet.class",
+        "org/apache/bcel/util/ClassQueue.class", "org/apache/bcel/util/ClassStack.class"};
+
+    private static Path createJar(final Path dir) throws Exception {
+        final Path jar = dir.resolve("input.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.setComment("comment");
+            out.putNextEntry(new ZipEntry("META-INF/"));
+            out.closeEntry();
+            ZipTestUtils.put(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n".getBytes(StandardCharsets.UTF_8), false);
+            for (final String name : CLASSES) {
+                ZipTestUtils.put(out, name, Repository.lookupClass(name.substring(0, name.length() - 6).replace('/', '.')).getBytes(), false);
+            }
+            ZipTestUtils.put(out, "org/apache/bcel/util/stored.txt", "stored".getBytes(StandardCharsets.UTF_8), true);
+        }
+        return jar;
+    }
+
+    private static List<String> names(final ZipFile zip) {
+        final List<String> names = new ArrayList<>();
+        Collections.list(zip.entries()).forEach(e -> names.add(e.getName()));
+        return names;
+    }
+
+    private static byte[] read(final ZipFile zip, final String name) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testFailure(@TempDir final Path dir) throws Exception {
+        final Path input = createJar(dir);
+        final JarTransformer transformer = new JarTransformer(clazz -> {
+            throw new IllegalStateException(clazz.getClassName());
+        });
+        assertThrows(IllegalStateException.class, () -> transformer.transform(input, dir.resolve("output.jar")));
+        assertThrows(IllegalArgumentException.class, () -> transformer.setReadAhead(0));
+        assertThrows(IllegalArgumentException.class, () -> transformer.setCompressionLevel(10));
+    }
+
+    @Test
+    public void testTransform(@TempDir final Path dir) throws Exception {
+        final Path input = createJar(dir);
+        final Path output = dir.resolve("output.jar");
+        final JarTransformer transformer = new JarTransformer(clazz -> {
+            if (clazz.getClassName().endsWith("ClassSet")) {
+                return null;
+            }
+            if (clazz.getClassName().endsWith("ClassQueue")) {
+                final ClassGen cg = new ClassGen(clazz);
+                cg.addInterface("java.lang.Cloneable");
+                return cg.getJavaClass();
+            }
+            return clazz;
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            transformer.setExecutor(executor);
+            transformer.setReadAhead(2);
+            transformer.transform(input, output);
+        } finally {
+            executor.shutdown();
+        }
+
+        try (ZipFile in = new ZipFile(input.toFile()); ZipFile out = new ZipFile(output.toFile())) {
+            final List<String> names = names(in);
+            names.remove(CLASSES[1]);
+            assertEquals(names, names(out));
+            assertEquals("comment", out.getComment());
+            assertNull(out.getEntry(CLASSES[1]));
+            for (final String name : names) {
+                final ZipEntry entry = out.getEntry(name);
+                assertEquals(in.getEntry(name).getTime(), entry.getTime(), name);
+                if (!name.equals(CLASSES[2])) {
+                    assertArrayEquals(read(in, name), read(out, name), name);
+                    assertEquals(in.getEntry(name).getCompressedSize(), entry.getCompressedSize(), name);
+                    assertEquals(in.getEntry(name).getMethod(), entry.getMethod(), name);
+                }
+            }
+            final JavaClass queue = new ClassParser(out.getInputStream(out.getEntry(CLASSES[2])), CLASSES[2]).parse();
+            assertArrayEquals(new String[] {"java.lang.Cloneable"}, queue.getInterfaceNames());
+        }
+
+        // The same input gives the same output
+        final Path again = dir.resolve("again.jar");
+        transformer.setExecutor(Runnable::run);
+        transformer.transform(input, again);
+        assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(again));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.FieldGen;
+import org.apache.bcel.generic.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link PersistentCacheClassPathRepository}.
+ */
+public class PersistentCacheClassPathRepositoryTestCase {
+
+    private static final String CLASS_NAME = "test.Cached";
+
+    private static long countCacheFiles(final Path cache) throws IOException {
+        try (Stream<Path> files = Files.list(cache)) {
+            return files.count();
+        }
+    }
+
+    private static void createJar(final Path jar, final int fields) throws IOException {
+        final ClassGen cg = new ClassGen(CLASS_NAME, "java.lang.Object", "Cached.java", Const.ACC_PUBLIC, null);
+        for (int i = 0; i < fields; i++) {
+            cg.addField(new FieldGen(Const.ACC_PUBLIC, Type.INT, "field" + i, cg.getConstantPool()).getField());
+        }
+        final byte[] bytes = cg.getJavaClass().getBytes();
+        final ZipEntry entry = new ZipEntry("test/Cached.class");
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+    }
+
+    private static JavaClass load(final Path jar, final Path cache) throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath(jar.toString())) {
+            return new PersistentCacheClassPathRepository(classPath, cache).loadClass(CLASS_NAME);
+        }
+    }
+
+    @Test
+    public void testCache(@TempDir final Path dir) throws Exception {
+        final Path jar = dir.resolve("cached.jar");
+        final Path cache = dir.resolve("cache");
+        createJar(jar, 1);
+        assertEquals(1, load(jar, cache).getFields().length);
+        assertEquals(1, countCacheFiles(cache));
+
+        // Break the class file in the jar but keep its size and time, so later loads must use the cache
+        final FileTime time = Files.getLastModifiedTime(jar);
+        final byte[] bytes = Files.readAllBytes(jar);
+        for (int i = 0; i < bytes.length - 3; i++) {
+            if (bytes[i] == (byte) 0xCA && bytes[i + 1] == (byte) 0xFE && bytes[i + 2] == (byte) 0xBA && bytes[i + 3] == (byte) 0xBE) {
+                bytes[i] = 0;
+            }
+        }
+        Files.write(jar, bytes);
+        Files.setLastModifiedTime(jar, time);
+        assertEquals(1, load(jar, cache).getFields().length);
+        try (ClassPath classPath = new ClassPath(jar.toString())) {
+            assertThrows(ClassFormatException.class, () -> new ClassPathRepository(classPath).loadClass(CLASS_NAME));
+        }
+
+        // A changed jar gets a new cache file
+        createJar(jar, 2);
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(time.toMillis() + 2000));
+        assertEquals(2, load(jar, cache).getFields().length);
+        assertEquals(2, countCacheFiles(cache));
+    }
+
+    @Test
+    public void testUncachedClasses(@TempDir final Path dir) throws Exception {
+        final Path jar = dir.resolve("cached.jar");
+        createJar(jar, 0);
+        try (ClassPath classPath = new ClassPath(dir + File.pathSeparator + jar)) {
+            final PersistentCacheClassPathRepository repository = new PersistentCacheClassPathRepository(classPath, dir.resolve("cache"));
+            assertEquals(dir.resolve("cache"), repository.getCacheDirectory());
+            assertNotNull(repository.loadClass("java.lang.String"));
+            assertNotNull(repository.loadClass(CLASS_NAME));
+            assertThrows(ClassNotFoundException.class, () -> repository.loadClass("test.Missing"));
+        }
+    }
+}
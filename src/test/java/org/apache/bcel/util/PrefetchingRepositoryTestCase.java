@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link PrefetchingRepository}.
+ */
+public class PrefetchingRepositoryTestCase {
+
+    /**
+     * Counts class file reads.
+     */
+    private static final class CountingClassPath extends ClassPath {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingClassPath() {
+            super("");
+        }
+
+        @Override
+        public InputStream findInputStream(final String name) throws IOException {
+            reads.incrementAndGet();
+            return super.findInputStream(name);
+        }
+    }
+
+    @Test
+    public void testMaxClasses() throws Exception {
+        try (CountingClassPath classPath = new CountingClassPath()) {
+            final PrefetchingRepository repository = new PrefetchingRepository(new ConcurrentClassPathRepository(classPath));
+            repository.setMaxClasses(3);
+            repository.loadClass("java.util.ArrayList");
+            repository.awaitPrefetch();
+            // the class itself plus at most three prefetched classes
+            assertTrue(classPath.reads.get() > 1);
+            assertTrue(classPath.reads.get() <= 4);
+        }
+    }
+
+    @Test
+    public void testMaxDepth() throws Exception {
+        try (CountingClassPath classPath = new CountingClassPath()) {
+            final PrefetchingRepository repository = new PrefetchingRepository(new ConcurrentClassPathRepository(classPath));
+            repository.setMaxDepth(0);
+            repository.loadClass("java.util.ArrayList");
+            repository.awaitPrefetch();
+            assertEquals(1, classPath.reads.get());
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        try (ClassPath classPath = new ClassPath("")) {
+            final ConcurrentClassPathRepository delegate = new ConcurrentClassPathRepository(classPath);
+            final PrefetchingRepository repository = new PrefetchingRepository(delegate);
+            assertSame(delegate, repository.getRepository());
+            final JavaClass clazz = repository.loadClass("java.util.ArrayList");
+            assertSame(clazz, repository.findClass("java.util.ArrayList"));
+            repository.awaitPrefetch();
+            assertNotNull(delegate.findClass("java.util.AbstractList"));
+            assertNotNull(delegate.findClass("java.util.Arrays"));
+            assertTrue(repository.loadClassIfPresent("java.util.Arrays").isPresent());
+            repository.clear();
+            assertNull(delegate.findClass("java.util.AbstractList"));
+        }
+    }
+
+    @Test
+    public void testSettings() {
+        final PrefetchingRepository repository = new PrefetchingRepository(new ConcurrentClassPathRepository(ClassPath.SYSTEM_CLASS_PATH));
+        assertEquals(2, repository.getMaxDepth());
+        assertThrows(IllegalArgumentException.class, () -> repository.setMaxClasses(-1));
+        assertThrows(IllegalArgumentException.class, () -> repository.setMaxDepth(-1));
+        assertThrows(NullPointerException.class, () -> repository.setExecutor(null));
+        assertThrows(NullPointerException.class, () -> new PrefetchingRepository(null));
+    }
+}
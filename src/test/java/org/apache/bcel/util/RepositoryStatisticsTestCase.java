@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RepositoryStatistics}.
+ */
+public class RepositoryStatisticsTestCase {
+
+    @Test
+    public void testJmx() throws Exception {
+        final RepositoryStatistics statistics = new RepositoryStatistics();
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("org.apache.bcel:type=RepositoryStatistics,name=test");
+        server.registerMBean(statistics, name);
+        try {
+            statistics.cacheMiss("java.lang.Object");
+            assertEquals(1L, server.getAttribute(name, "Misses"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, statistics.getMisses());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        try (ClassPath classPath = new ClassPath("")) {
+            final LruCacheClassPathRepository repository = new LruCacheClassPathRepository(classPath, 2);
+            final RepositoryStatistics statistics = new RepositoryStatistics();
+            repository.setListener(statistics);
+            assertSame(statistics, repository.getListener());
+            final JavaClass object = repository.loadClass("java.lang.Object");
+            repository.loadClass("java.lang.String");
+            assertSame(object, repository.loadClass("java.lang.Object"));
+            assertEquals(1, statistics.getHits());
+            assertEquals(2, statistics.getMisses());
+            assertEquals(2, statistics.getLoads());
+            assertEquals(0, statistics.getEvictions());
+            assertTrue(statistics.getBytesRead() > 0);
+            assertTrue(statistics.getParseNanos() > 0);
+            assertEquals(2, Arrays.stream(statistics.getParseTimeHistogram()).sum());
+            final long retained = statistics.getEstimatedRetainedBytes();
+            assertTrue(retained > 0);
+            // String is the least recently used class
+            repository.loadClass("java.lang.Integer");
+            assertEquals(1, statistics.getEvictions());
+            assertFalse(repository.loadClassIfPresent("no.such.Class").isPresent());
+            assertEquals(4, statistics.getMisses());
+            assertEquals(1 / 5.0, statistics.getHitRate(), 0.001);
+            repository.removeClass(object);
+            // Classes that were not loaded from the class path are not counted
+            final long retainedAfterRemoval = statistics.getEstimatedRetainedBytes();
+            assertTrue(retainedAfterRemoval > 0);
+            final JavaClass stored = object.copy();
+            stored.setClassName("Stored");
+            repository.storeClass(stored);
+            repository.removeClass(stored);
+            assertEquals(retainedAfterRemoval, statistics.getEstimatedRetainedBytes());
+            repository.clear();
+            assertEquals(0, statistics.getEstimatedRetainedBytes());
+            statistics.reset();
+            assertEquals(0, statistics.getLoads());
+            assertEquals(0, statistics.getHitRate());
+        }
+    }
+}
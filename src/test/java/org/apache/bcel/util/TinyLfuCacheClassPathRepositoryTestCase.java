@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link TinyLfuCacheClassPathRepository}.
+ */
+public class TinyLfuCacheClassPathRepositoryTestCase {
+
+    private static final String[] HOT = {"java.lang.Object", "java.lang.Integer"};
+
+    private static final String[] SCAN = {"java.util.ArrayDeque", "java.util.ArrayList", "java.util.Arrays", "java.util.BitSet", "java.util.Calendar",
+        "java.util.Collections", "java.util.Date", "java.util.EnumMap", "java.util.Formatter", "java.util.HashMap", "java.util.HashSet",
+        "java.util.Hashtable", "java.util.IdentityHashMap", "java.util.LinkedHashMap", "java.util.LinkedList", "java.util.Locale", "java.util.Objects",
+        "java.util.Optional", "java.util.PriorityQueue", "java.util.Properties", "java.util.Random", "java.util.Scanner", "java.util.Stack",
+        "java.util.StringJoiner", "java.util.Timer", "java.util.TreeMap", "java.util.TreeSet", "java.util.UUID", "java.util.Vector",
+        "java.util.WeakHashMap"};
+
+    private static long weightOf(final ClassPath classPath, final String... classNames) throws ClassNotFoundException {
+        final TinyLfuCacheClassPathRepository repository = new TinyLfuCacheClassPathRepository(classPath, Long.MAX_VALUE);
+        for (final String className : classNames) {
+            repository.loadClass(className);
+        }
+        return repository.getWeight();
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ClassPath classPath = new ClassPath("")) {
+            final TinyLfuCacheClassPathRepository repository = new TinyLfuCacheClassPathRepository(classPath, weightOf(classPath, SCAN) / 3);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        final String className = i % 2 == 0 ? HOT[i / 2 % HOT.length] : SCAN[(i + offset * 7) % SCAN.length];
+                        assertEquals(className, repository.loadClass(className).getClassName());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            assertTrue(repository.getWeight() <= repository.getMaximumWeight());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testScanResistance() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final long hotWeight = weightOf(classPath, HOT);
+            final TinyLfuCacheClassPathRepository repository = new TinyLfuCacheClassPathRepository(classPath,
+                hotWeight + weightOf(classPath, SCAN) / 4);
+            for (int i = 0; i < 5; i++) {
+                for (final String className : HOT) {
+                    assertNotNull(repository.loadClass(className));
+                }
+            }
+            for (final String className : SCAN) {
+                assertNotNull(repository.loadClass(className));
+            }
+            for (final String className : HOT) {
+                assertNotNull(repository.findClass(className), className);
+            }
+            int cached = 0;
+            for (final String className : SCAN) {
+                if (repository.findClass(className) != null) {
+                    cached++;
+                }
+            }
+            assertTrue(cached < SCAN.length);
+            assertTrue(repository.getWeight() <= repository.getMaximumWeight());
+        }
+    }
+
+    @Test
+    public void testStoreAndRemove() throws ClassNotFoundException, IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            final TinyLfuCacheClassPathRepository repository = new TinyLfuCacheClassPathRepository(classPath, Long.MAX_VALUE);
+            final JavaClass clazz = repository.loadClass("java.lang.String");
+            assertEquals(repository, clazz.getRepository());
+            assertTrue(repository.getWeight() > 0);
+            repository.removeClass(clazz);
+            assertNull(repository.findClass("java.lang.String"));
+            assertEquals(0, repository.getWeight());
+            // A class larger than the cache is returned but not cached
+            final TinyLfuCacheClassPathRepository tiny = new TinyLfuCacheClassPathRepository(classPath, 1);
+            assertNotNull(tiny.loadClass("java.lang.String"));
+            assertNull(tiny.findClass("java.lang.String"));
+            assertEquals(0, tiny.getWeight());
+        }
+    }
+
+    @Test
+    public void testZeroMaximumWeight() throws IOException {
+        try (ClassPath classPath = new ClassPath("")) {
+            assertThrows(IllegalArgumentException.class, () -> new TinyLfuCacheClassPathRepository(classPath, 0));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.util;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Helpers for tests that write archives.
+ */
+final class ZipTestUtils {
+
+    /**
+     * Writes an entry with a fixed modification time, so tests can check that times are kept.
+     *
+     * @param out the archive
+     * @param name the entry name
+     * @param bytes the entry contents
+     * @param stored whether the entry is stored rather than deflated
+     * @throws IOException if the entry cannot be written
+     */
+    static void put(final ZipOutputStream out, final String name, final byte[] bytes, final boolean stored) throws IOException {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setTime(0x1_0000_0000L);
+        if (stored) {
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private ZipTestUtils() {
+        // no instances
+    }
+}